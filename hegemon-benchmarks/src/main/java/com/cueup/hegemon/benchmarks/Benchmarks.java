@@ -0,0 +1,57 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks, taking the same arguments as JMH's own main. Unless other profilers are asked for with -prof,
+ * the GC profiler is added, so every result comes with its allocation rate and bytes allocated per operation.
+ *
+ *     mvn -Pbenchmarks package -DskipTests
+ *     java -jar hegemon-benchmarks/target/benchmarks.jar RunBenchmark -t 4
+ */
+public final class Benchmarks {
+
+  private Benchmarks() {
+  }
+
+
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions options = new CommandLineOptions(args);
+    if (options.shouldHelp()) {
+      options.showHelp();
+      return;
+    }
+
+    ChainedOptionsBuilder builder = new OptionsBuilder().parent(options);
+    if (options.getProfilers().isEmpty()) {
+      builder.addProfiler(GCProfiler.class);
+    }
+    Runner runner = new Runner(builder.build());
+    if (options.shouldList()) {
+      runner.list();
+    } else {
+      runner.run();
+    }
+  }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.benchmarks;
+
+import com.cueup.hegemon.LoadPaths;
+import com.cueup.hegemon.Script;
+import com.cueup.hegemon.compilation.SimpleScriptCompilation;
+import org.mozilla.javascript.Context;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compiling a module from source at each optimization level: -1 parses to interpreter bytecode, 0 and above generate
+ * and load a class, and 9 also optimizes it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CompilationBenchmark {
+
+  @Param({"-1", "0", "9"})
+  public int optimizationLevel;
+
+  @Param({"hegemon/core", "hegemon/sequence"})
+  public String module;
+
+  private SimpleScriptCompilation compilation;
+
+  private String source;
+
+  private Context context;
+
+
+  @Setup
+  public void setUp() throws Exception {
+    this.compilation = new SimpleScriptCompilation(this.optimizationLevel);
+    this.source = LoadPaths.defaultPath().load(this.module + ".js");
+    this.context = Script.enterContext();
+  }
+
+
+  @TearDown
+  public void tearDown() {
+    Script.exitContext();
+  }
+
+
+  @Benchmark
+  public org.mozilla.javascript.Script compile() {
+    return this.compilation.compile(this.context, this.module, this.source);
+  }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.benchmarks;
+
+import com.cueup.hegemon.LoadPaths;
+import com.cueup.hegemon.Script;
+import com.cueup.hegemon.compilation.CachedScriptCompilation;
+import com.cueup.hegemon.compilation.ClassFileScriptCompilation;
+import com.cueup.hegemon.compilation.ScriptCompilation;
+import com.cueup.hegemon.compilation.SimpleScriptCompilation;
+import com.google.common.io.Files;
+import org.mozilla.javascript.Context;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The hit and miss paths of the compilation caches. A hit compiles the same source again. A miss compiles a source
+ * no earlier iteration has seen, by appending a counter as a comment, so it pays for hashing the source and for
+ * compiling, and for ClassFileScriptCompilation, for writing and reading back the class file.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CompilationCacheBenchmark {
+
+  @Param({"cached", "classFile"})
+  public String cache;
+
+  private ScriptCompilation compilation;
+
+  private File classRoot;
+
+  private String source;
+
+  private long misses;
+
+  private Context context;
+
+
+  @Setup
+  public void setUp() throws Exception {
+    this.classRoot = Files.createTempDir();
+    if (this.cache.equals("cached")) {
+      this.compilation = new CachedScriptCompilation(new SimpleScriptCompilation(9));
+    } else {
+      this.compilation = new ClassFileScriptCompilation(this.classRoot);
+    }
+    this.source = LoadPaths.defaultPath().load("hegemon/json.js");
+    this.context = Script.enterContext();
+    this.compilation.compile(this.context, "bench", this.source);
+  }
+
+
+  @TearDown
+  public void tearDown() {
+    Script.exitContext();
+    delete(this.classRoot);
+  }
+
+
+  @Benchmark
+  public org.mozilla.javascript.Script hit() {
+    return this.compilation.compile(this.context, "bench", this.source);
+  }
+
+
+  @Benchmark
+  public org.mozilla.javascript.Script miss() {
+    return this.compilation.compile(this.context, "bench", this.source + "\n// " + this.misses++);
+  }
+
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.benchmarks;
+
+import com.cueup.hegemon.Script;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * hegemon/json conversions of a list of small records: to json and back, and from Java values to native JS values
+ * directly or by a json round trip.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonBenchmark {
+
+  private static final String SOURCE =
+      "let json = core.load('hegemon/json');\n"
+      + "function toJson(value) { return String(json.toJson(value)); }\n"
+      + "function parse(text) { return json.parse(text); }\n"
+      + "function jsonParse(text) { return JSON.parse(text); }\n"
+      + "function toNative(value) { return json.toNative(value); }\n"
+      + "function roundtrip(value) { return json.roundtripJson(value); }\n";
+
+  @Param({"10", "1000"})
+  public int size;
+
+  private Script script;
+
+  private List<Map<String, Object>> javaValue;
+
+  private Object nativeValue;
+
+  private String text;
+
+
+  @Setup
+  public void setUp() throws Exception {
+    this.script = new Script("json", SOURCE);
+    this.javaValue = Lists.newArrayListWithCapacity(this.size);
+    for (int i = 0; i < this.size; i++) {
+      Map<String, Object> record = Maps.newLinkedHashMap();
+      record.put("id", i);
+      record.put("name", "record " + i);
+      record.put("score", i / 3.0);
+      record.put("tags", Lists.newArrayList("a", "b", "c"));
+      record.put("owner", ImmutableMap.of("id", i % 7, "active", i % 2 == 0));
+      this.javaValue.add(record);
+    }
+    this.nativeValue = this.script.toNative(this.javaValue);
+    this.text = (String) this.script.run("toJson", this.nativeValue);
+  }
+
+
+  @Benchmark
+  public Object toJson() {
+    return this.script.run("toJson", this.nativeValue);
+  }
+
+
+  @Benchmark
+  public Object parse() {
+    return this.script.run("parse", this.text);
+  }
+
+
+  @Benchmark
+  public Object jsonParse() {
+    return this.script.run("jsonParse", this.text);
+  }
+
+
+  @Benchmark
+  public Object toNative() {
+    return this.script.run("toNative", this.javaValue);
+  }
+
+
+  @Benchmark
+  public Object roundtrip() {
+    return this.script.run("roundtrip", this.javaValue);
+  }
+
+}
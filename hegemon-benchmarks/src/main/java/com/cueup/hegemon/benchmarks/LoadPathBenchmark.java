@@ -0,0 +1,112 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.benchmarks;
+
+import com.cueup.hegemon.LoadError;
+import com.cueup.hegemon.LoadPath;
+import com.cueup.hegemon.LoadPaths;
+import com.cueup.hegemon.PathScriptLocator;
+import com.cueup.hegemon.ScriptLocator;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finding a module on a load path with a number of directory locators ahead of the system resources: in the first
+ * locator, in the system resources after every directory misses, and nowhere.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoadPathBenchmark {
+
+  @Param({"1", "4", "16"})
+  public int locators;
+
+  private final List<File> directories = Lists.newArrayList();
+
+  private LoadPath loadPath;
+
+
+  @Setup
+  public void setUp() throws Exception {
+    List<ScriptLocator> before = Lists.newArrayList();
+    for (int i = 0; i < this.locators; i++) {
+      File directory = Files.createTempDir();
+      this.directories.add(directory);
+      before.add(new PathScriptLocator(directory));
+    }
+    File local = new File(this.directories.get(0), "bench/local.js");
+    Files.createParentDirs(local);
+    Files.write("function f() {}\n", local, Charsets.UTF_8);
+    this.loadPath = LoadPaths.customPath(before, ImmutableList.<ScriptLocator>of());
+  }
+
+
+  @TearDown
+  public void tearDown() {
+    for (File directory : this.directories) {
+      new File(directory, "bench/local.js").delete();
+      new File(directory, "bench").delete();
+      directory.delete();
+    }
+  }
+
+
+  @Benchmark
+  public String findInFirst() throws LoadError {
+    return this.loadPath.load("bench/local.js");
+  }
+
+
+  @Benchmark
+  public String findInSystem() throws LoadError {
+    return this.loadPath.load("hegemon/json.js");
+  }
+
+
+  @Benchmark
+  public LoadError miss() {
+    try {
+      this.loadPath.load("bench/missing.js");
+      throw new AssertionError("bench/missing.js was found");
+    } catch (LoadError e) {
+      return e;
+    }
+  }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.benchmarks;
+
+import com.cueup.hegemon.Script;
+import com.google.common.collect.ImmutableMap;
+import org.mozilla.javascript.Scriptable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The fixed cost of calling into a script: entering a Context, converting arguments, looking the function up, and
+ * unwrapping the result. The function itself does nothing.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RunBenchmark {
+
+  private static final String SOURCE =
+      "function f() { return arguments.length; }\n"
+      + "let api = {nested: {f: f}};\n";
+
+  @Param({"0", "1", "4"})
+  public int argumentCount;
+
+  @Param({"int", "string", "javaMap", "nativeObject"})
+  public String argumentType;
+
+  private Script script;
+
+  private Object receiver;
+
+  private Object[] arguments;
+
+
+  @Setup
+  public void setUp() throws Exception {
+    this.script = new Script("run", SOURCE);
+    Scriptable api = (Scriptable) this.script.getScope().get("api", this.script.getScope());
+    this.receiver = api.get("nested", api);
+
+    Map<String, Object> map = ImmutableMap.<String, Object>of("id", 12, "name", "hegemon", "tags", Arrays.asList(1, 2));
+    Object argument;
+    if (this.argumentType.equals("int")) {
+      argument = 12;
+    } else if (this.argumentType.equals("string")) {
+      argument = "hegemon";
+    } else if (this.argumentType.equals("javaMap")) {
+      argument = map;
+    } else {
+      argument = this.script.toNative(map);
+    }
+    this.arguments = new Object[this.argumentCount];
+    Arrays.fill(this.arguments, argument);
+  }
+
+
+  @Benchmark
+  public Object run() {
+    return this.script.run("f", this.arguments);
+  }
+
+
+  @Benchmark
+  public Object runDotted() {
+    return this.script.run("api.nested.f", this.arguments);
+  }
+
+
+  @Benchmark
+  public Object call() {
+    return this.script.call(this.receiver, "f", this.arguments);
+  }
+
+}
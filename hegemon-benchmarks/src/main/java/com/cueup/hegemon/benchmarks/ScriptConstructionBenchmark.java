@@ -0,0 +1,81 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.benchmarks;
+
+import com.cueup.hegemon.LoadPath;
+import com.cueup.hegemon.LoadPaths;
+import com.cueup.hegemon.Script;
+import com.cueup.hegemon.compilation.CachedScriptCompilation;
+import com.cueup.hegemon.compilation.ScriptCompilation;
+import com.cueup.hegemon.compilation.SimpleScriptCompilation;
+import com.google.common.collect.ImmutableMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building a Script: creating its scope, loading hegemon/core, evaluating it, and loading the modules it asks for.
+ * Compilation is cached, as it is in a ScriptCache, so this measures what every rebuild costs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScriptConstructionBenchmark {
+
+  private static final Map<String, String> SOURCES = ImmutableMap.of(
+      "none", "function f(x) { return x; }",
+      "json", "let json = core.load('hegemon/json');\nfunction f(x) { return json.toJson(x); }",
+      "stdlib", "let json = core.load('hegemon/json');\nlet sequence = core.load('hegemon/sequence');\n"
+          + "let typed = core.load('hegemon/typed');\nfunction f(x) { return sequence.toArray(x); }");
+
+  private static final ScriptCompilation COMPILATION = new CachedScriptCompilation(new SimpleScriptCompilation(9));
+
+  @Param({"none", "json", "stdlib"})
+  public String modules;
+
+  private String source;
+
+  private LoadPath loadPath;
+
+
+  @Setup
+  public void setUp() {
+    this.source = SOURCES.get(this.modules);
+    this.loadPath = LoadPaths.defaultPath();
+  }
+
+
+  @Benchmark
+  public Script construct() throws Exception {
+    return new Script("construct", this.source, COMPILATION, this.loadPath);
+  }
+
+}
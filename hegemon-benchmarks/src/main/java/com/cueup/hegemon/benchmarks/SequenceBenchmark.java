@@ -0,0 +1,116 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.benchmarks;
+
+import com.cueup.hegemon.Script;
+import com.google.common.collect.Lists;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * hegemon/sequence operations over a Java list and over a JS array of the same numbers, called from JS.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SequenceBenchmark {
+
+  private static final String SOURCE =
+      "let sequence = core.load('hegemon/sequence');\n"
+      + "function double(x) { return x * 2; }\n"
+      + "function even(x) { return x % 2 == 0; }\n"
+      + "function add(a, b) { return a + Number(b); }\n"
+      + "function map(items) { return sequence.map(items, double); }\n"
+      + "function filter(items) { return sequence.filter(items, even); }\n"
+      + "function reduce(items) { return sequence.reduce(items, add, 0); }\n"
+      + "function sum(items) { return sequence.sum(items); }\n"
+      + "function toArray(items) { return sequence.toArray(items); }\n"
+      + "function pipeline(items) { return sequence.from(items).map(double).filter(even).take(10).toArray(); }\n";
+
+  @Param({"10", "1000"})
+  public int size;
+
+  @Param({"javaList", "jsArray"})
+  public String collection;
+
+  private Script script;
+
+  private Object items;
+
+
+  @Setup
+  public void setUp() throws Exception {
+    this.script = new Script("sequence", SOURCE);
+    List<Integer> list = Lists.newArrayListWithCapacity(this.size);
+    for (int i = 0; i < this.size; i++) {
+      list.add(i);
+    }
+    this.items = this.collection.equals("javaList") ? list : this.script.toNative(list);
+  }
+
+
+  @Benchmark
+  public Object map() {
+    return this.script.run("map", this.items);
+  }
+
+
+  @Benchmark
+  public Object filter() {
+    return this.script.run("filter", this.items);
+  }
+
+
+  @Benchmark
+  public Object reduce() {
+    return this.script.run("reduce", this.items);
+  }
+
+
+  @Benchmark
+  public Object sum() {
+    return this.script.run("sum", this.items);
+  }
+
+
+  @Benchmark
+  public Object toArray() {
+    return this.script.run("toArray", this.items);
+  }
+
+
+  @Benchmark
+  public Object pipeline() {
+    return this.script.run("pipeline", this.items);
+  }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.benchmarks;
+
+import com.cueup.hegemon.LoadPaths;
+import com.cueup.hegemon.ScriptCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of one cached script serving a small request from 1, 4 and all available threads. Each call looks the
+ * script up in the ScriptCache, as a request handler would, so contention in either the cache or the script's shared
+ * scope shows up as throughput that stops growing with threads. Any other benchmark can be run threaded with -t.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ThreadScalingBenchmark {
+
+  private static final String SCRIPT = "benchmarks/scaling.js";
+
+  private ScriptCache cache;
+
+
+  @Setup
+  public void setUp() throws Exception {
+    this.cache = new ScriptCache(LoadPaths.defaultPath());
+    this.cache.get(SCRIPT);
+  }
+
+
+  @Benchmark
+  @Threads(1)
+  public Object oneThread() throws Exception {
+    return handle();
+  }
+
+
+  @Benchmark
+  @Threads(4)
+  public Object fourThreads() throws Exception {
+    return handle();
+  }
+
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public Object allThreads() throws Exception {
+    return handle();
+  }
+
+
+  private Object handle() throws Exception {
+    return this.cache.get(SCRIPT).run("handle", 20);
+  }
+
+}
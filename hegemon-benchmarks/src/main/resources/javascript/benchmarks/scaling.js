@@ -0,0 +1,33 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+let json = core.load('hegemon/json');
+let sequence = core.load('hegemon/sequence');
+
+
+/**
+ * A small request: builds a few objects, reduces them and serializes the result.
+ * @param {number} n How many items to build.
+ * @return {string} The result as json.
+ */
+function handle(n) {
+  let items = [];
+  for (let i = 0; i < n; i++) {
+    items.push({id: i, even: i % 2 == 0});
+  }
+  let even = sequence.filter(items, function(item) { return item.even; });
+  return json.toJson({count: even.length, first: even[0]});
+}
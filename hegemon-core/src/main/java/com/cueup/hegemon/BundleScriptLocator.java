@@ -0,0 +1,45 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon;
+
+/**
+ * A ScriptLocator that serves files from a ScriptBundle.
+ */
+public class BundleScriptLocator extends ScriptLocator {
+
+  private final ScriptBundle bundle;
+
+
+  /**
+   * Creates a locator for the given bundle.
+   * @param bundle the bundle to serve files from.
+   */
+  public BundleScriptLocator(ScriptBundle bundle) {
+    this.bundle = bundle;
+  }
+
+
+  @Override
+  public String getFile(String name) throws LoadError {
+    String source = this.bundle.getSource(name);
+    if (source == null) {
+      throw new LoadError("Unable to load: " + name);
+    }
+    return source;
+  }
+
+}
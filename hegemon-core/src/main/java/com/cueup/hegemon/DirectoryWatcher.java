@@ -0,0 +1,171 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon;
+
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Watches directory trees on a background thread and reports changed files by their name relative to the root
+ * of the tree they're in - the same name a ScriptLocator would be asked for.
+ */
+class DirectoryWatcher implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(DirectoryWatcher.class);
+
+
+  /**
+   * Callback for changed files.
+   */
+  interface Listener {
+
+    /**
+     * Called from the watcher thread when a file is created, modified or deleted.
+     * @param name the name of the file relative to its watched root, with '/' separators.
+     */
+    void fileChanged(String name);
+
+  }
+
+
+  private final WatchService watchService;
+
+  private final Map<WatchKey, Path> directories;
+
+  private final Map<WatchKey, Path> roots;
+
+  private final Listener listener;
+
+  private final Thread thread;
+
+
+  /**
+   * Starts watching the given directories and everything under them. Roots that don't exist are skipped.
+   * @param rootDirectories the directories to watch.
+   * @param listener what to notify of changes.
+   * @throws IOException if the directories can't be registered.
+   */
+  DirectoryWatcher(List<File> rootDirectories, Listener listener) throws IOException {
+    this.watchService = FileSystems.getDefault().newWatchService();
+    this.directories = Maps.newConcurrentMap();
+    this.roots = Maps.newConcurrentMap();
+    this.listener = listener;
+
+    for (File root : rootDirectories) {
+      if (root.isDirectory()) {
+        Path rootPath = root.toPath().toAbsolutePath();
+        registerTree(rootPath, rootPath);
+      }
+    }
+
+    this.thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        processEvents();
+      }
+    }, "hegemon-directory-watcher");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+
+  private void registerTree(final Path root, Path start) throws IOException {
+    Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+        WatchKey key = dir.register(DirectoryWatcher.this.watchService,
+            StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY,
+            StandardWatchEventKinds.ENTRY_DELETE);
+        DirectoryWatcher.this.directories.put(key, dir);
+        DirectoryWatcher.this.roots.put(key, root);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+
+  private void processEvents() {
+    while (true) {
+      WatchKey key;
+      try {
+        key = this.watchService.take();
+      } catch (InterruptedException e) {
+        return;
+      } catch (ClosedWatchServiceException e) {
+        return;
+      }
+
+      Path dir = this.directories.get(key);
+      Path root = this.roots.get(key);
+      if (dir != null && root != null) {
+        for (WatchEvent<?> event : key.pollEvents()) {
+          if (event.kind() != StandardWatchEventKinds.OVERFLOW) {
+            handle(root, dir.resolve((Path) event.context()), event.kind());
+          }
+        }
+      }
+
+      if (!key.reset()) {
+        this.directories.remove(key);
+        this.roots.remove(key);
+      }
+    }
+  }
+
+
+  private void handle(Path root, Path changed, WatchEvent.Kind<?> kind) {
+    if (kind == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(changed)) {
+      try {
+        registerTree(root, changed);
+      } catch (IOException e) {
+        LOG.warn("Unable to watch new directory " + changed, e);
+      }
+    } else {
+      this.listener.fileChanged(root.relativize(changed).toString().replace(File.separatorChar, '/'));
+    }
+  }
+
+
+  /**
+   * Stops watching and shuts down the watcher thread.
+   */
+  @Override
+  public void close() throws IOException {
+    this.watchService.close();
+    this.thread.interrupt();
+  }
+
+}
@@ -54,4 +54,14 @@ public class ExternalFromResourceScriptLocator extends ResourceScriptLocator {
       throw new LoadError("Unable to load: " + name, e);
     }
   }
+
+
+  @Override
+  public File getDirectory() {
+    URL resourceDir = getKlass().getResource("/");
+    if (resourceDir == null || !"file".equals(resourceDir.getProtocol())) {
+      return null;
+    }
+    return new File(resourceDir.getFile(), getRootDir().getPath());
+  }
 }
@@ -2,6 +2,9 @@ package com.cueup.hegemon;
 
 /**
  * Interface for a script loader.
+ *
+ * Implementations must be thread-safe: a ScriptCache builds scripts on whichever threads ask for them, preloads them
+ * in parallel, and with prefetching turned on reads modules from a pool of threads while a script is built.
  */
 public interface LoadPath {
 
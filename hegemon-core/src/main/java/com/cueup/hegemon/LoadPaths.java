@@ -18,6 +18,7 @@ package com.cueup.hegemon;
 
 import com.google.common.collect.Lists;
 
+import java.io.File;
 import java.util.Collections;
 import java.util.List;
 
@@ -56,7 +57,7 @@ public class LoadPaths {
   }
 
 
-  private static class ScriptLocatorLoadPath implements LoadPath {
+  private static class ScriptLocatorLoadPath implements WatchableLoadPath {
 
     private final List<ScriptLocator> paths;
 
@@ -84,6 +85,19 @@ public class LoadPaths {
       throw new LoadError("Unable to load: " + name);
     }
 
+
+    @Override
+    public List<File> getDirectories() {
+      List<File> directories = Lists.newArrayList();
+      for (ScriptLocator path : this.paths) {
+        File directory = path.getDirectory();
+        if (directory != null) {
+          directories.add(directory);
+        }
+      }
+      return directories;
+    }
+
   }
 
 }
@@ -0,0 +1,390 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon;
+
+import com.cueup.hegemon.compilation.CachedScriptCompilation;
+import com.cueup.hegemon.compilation.ScriptCompilation;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Where the time went while building one Script: a tree of the modules it loaded, in the order they were evaluated,
+ * each split into reading its source through the LoadPath, compiling it, and executing its top level code. Get one
+ * from a LoadTracer.
+ *
+ * Modules found by the prefetcher are read and compiled in parallel before evaluation starts, so their read and
+ * compile times overlap each other and are marked as prefetched; the trace's prefetch time is the wall time that
+ * took. Everything else is timed where it happens, on the constructing thread.
+ */
+public final class LoadTrace {
+
+  /**
+   * Leaves closing the writer to the caller, so several traces can be written to one stream.
+   */
+  private static final ObjectMapper MAPPER = new ObjectMapper()
+      .configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+
+  /**
+   * Whether a compilation was served from a cache.
+   */
+  public enum Cache {
+    HIT,
+    MISS,
+    /**
+     * The ScriptCompilation isn't a CachedScriptCompilation, or the source wasn't compiled.
+     */
+    UNKNOWN
+  }
+
+
+  /**
+   * One module load, or the script itself at the root.
+   */
+  public static final class Module {
+
+    private final String name;
+
+    private final List<Module> children = Lists.newArrayList();
+
+    private long readNanos;
+
+    private long compileNanos;
+
+    private Cache cache = Cache.UNKNOWN;
+
+    private boolean prefetched;
+
+    private long executeNanos;
+
+    private long totalNanos;
+
+
+    private Module(String name) {
+      this.name = name;
+    }
+
+
+    /**
+     * Returns the module's name as passed to core.load, or the script's name at the root.
+     */
+    public String getName() {
+      return this.name;
+    }
+
+
+    /**
+     * Returns the time spent reading the module's source through the LoadPath.
+     */
+    public long getReadNanos() {
+      return this.readNanos;
+    }
+
+
+    /**
+     * Returns the time spent compiling the module.
+     */
+    public long getCompileNanos() {
+      return this.compileNanos;
+    }
+
+
+    /**
+     * Returns whether the compilation was a cache hit.
+     */
+    public Cache getCache() {
+      return this.cache;
+    }
+
+
+    /**
+     * Returns whether the module was read and compiled ahead of evaluation, in parallel with other modules.
+     */
+    public boolean isPrefetched() {
+      return this.prefetched;
+    }
+
+
+    /**
+     * Returns the time spent executing the module's own top level code, not counting the modules it loaded.
+     */
+    public long getExecuteNanos() {
+      return this.executeNanos;
+    }
+
+
+    /**
+     * Returns the wall time spent loading the module during evaluation, including the modules it loaded. Reading
+     * and compiling are included unless they were prefetched.
+     */
+    public long getTotalNanos() {
+      return this.totalNanos;
+    }
+
+
+    /**
+     * Returns the modules this module loaded, in the order they were evaluated.
+     */
+    public List<Module> getChildren() {
+      return ImmutableList.copyOf(this.children);
+    }
+
+
+    private void write(Writer out, String indent) throws IOException {
+      out.write(String.format("%s%s  %s total: execute %s, read %s, compile %s (%s)%s%n",
+          indent, this.name, millis(this.totalNanos), millis(this.executeNanos), millis(this.readNanos),
+          millis(this.compileNanos), this.cache.toString().toLowerCase(), this.prefetched ? ", prefetched" : ""));
+      for (Module child : this.children) {
+        child.write(out, indent + "  ");
+      }
+    }
+
+  }
+
+
+  private final Module root;
+
+  private final ScriptCompilation compilation;
+
+  /**
+   * Modules read or compiled but not yet evaluated, by file name.
+   */
+  private final Map<String, Module> pending = Maps.newHashMap();
+
+  private final Deque<Module> loading = Lists.newLinkedList();
+
+  private final long start = System.nanoTime();
+
+  private long prefetchNanos;
+
+  private long totalNanos;
+
+
+  /**
+   * @param script the name of the script being built.
+   * @param compilation how it's compiled, to tell cache hits from misses.
+   */
+  LoadTrace(String script, ScriptCompilation compilation) {
+    this.root = new Module(script);
+    this.compilation = compilation;
+  }
+
+
+  /**
+   * Returns the name of the script that was built.
+   */
+  public String getScript() {
+    return this.root.name;
+  }
+
+
+  /**
+   * Returns the wall time spent building the script, from reading its source to finishing its evaluation.
+   */
+  public long getTotalNanos() {
+    return this.totalNanos;
+  }
+
+
+  /**
+   * Returns the wall time spent reading and compiling modules in parallel before evaluation.
+   */
+  public long getPrefetchNanos() {
+    return this.prefetchNanos;
+  }
+
+
+  /**
+   * Returns the script, with the modules it loaded as its descendants.
+   */
+  public Module getRoot() {
+    return this.root;
+  }
+
+
+  /**
+   * Writes the trace as an indented tree, one module per line.
+   * @param out where to write.
+   * @throws IOException if writing fails.
+   */
+  public void writeText(Writer out) throws IOException {
+    out.write(String.format("%s: %s total, %s prefetching%n",
+        this.root.name, millis(this.totalNanos), millis(this.prefetchNanos)));
+    this.root.write(out, "  ");
+    out.flush();
+  }
+
+
+  /**
+   * Writes the trace as json.
+   * @param out where to write.
+   * @throws IOException if writing fails.
+   */
+  public void writeJson(Writer out) throws IOException {
+    MAPPER.writeValue(out, this);
+    out.flush();
+  }
+
+
+  /**
+   * Times a read of the script's own source, done before it's built.
+   */
+  void recordScriptRead(long nanos) {
+    this.root.readNanos = nanos;
+  }
+
+
+  /**
+   * Records what the prefetcher did for a file.
+   * @param filename the module's file name, or null for the script itself.
+   * @param source the source read, or null if it couldn't be read.
+   * @param readNanos the time taken to read it.
+   * @param compileNanos the time taken to compile it.
+   * @param cache whether compiling it was a cache hit.
+   */
+  void recordPrefetch(String filename, String source, long readNanos, long compileNanos, Cache cache) {
+    Module module = filename == null ? this.root : pendingModule(filename);
+    if (filename != null) {
+      module.readNanos = readNanos;
+    }
+    if (source != null) {
+      module.compileNanos = compileNanos;
+      module.cache = cache;
+      module.prefetched = true;
+    }
+  }
+
+
+  void recordPrefetchDone() {
+    this.prefetchNanos = System.nanoTime() - this.start;
+  }
+
+
+  /**
+   * Starts timing the evaluation of a module.
+   * @param name the module's name.
+   * @param filename the module's file name.
+   * @return the module, to pass to the other methods.
+   */
+  Module enter(String name, String filename) {
+    Module module = this.pending.remove(filename);
+    if (module == null) {
+      module = new Module(name);
+    }
+    Module parent = this.loading.isEmpty() ? this.root : this.loading.peek();
+    parent.children.add(module);
+    this.loading.push(module);
+    module.totalNanos = System.nanoTime();
+    return module;
+  }
+
+
+  /**
+   * Times a read done during evaluation.
+   */
+  void recordRead(Module module, long nanos) {
+    module.readNanos = nanos;
+    module.prefetched = false;
+  }
+
+
+  /**
+   * Times a compilation done during evaluation, working out whether it will hit the cache first.
+   * @return the compiled script.
+   */
+  org.mozilla.javascript.Script compile(Module module, org.mozilla.javascript.Context context, String filename,
+                                        String source) {
+    module.cache = cacheResult(this.compilation, filename, source);
+    long start = System.nanoTime();
+    org.mozilla.javascript.Script compiled = this.compilation.compile(context, filename, source);
+    module.compileNanos = System.nanoTime() - start;
+    module.prefetched = false;
+    return compiled;
+  }
+
+
+  /**
+   * Finishes timing the evaluation of a module.
+   */
+  void exit(Module module) {
+    this.loading.pop();
+    module.totalNanos = System.nanoTime() - module.totalNanos;
+    module.executeNanos = module.totalNanos - childNanos(module);
+    if (!module.prefetched) {
+      module.executeNanos -= module.readNanos + module.compileNanos;
+    }
+  }
+
+
+  /**
+   * Finishes the trace once the script has been evaluated.
+   * @param evaluateNanos the time spent evaluating the script, including loading its modules.
+   */
+  void finish(long evaluateNanos) {
+    this.root.totalNanos = evaluateNanos;
+    this.root.executeNanos = evaluateNanos - childNanos(this.root);
+    if (!this.root.prefetched) {
+      this.root.executeNanos -= this.root.compileNanos;
+    }
+    this.totalNanos = System.nanoTime() - this.start + this.root.readNanos;
+  }
+
+
+  /**
+   * Returns whether compiling a source with the given compilation would be a cache hit.
+   */
+  static Cache cacheResult(ScriptCompilation compilation, String name, String source) {
+    if (!(compilation instanceof CachedScriptCompilation)) {
+      return Cache.UNKNOWN;
+    }
+    return ((CachedScriptCompilation) compilation).isCached(name, source) ? Cache.HIT : Cache.MISS;
+  }
+
+
+  private Module pendingModule(String filename) {
+    Module module = this.pending.get(filename);
+    if (module == null) {
+      module = new Module(filename.substring(0, filename.length() - ".js".length()));
+      this.pending.put(filename, module);
+    }
+    return module;
+  }
+
+
+  private static long childNanos(Module module) {
+    long nanos = 0;
+    for (Module child : module.children) {
+      nanos += child.totalNanos;
+    }
+    return nanos;
+  }
+
+
+  static String millis(long nanos) {
+    return String.format("%.1fms", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+  }
+
+}
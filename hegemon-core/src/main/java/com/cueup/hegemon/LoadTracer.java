@@ -0,0 +1,289 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon;
+
+import com.cueup.hegemon.compilation.ScriptCompilation;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects a LoadTrace for each Script built, and rolls them up per module, to show which modules make building
+ * scripts slow and whether their compilations hit the cache. Attach it to a ScriptCache with
+ * ScriptCache#setLoadTracer, or build standalone scripts through it.
+ *
+ * Only the most recent traces are kept, but the rollup covers every build since the last reset.
+ */
+public class LoadTracer {
+
+  /**
+   * The number of traces kept by default.
+   */
+  public static final int DEFAULT_MAX_TRACES = 100;
+
+  /**
+   * Leaves closing the writer to the caller, so several traces can be written to one stream.
+   */
+  private static final ObjectMapper MAPPER = new ObjectMapper()
+      .configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+
+
+  /**
+   * How one module loaded, summed over every build it was loaded in.
+   */
+  public static final class ModuleStats {
+
+    private final String name;
+
+    private long loads;
+
+    private long readNanos;
+
+    private long compileNanos;
+
+    private long executeNanos;
+
+    private long hits;
+
+    private long misses;
+
+
+    private ModuleStats(String name) {
+      this.name = name;
+    }
+
+
+    private ModuleStats(ModuleStats other) {
+      this.name = other.name;
+      this.loads = other.loads;
+      this.readNanos = other.readNanos;
+      this.compileNanos = other.compileNanos;
+      this.executeNanos = other.executeNanos;
+      this.hits = other.hits;
+      this.misses = other.misses;
+    }
+
+
+    /**
+     * Returns the module's name.
+     */
+    public String getName() {
+      return this.name;
+    }
+
+
+    /**
+     * Returns the number of times the module was loaded.
+     */
+    public long getLoads() {
+      return this.loads;
+    }
+
+
+    /**
+     * Returns the total time spent reading the module.
+     */
+    public long getReadNanos() {
+      return this.readNanos;
+    }
+
+
+    /**
+     * Returns the total time spent compiling the module.
+     */
+    public long getCompileNanos() {
+      return this.compileNanos;
+    }
+
+
+    /**
+     * Returns the total time spent executing the module's own top level code.
+     */
+    public long getExecuteNanos() {
+      return this.executeNanos;
+    }
+
+
+    /**
+     * Returns the number of compilations served from the cache.
+     */
+    public long getHits() {
+      return this.hits;
+    }
+
+
+    /**
+     * Returns the number of compilations that missed the cache.
+     */
+    public long getMisses() {
+      return this.misses;
+    }
+
+
+    private void add(LoadTrace.Module module) {
+      this.loads++;
+      this.readNanos += module.getReadNanos();
+      this.compileNanos += module.getCompileNanos();
+      this.executeNanos += module.getExecuteNanos();
+      if (module.getCache() == LoadTrace.Cache.HIT) {
+        this.hits++;
+      } else if (module.getCache() == LoadTrace.Cache.MISS) {
+        this.misses++;
+      }
+    }
+
+  }
+
+
+  private final int maxTraces;
+
+  private final Deque<LoadTrace> traces = Lists.newLinkedList(); // MUTABLE: guarded by this.
+
+  private final Map<String, ModuleStats> modules = Maps.newTreeMap(); // MUTABLE: guarded by this.
+
+
+  /**
+   * Creates a tracer that keeps the last 100 traces.
+   */
+  public LoadTracer() {
+    this(DEFAULT_MAX_TRACES);
+  }
+
+
+  /**
+   * Creates a tracer.
+   * @param maxTraces the number of traces to keep.
+   */
+  public LoadTracer(int maxTraces) {
+    this.maxTraces = maxTraces;
+  }
+
+
+  /**
+   * Builds a script, tracing its module loads.
+   * @see Script#Script(String, String, ScriptCompilation, LoadPath, String...)
+   * @return the script.
+   * @throws LoadError if the script or one of its modules can't be loaded.
+   */
+  public Script build(String name, String source, ScriptCompilation scriptCompilation, LoadPath loadPath,
+                      String... globalFiles) throws LoadError {
+    LoadTrace trace = new LoadTrace(name, scriptCompilation);
+    Script script = new Script(name, source, scriptCompilation, loadPath, globalFiles, false, trace);
+    record(trace);
+    return script;
+  }
+
+
+  /**
+   * Returns the most recent traces, oldest first.
+   */
+  public synchronized List<LoadTrace> getTraces() {
+    return ImmutableList.copyOf(this.traces);
+  }
+
+
+  /**
+   * Returns how each module loaded, by module name.
+   */
+  public synchronized Map<String, ModuleStats> getModuleStats() {
+    ImmutableMap.Builder<String, ModuleStats> result = ImmutableMap.builder();
+    for (ModuleStats stats : this.modules.values()) {
+      result.put(stats.name, new ModuleStats(stats));
+    }
+    return result.build();
+  }
+
+
+  /**
+   * Writes the rollup as a table, one module per line, followed by the most recent trace.
+   * @param out where to write.
+   * @throws IOException if writing fails.
+   */
+  public void writeText(Writer out) throws IOException {
+    Map<String, ModuleStats> stats = getModuleStats();
+    out.write(String.format("%-30s %6s %10s %10s %10s %6s %6s%n",
+        "module", "loads", "read", "compile", "execute", "hits", "misses"));
+    for (ModuleStats module : stats.values()) {
+      out.write(String.format("%-30s %6d %10s %10s %10s %6d %6d%n",
+          module.name, module.loads, LoadTrace.millis(module.readNanos), LoadTrace.millis(module.compileNanos),
+          LoadTrace.millis(module.executeNanos), module.hits, module.misses));
+    }
+    List<LoadTrace> recent = getTraces();
+    if (!recent.isEmpty()) {
+      out.write(String.format("%nMost recent build:%n"));
+      recent.get(recent.size() - 1).writeText(out);
+    }
+    out.flush();
+  }
+
+
+  /**
+   * Writes the rollup and the most recent traces as json.
+   * @param out where to write.
+   * @throws IOException if writing fails.
+   */
+  public void writeJson(Writer out) throws IOException {
+    MAPPER.writeValue(out, ImmutableMap.of("modules", getModuleStats().values(), "traces", getTraces()));
+    out.flush();
+  }
+
+
+  /**
+   * Discards the traces and rollup.
+   */
+  public synchronized void reset() {
+    this.traces.clear();
+    this.modules.clear();
+  }
+
+
+  /**
+   * Adds a finished trace.
+   */
+  synchronized void record(LoadTrace trace) {
+    this.traces.addLast(trace);
+    while (this.traces.size() > this.maxTraces) {
+      this.traces.removeFirst();
+    }
+    for (LoadTrace.Module module : trace.getRoot().getChildren()) {
+      add(module);
+    }
+  }
+
+
+  private void add(LoadTrace.Module module) {
+    ModuleStats stats = this.modules.get(module.getName());
+    if (stats == null) {
+      stats = new ModuleStats(module.getName());
+      this.modules.put(module.getName(), stats);
+    }
+    stats.add(module);
+    for (LoadTrace.Module child : module.getChildren()) {
+      add(child);
+    }
+  }
+
+}
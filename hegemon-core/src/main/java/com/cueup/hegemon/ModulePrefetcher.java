@@ -0,0 +1,316 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon;
+
+import com.cueup.hegemon.compilation.ScriptCompilation;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.mozilla.javascript.CompilerEnvirons;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.EvaluatorException;
+import org.mozilla.javascript.Parser;
+import org.mozilla.javascript.ast.AstNode;
+import org.mozilla.javascript.ast.FunctionCall;
+import org.mozilla.javascript.ast.Name;
+import org.mozilla.javascript.ast.NodeVisitor;
+import org.mozilla.javascript.ast.PropertyGet;
+import org.mozilla.javascript.ast.StringLiteral;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Reads and compiles the modules a script is going to load before the script is evaluated.
+ *
+ * This is the preprocessor the core.load documentation talks about: every source is parsed and its core.load calls
+ * with string literal arguments are collected, so the whole dependency tree can be discovered, read and compiled in
+ * parallel. Evaluation then only has to execute already compiled code.
+ *
+ * It's only used when a ScriptCache has prefetching turned on, since it parses every source once more than building
+ * a script otherwise would, which only pays off when compiling is slow, and it reads through the LoadPath from a
+ * shared pool of threads. Script drops the result once it's built, so modules that were found but never loaded
+ * aren't kept.
+ *
+ * Prefetching never changes what a script does. Modules are still evaluated lazily, in order, by Script.load. Loads
+ * that can't be found statically, or modules that fail to read or compile here, are just left for Script to handle
+ * as it evaluates - which reports their errors at the same point it always did.
+ */
+final class ModulePrefetcher {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ModulePrefetcher.class);
+
+  private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(
+      Runtime.getRuntime().availableProcessors(),
+      new ThreadFactoryBuilder().setDaemon(true).setNameFormat("hegemon-prefetch-%d").build());
+
+
+  /**
+   * What was prefetched for a script.
+   */
+  static final class Result {
+
+    private final org.mozilla.javascript.Script entry;
+
+    private final ConcurrentMap<String, org.mozilla.javascript.Script> modules;
+
+
+    private Result(org.mozilla.javascript.Script entry, ConcurrentMap<String, org.mozilla.javascript.Script> modules) {
+      this.entry = entry;
+      this.modules = modules;
+    }
+
+
+    /**
+     * Returns the compiled entry script, or null if it didn't compile.
+     */
+    org.mozilla.javascript.Script getEntry() {
+      return this.entry;
+    }
+
+
+    /**
+     * Returns the compiled module read from the given file name, or null if it wasn't prefetched. Each module is
+     * only handed out once, so it isn't kept alive after it's been evaluated.
+     */
+    org.mozilla.javascript.Script takeModule(String filename) {
+      return this.modules.remove(filename);
+    }
+
+  }
+
+
+  /**
+   * The outcome of fetching one file.
+   */
+  private static final class Fetched {
+
+    private final String filename;
+
+    private final org.mozilla.javascript.Script compiled;
+
+    private final Set<String> loads;
+
+    private final String source;
+
+    private final long readNanos;
+
+    private final long compileNanos;
+
+    private final LoadTrace.Cache cache;
+
+
+    private Fetched(String filename, org.mozilla.javascript.Script compiled, Set<String> loads,
+                    String source, long readNanos, long compileNanos, LoadTrace.Cache cache) {
+      this.filename = filename;
+      this.compiled = compiled;
+      this.loads = loads;
+      this.source = source;
+      this.readNanos = readNanos;
+      this.compileNanos = compileNanos;
+      this.cache = cache;
+    }
+
+  }
+
+
+  private final LoadPath loadPath;
+
+  private final ScriptCompilation compilation;
+
+  private final ClassLoader classLoader;
+
+  private final CompletionService<Fetched> completionService;
+
+  private final Set<String> requested;
+
+  private final LoadTrace trace;
+
+
+  private ModulePrefetcher(LoadPath loadPath, ScriptCompilation compilation, LoadTrace trace) {
+    this.loadPath = loadPath;
+    this.compilation = compilation;
+    this.trace = trace;
+    this.classLoader = Thread.currentThread().getContextClassLoader();
+    this.completionService = new ExecutorCompletionService<Fetched>(EXECUTOR);
+    this.requested = Sets.newHashSet();
+  }
+
+
+  /**
+   * Compiles a script and reads and compiles every module it statically loads, transitively, in parallel.
+   * @param loadPath where to read modules from.
+   * @param compilation how to compile sources.
+   * @param name the name of the script.
+   * @param source the source of the script.
+   * @param moduleNames modules the script is known to load besides the ones named in its source.
+   * @param trace where to record read and compile times, or null.
+   * @return the compiled script and modules.
+   */
+  static Result prefetch(LoadPath loadPath, ScriptCompilation compilation,
+                         String name, String source, Iterable<String> moduleNames, LoadTrace trace) {
+    return new ModulePrefetcher(loadPath, compilation, trace).run(name, source, moduleNames);
+  }
+
+
+  private Result run(String name, String source, Iterable<String> moduleNames) {
+    int outstanding = 0;
+    outstanding += submit(null, name, source);
+    for (String moduleName : moduleNames) {
+      outstanding += request(moduleName);
+    }
+
+    org.mozilla.javascript.Script entry = null;
+    ConcurrentMap<String, org.mozilla.javascript.Script> modules = Maps.newConcurrentMap();
+    while (outstanding > 0) {
+      Fetched fetched;
+      try {
+        fetched = this.completionService.take().get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      } catch (ExecutionException e) {
+        LOG.warn("Unexpected error prefetching modules", e);
+        outstanding--;
+        continue;
+      }
+      outstanding--;
+
+      if (this.trace != null) {
+        this.trace.recordPrefetch(fetched.filename, fetched.source, fetched.readNanos, fetched.compileNanos,
+            fetched.cache);
+      }
+      if (fetched.filename == null) {
+        entry = fetched.compiled;
+      } else if (fetched.compiled != null) {
+        modules.put(fetched.filename, fetched.compiled);
+      }
+      for (String load : fetched.loads) {
+        outstanding += request(load);
+      }
+    }
+
+    if (this.trace != null) {
+      this.trace.recordPrefetchDone();
+    }
+    return new Result(entry, modules);
+  }
+
+
+  private int request(String moduleName) {
+    String filename = moduleName + ".js";
+    return this.requested.add(filename) ? submit(filename, filename, null) : 0;
+  }
+
+
+  private int submit(final String filename, final String name, final String source) {
+    this.completionService.submit(new Callable<Fetched>() {
+      @Override
+      public Fetched call() {
+        return fetch(filename, name, source);
+      }
+    });
+    return 1;
+  }
+
+
+  private Fetched fetch(String filename, String name, String source) {
+    Context context = Script.enterContext();
+    if (this.classLoader != null) {
+      context.setApplicationClassLoader(this.classLoader);
+    }
+    long start = System.nanoTime();
+    try {
+      String code = source == null ? this.loadPath.load(filename) : source;
+      long readNanos = System.nanoTime() - start;
+      Set<String> loads = findLoads(context, name, code);
+      LoadTrace.Cache cache = this.trace == null ? null : LoadTrace.cacheResult(this.compilation, name, code);
+      org.mozilla.javascript.Script compiled = null;
+      start = System.nanoTime();
+      try {
+        compiled = this.compilation.compile(context, name, code);
+      } catch (RuntimeException e) { // lint: disable=IllegalCatchCheck
+        // Script will report this when it gets to it.
+        LOG.debug("Unable to precompile " + name, e);
+      }
+      return new Fetched(filename, compiled, loads, code, readNanos, System.nanoTime() - start, cache);
+    } catch (LoadError e) {
+      return new Fetched(filename, null, ImmutableSet.<String>of(), null, System.nanoTime() - start, 0, null);
+    } finally {
+      Script.exitContext();
+    }
+  }
+
+
+  /**
+   * Returns the names of the modules loaded by core.load calls with string literal arguments in the given source.
+   * @param context the current context, used for language settings.
+   * @param name the name of the source, for error reporting.
+   * @param source the source to scan.
+   * @return the module names, in source order. Empty if the source doesn't parse.
+   */
+  static Set<String> findLoads(Context context, String name, String source) {
+    final Set<String> loads = Sets.newLinkedHashSet();
+    CompilerEnvirons environment = new CompilerEnvirons();
+    environment.initFromContext(context);
+
+    try {
+      new Parser(environment, environment.getErrorReporter()).parse(source, name, 1).visit(new NodeVisitor() {
+        @Override
+        public boolean visit(AstNode node) {
+          if (node instanceof FunctionCall) {
+            String load = loadedName((FunctionCall) node);
+            if (load != null) {
+              loads.add(load);
+            }
+          }
+          return true;
+        }
+      });
+    } catch (EvaluatorException e) {
+      return ImmutableSet.of();
+    }
+
+    return loads;
+  }
+
+
+  private static String loadedName(FunctionCall call) {
+    if (!(call.getTarget() instanceof PropertyGet) || call.getArguments().size() != 1
+        || !(call.getArguments().get(0) instanceof StringLiteral)) {
+      return null;
+    }
+
+    PropertyGet target = (PropertyGet) call.getTarget();
+    if (target.getTarget() instanceof Name
+        && "core".equals(((Name) target.getTarget()).getIdentifier())
+        && "load".equals(target.getProperty().getIdentifier())) {
+      return ((StringLiteral) call.getArguments().get(0)).getValue();
+    }
+    return null;
+  }
+
+}
@@ -61,4 +61,10 @@ public class PathScriptLocator extends ScriptLocator {
     throw new LoadError("Could not find " + name + " under " + this.root);
   }
 
+
+  @Override
+  public File getDirectory() {
+    return this.root;
+  }
+
 }
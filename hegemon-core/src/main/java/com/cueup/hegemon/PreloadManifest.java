@@ -0,0 +1,170 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A record of which scripts a ScriptCache served, in the order they were first requested, how often, and which
+ * modules they loaded. Written by a recording cache and read back to preload the next process.
+ *
+ * The file format is one line per script:
+ *
+ *     count TAB name TAB module,module,...
+ *
+ * Blank lines and lines starting with '#' are ignored.
+ */
+public final class PreloadManifest {
+
+  /**
+   * One script in the manifest.
+   */
+  public static final class Entry {
+
+    private final String name;
+
+    private final long count;
+
+    private final Set<String> modules;
+
+
+    /**
+     * Creates a manifest entry.
+     * @param name the name the script was requested by.
+     * @param count how many times it was requested.
+     * @param modules the modules it loaded, as passed to core.load.
+     */
+    public Entry(String name, long count, Set<String> modules) {
+      this.name = name;
+      this.count = count;
+      this.modules = ImmutableSet.copyOf(modules);
+    }
+
+
+    /**
+     * Returns the name the script was requested by.
+     */
+    public String getName() {
+      return this.name;
+    }
+
+
+    /**
+     * Returns how many times the script was requested.
+     */
+    public long getCount() {
+      return this.count;
+    }
+
+
+    /**
+     * Returns the modules the script loaded.
+     */
+    public Set<String> getModules() {
+      return this.modules;
+    }
+
+  }
+
+
+  private static final Splitter FIELDS = Splitter.on('\t');
+
+  private static final Splitter MODULES = Splitter.on(',').omitEmptyStrings();
+
+  private final List<Entry> entries;
+
+
+  /**
+   * Creates a manifest.
+   * @param entries the scripts, in the order they should be preloaded.
+   */
+  public PreloadManifest(List<Entry> entries) {
+    this.entries = ImmutableList.copyOf(entries);
+  }
+
+
+  /**
+   * Returns the scripts in this manifest, in the order they should be preloaded.
+   */
+  public List<Entry> getEntries() {
+    return this.entries;
+  }
+
+
+  /**
+   * Reads a manifest.
+   * @param file the file to read.
+   * @return the manifest, which is empty if the file doesn't exist.
+   * @throws IOException if the file can't be read or is malformed.
+   */
+  public static PreloadManifest read(File file) throws IOException {
+    List<Entry> entries = Lists.newArrayList();
+    if (!file.exists()) {
+      return new PreloadManifest(entries);
+    }
+
+    for (String line : Files.readLines(file, Charsets.UTF_8)) {
+      if (line.trim().isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      List<String> fields = Lists.newArrayList(FIELDS.split(line));
+      if (fields.size() != 3) {
+        throw new IOException("Malformed preload manifest line: " + line);
+      }
+      try {
+        entries.add(new Entry(fields.get(1), Long.parseLong(fields.get(0)),
+            ImmutableSet.copyOf(MODULES.split(fields.get(2)))));
+      } catch (NumberFormatException e) {
+        throw new IOException("Malformed preload manifest line: " + line, e);
+      }
+    }
+    return new PreloadManifest(entries);
+  }
+
+
+  /**
+   * Writes this manifest. The file is replaced atomically, so a reader never sees a partial manifest.
+   * @param file the file to write.
+   * @throws IOException if the file can't be written.
+   */
+  public void write(File file) throws IOException {
+    StringBuilder contents = new StringBuilder("# hegemon preload manifest: count, script, modules\n");
+    for (Entry entry : this.entries) {
+      contents.append(entry.count).append('\t')
+          .append(entry.name).append('\t')
+          .append(Joiner.on(',').join(entry.modules)).append('\n');
+    }
+
+    File temp = new File(file.getPath() + ".tmp");
+    Files.write(contents, temp, Charsets.UTF_8);
+    java.nio.file.Files.move(temp.toPath(), file.toPath(),
+        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Map;
+
+/**
+ * An estimate of the heap retained by a Script: its own scope, and each module it has loaded.
+ *
+ * Objects are attributed to the first module, in load order, that reaches them, and otherwise to the script's scope.
+ * Compiled code isn't counted, since compiled scripts and functions are shared through the ScriptCompilation.
+ */
+public final class RetainedSize {
+
+  private final long scopeBytes;
+
+  private final ImmutableMap<String, Long> moduleBytes;
+
+
+  RetainedSize(long scopeBytes, Map<String, Long> moduleBytes) {
+    this.scopeBytes = scopeBytes;
+    this.moduleBytes = ImmutableMap.copyOf(moduleBytes);
+  }
+
+
+  /**
+   * Returns the estimated bytes retained by the script's own scope, not counting its modules.
+   */
+  public long getScopeBytes() {
+    return this.scopeBytes;
+  }
+
+
+  /**
+   * Returns the estimated bytes retained by each module, by the name it was loaded with, in load order.
+   */
+  public Map<String, Long> getModuleBytes() {
+    return this.moduleBytes;
+  }
+
+
+  /**
+   * Returns the estimated bytes retained by the script and all of its modules.
+   */
+  public long getTotalBytes() {
+    long total = this.scopeBytes;
+    for (long bytes : this.moduleBytes.values()) {
+      total += bytes;
+    }
+    return total;
+  }
+
+
+  @Override
+  public String toString() {
+    return getTotalBytes() + " bytes (scope: " + this.scopeBytes + ", modules: " + this.moduleBytes + ")";
+  }
+
+}
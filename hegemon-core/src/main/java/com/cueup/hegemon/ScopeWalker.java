@@ -0,0 +1,156 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon;
+
+import com.google.common.collect.Sets;
+import org.mozilla.javascript.NativeArray;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.Undefined;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+
+/**
+ * Estimates the heap retained by JS objects by walking the graph of properties, prototypes and parent scopes
+ * reachable from them. Objects belonging to the shared standard scope, such as Object.prototype, aren't counted,
+ * nor are the Java objects behind wrappers, which are usually shared. Each object is counted once per walker, by
+ * the first walk that reaches it, so walking modules before the scripts that use them attributes each object to
+ * the module that created it.
+ *
+ * Sizes are typical for a 64 bit JVM with compressed references. Must be used with a current Context, as some
+ * built in properties read it.
+ */
+final class ScopeWalker {
+
+  /**
+   * A ScriptableObject's header and fields.
+   */
+  static final long OBJECT_BYTES = 64;
+
+  /**
+   * A property slot and its hash table entry.
+   */
+  static final long SLOT_BYTES = 48;
+
+  /**
+   * A dense array element.
+   */
+  static final long ELEMENT_BYTES = 8;
+
+  /**
+   * A Java String's header, fields and char array header.
+   */
+  static final long STRING_BYTES = 40;
+
+  /**
+   * A boxed number.
+   */
+  static final long BOX_BYTES = 16;
+
+  /**
+   * A wrapper around a Java object, or any other Scriptable that isn't walked.
+   */
+  static final long WRAPPER_BYTES = 32;
+
+  private final Scriptable shared;
+
+  private final Set<Object> visited = Sets.newIdentityHashSet();
+
+
+  /**
+   * @param shared the standard scope shared by every script. Objects whose top level scope it is aren't counted.
+   */
+  ScopeWalker(Scriptable shared) {
+    this.shared = shared;
+  }
+
+
+  /**
+   * @param root where to start.
+   * @return the estimated bytes retained by root and everything reachable from it that no earlier walk reached.
+   */
+  long walk(Object root) {
+    long bytes = 0;
+    Deque<Object> pending = new ArrayDeque<Object>();
+    push(pending, root);
+    while (!pending.isEmpty()) {
+      Object value = pending.pop();
+      if (value instanceof String) {
+        bytes += align(STRING_BYTES + 2L * ((String) value).length());
+      } else if (value instanceof Number) {
+        bytes += BOX_BYTES;
+      } else if (value instanceof ScriptableObject) {
+        bytes += walkObject((ScriptableObject) value, pending);
+      } else if (value instanceof Scriptable) {
+        bytes += WRAPPER_BYTES;
+      }
+    }
+    return bytes;
+  }
+
+
+  private long walkObject(ScriptableObject obj, Deque<Object> pending) {
+    long bytes = OBJECT_BYTES;
+    boolean dense = obj instanceof NativeArray;
+    for (Object id : obj.getAllIds()) {
+      String name = id instanceof String ? (String) id : null;
+      int index = name == null ? ((Number) id).intValue() : 0;
+      bytes += dense && name == null ? ELEMENT_BYTES : SLOT_BYTES;
+      if (name != null) {
+        push(pending, name);
+      }
+
+      // Don't run getters: count the functions instead.
+      Object getter = obj.getGetterOrSetter(name, index, false);
+      if (getter != null && getter != Undefined.instance) {
+        push(pending, getter);
+        push(pending, obj.getGetterOrSetter(name, index, true));
+      } else {
+        push(pending, name == null ? obj.get(index, obj) : obj.get(name, obj));
+      }
+    }
+    push(pending, obj.getPrototype());
+    push(pending, obj.getParentScope());
+    return bytes;
+  }
+
+
+  private void push(Deque<Object> pending, Object value) {
+    if (value == null || value instanceof Boolean || value == Undefined.instance || value == Scriptable.NOT_FOUND) {
+      return;
+    }
+    if (value instanceof Scriptable && isShared((Scriptable) value)) {
+      return;
+    }
+    if (this.visited.add(value)) {
+      pending.push(value);
+    }
+  }
+
+
+  private boolean isShared(Scriptable obj) {
+    return obj == this.shared || ScriptableObject.getTopLevelScope(obj) == this.shared;
+  }
+
+
+  private static long align(long bytes) {
+    return (bytes + 7) & ~7L;
+  }
+
+}
@@ -20,9 +20,16 @@ import com.cueup.hegemon.annotations.ReferencedByJavascript;
 import com.cueup.hegemon.compilation.CachedScriptCompilation;
 import com.cueup.hegemon.compilation.ScriptCompilation;
 import com.cueup.hegemon.compilation.SimpleScriptCompilation;
+import com.cueup.hegemon.json.NativeConverter;
+import com.cueup.hegemon.metrics.FunctionMetrics;
+import com.cueup.hegemon.metrics.MetricsRegistry;
+import com.cueup.hegemon.profiling.Profiler;
+import com.cueup.hegemon.profiling.SamplingProfiler;
+import com.cueup.hegemon.profiling.SlowCallLog;
+import com.google.common.base.Preconditions;
 import com.google.common.base.Splitter;
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import org.mozilla.javascript.Context;
@@ -34,9 +41,13 @@ import org.mozilla.javascript.Wrapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Script objects are the basic interface to running JavaScript using hegemon.
@@ -62,6 +73,9 @@ import java.util.Set;
  * this only applies to loads from within the source file, however. If Script objects with
  * the same name and source are going to be built multiple times, using a ScriptCache is
  * probably preferable.
+ *
+ * Before a Script is evaluated, the modules it loads with string literal 'core.load' calls, and the modules those
+ * load, are read and compiled in parallel. Evaluation still happens lazily and in order.
  */
 public class Script {
 
@@ -70,6 +84,12 @@ public class Script {
    */
   private static final Logger LOG = LoggerFactory.getLogger(Script.class);
 
+  /**
+   * The module loaded into every scope as 'core'.
+   */
+  private static final String CORE_MODULE = "hegemon/core";
+
+
   /**
    * Allows for user defined script location.
    */
@@ -91,14 +111,41 @@ public class Script {
    */
   private final Set<String> loading;
 
+  /**
+   * Loaded modules by name, in the order they finished loading.
+   */
   private final Map<String, Object> moduleCache;
 
+  /**
+   * Every file read through the loadPath, so callers can tell when this script is stale.
+   */
+  private final Set<String> dependencies;
+
   private final ScriptCompilation scriptCompilation;
 
+  /**
+   * Modules read and compiled ahead of evaluation, if prefetching.
+   */
+  private ModulePrefetcher.Result prefetched; // MUTABLE: only set while the script is being built, guarded by this.
+
+  private final String name;
+
+  private volatile Profiler profiler; // MUTABLE: set by setProfiler.
+
+  private volatile MetricsRegistry metrics; // MUTABLE: set by setMetrics.
+
+  private volatile SlowCallLog slowCallLog; // MUTABLE: set by setSlowCallLog.
 
+  private volatile SamplingProfiler samplingProfiler; // MUTABLE: set by setSamplingProfiler.
+
+  private LoadTrace trace; // MUTABLE: only set while the script is being built, guarded by this.
+
+
+  /**
+   * Values shared by every script in the JVM. Used by core.cached and core.memoize.
+   */
   @ReferencedByJavascript
-  public static final Cache<ValueName, Object> STATIC_VALUES =
-      CacheBuilder.newBuilder().build();
+  public static final ValueStore STATIC_VALUES = new ValueStore(10000);
 
 
   // TODO(kevinclark): lambda l: try: l(enterContext()) finally: exitContext()
@@ -183,13 +230,40 @@ public class Script {
                 final ScriptCompilation scriptCompilation,
                 final LoadPath loadPath,
                 final String... globalFiles) throws LoadError {
+    this(name, source, scriptCompilation, loadPath, globalFiles, false, null);
+  }
+
+
+  /**
+   * Load a new script context, optionally prefetching its modules and recording where the time goes.
+   * @see Script#Script(String, String, ScriptCompilation, LoadPath, String...)
+   * @param prefetch - whether to read and compile statically loaded modules in parallel first: see ModulePrefetcher.
+   * @param trace - where to record module loads, or null.
+   */
+  Script(final String name,
+         final String source,
+         final ScriptCompilation scriptCompilation,
+         final LoadPath loadPath,
+         final String[] globalFiles,
+         final boolean prefetch,
+         final LoadTrace trace) throws LoadError {
+    this.name = name;
     this.loadPath = loadPath;
     this.loaded = Sets.newHashSet();
     this.loading = Sets.newHashSet();
-    this.moduleCache = Maps.newHashMap();
+    this.moduleCache = Maps.newLinkedHashMap();
+    this.dependencies = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
     this.scriptCompilation = scriptCompilation;
 
 
+    if (prefetch) {
+      List<String> modules = Lists.newArrayList(CORE_MODULE);
+      modules.addAll(Arrays.asList(globalFiles));
+      this.prefetched = ModulePrefetcher.prefetch(loadPath, scriptCompilation, name, source, modules, trace);
+    }
+
+    long evaluateStart = System.nanoTime();
+    this.trace = trace;
     Context context = enterContext();
     try {
       this.localScope = createScope(context, true);
@@ -200,8 +274,20 @@ public class Script {
         ScriptableObject.putProperty(this.localScope, moduleName, load(globalFile));
       }
 
-      cachedEvaluateString(context, source, name, this.localScope);
+      if (this.prefetched != null && this.prefetched.getEntry() != null) {
+        this.prefetched.getEntry().exec(context, this.localScope);
+      } else if (trace != null) {
+        trace.compile(trace.getRoot(), context, name, source).exec(context, this.localScope);
+      } else {
+        cachedEvaluateString(context, source, name, this.localScope);
+      }
+      if (trace != null) {
+        trace.finish(System.nanoTime() - evaluateStart);
+      }
     } finally {
+      // Modules that were found but never loaded don't need to stay compiled for the life of the script.
+      this.prefetched = null;
+      this.trace = null;
       exitContext();
     }
   }
@@ -224,7 +310,7 @@ public class Script {
     ScriptableObject.putProperty(scope, "log", Context.javaToJS(LOG, scope));
     ScriptableObject.putProperty(scope, "hegemon", Context.javaToJS(this, scope));
     if (includeCore) {
-      ScriptableObject.putProperty(scope, "core", Context.javaToJS(load("hegemon/core"), scope));
+      ScriptableObject.putProperty(scope, "core", Context.javaToJS(load(CORE_MODULE), scope));
     }
   }
 
@@ -246,13 +332,23 @@ public class Script {
 
     String filename = scriptName + ".js";
     String moduleName = moduleNameFor(scriptName);
+    LoadTrace.Module traced = this.trace == null ? null : this.trace.enter(scriptName, filename);
     Context context = enterContext();
     try {
-      Scriptable newScope = createScope(context, !"hegemon/core".equals(scriptName));
-
-      String code = this.loadPath.load(filename);
-
-      cachedEvaluateString(context, code, filename, newScope);
+      Scriptable newScope = createScope(context, !CORE_MODULE.equals(scriptName));
+
+      org.mozilla.javascript.Script compiled = this.prefetched == null ? null : this.prefetched.takeModule(filename);
+      if (compiled == null && traced != null) {
+        long start = System.nanoTime();
+        String code = read(filename);
+        this.trace.recordRead(traced, System.nanoTime() - start);
+        this.trace.compile(traced, context, filename, code).exec(context, newScope);
+      } else if (compiled == null) {
+        cachedEvaluateString(context, read(filename), filename, newScope);
+      } else {
+        this.dependencies.add(filename);
+        compiled.exec(context, newScope);
+      }
       try {
         Object preWrap = ScriptableObject.getProperty(newScope, moduleName);
         Object module = unwrap(preWrap);
@@ -268,6 +364,9 @@ public class Script {
     } finally {
       this.loading.remove(scriptName);
       this.loaded.add(scriptName);
+      if (traced != null) {
+        this.trace.exit(traced);
+      }
       exitContext();
     }
   }
@@ -295,10 +394,171 @@ public class Script {
    * @throws LoadError when unable to load the associated resource.
    */
   public String read(final String filename) throws LoadError {
+    this.dependencies.add(filename);
     return this.loadPath.load(filename);
   }
 
 
+  /**
+   * Estimates the heap retained by this script's scope and each module it has loaded, by walking the objects
+   * reachable from them. Objects shared by every script, like the standard library, aren't counted.
+   */
+  public synchronized RetainedSize retainedSize() {
+    Context context = enterContext();
+    try {
+      ScopeWalker walker = new ScopeWalker(PARENT_SCOPE);
+      Map<String, Long> moduleBytes = Maps.newLinkedHashMap();
+      for (Map.Entry<String, Object> module : this.moduleCache.entrySet()) {
+        moduleBytes.put(module.getKey(), walker.walk(module.getValue()));
+      }
+      return new RetainedSize(walker.walk(this.localScope), moduleBytes);
+    } finally {
+      exitContext();
+    }
+  }
+
+
+  /**
+   * Returns an estimate of the bytes retained by this script's scope and the modules it has loaded.
+   * @see #retainedSize()
+   */
+  public long estimateRetainedSize() {
+    return retainedSize().getTotalBytes();
+  }
+
+
+  /**
+   * Returns the names of the modules this script has loaded so far, as passed to core.load.
+   */
+  public synchronized Set<String> getLoadedModules() {
+    return ImmutableSet.copyOf(this.loaded);
+  }
+
+
+  /**
+   * Returns the names of all files this script has loaded or read through its LoadPath so far.
+   */
+  public Set<String> getDependencies() {
+    return ImmutableSet.copyOf(this.dependencies);
+  }
+
+
+  /**
+   * Converts a Java value to native JS objects, arrays and primitives in this script's scope, as json.toNative does.
+   * The result can be passed to {@link #run} without scripts having to round trip it through a JSON string.
+   * @param value - the Java value: a map, collection, array, bean, JsonNode or primitive.
+   * @return the JS value.
+   */
+  public Object toNative(final Object value) {
+    Context context = enterContext();
+    try {
+      return NativeConverter.toNative(context, this.localScope, value);
+    } finally {
+      exitContext();
+    }
+  }
+
+
+  /**
+   * Records the JS calls made by run and call with the given profiler, or stops recording if it's null. Only
+   * interpreted code is seen: see {@link Profiler}.
+   * @param profiler - the profiler to record with, or null.
+   */
+  public void setProfiler(final Profiler profiler) {
+    this.profiler = profiler;
+  }
+
+
+  /**
+   * Returns the profiler recording this script's calls, or null.
+   */
+  public Profiler getProfiler() {
+    return this.profiler;
+  }
+
+
+  /**
+   * Samples the threads running run and call with the given profiler, or stops if it's null. Only compiled code is
+   * seen: see {@link SamplingProfiler}.
+   * @param samplingProfiler - the profiler to sample with, or null.
+   */
+  public void setSamplingProfiler(final SamplingProfiler samplingProfiler) {
+    this.samplingProfiler = samplingProfiler;
+  }
+
+
+  /**
+   * Returns the sampling profiler sampling this script's calls, or null.
+   */
+  public SamplingProfiler getSamplingProfiler() {
+    return this.samplingProfiler;
+  }
+
+
+  /**
+   * Records the calls made by run and call in the given registry, or stops recording if it's null.
+   * @param metrics - the registry to record in, or null.
+   */
+  public void setMetrics(final MetricsRegistry metrics) {
+    this.metrics = metrics;
+  }
+
+
+  /**
+   * Returns the registry recording this script's calls, or null.
+   */
+  public MetricsRegistry getMetrics() {
+    return this.metrics;
+  }
+
+
+  /**
+   * Logs calls made by run and call that are slower than their threshold to the given log, or stops logging them if
+   * it's null.
+   * @param slowCallLog - the log to write slow calls to, or null.
+   */
+  public void setSlowCallLog(final SlowCallLog slowCallLog) {
+    this.slowCallLog = slowCallLog;
+  }
+
+
+  /**
+   * Returns the log this script's slow calls are written to, or null.
+   */
+  public SlowCallLog getSlowCallLog() {
+    return this.slowCallLog;
+  }
+
+
+  /**
+   * Returns the name this script was created with.
+   */
+  public String getName() {
+    return this.name;
+  }
+
+
+  /**
+   * Makes the profiler, if any, the context's debugger, unless the context already has one.
+   * @return whether the profiler was attached, and so needs detaching.
+   */
+  private boolean attachProfiler(Context context) {
+    Profiler current = this.profiler;
+    if (current == null || context.getDebugger() != null) {
+      return false;
+    }
+    context.setDebugger(current, null);
+    return true;
+  }
+
+
+  private static void detachProfiler(Context context, boolean attached) {
+    if (attached) {
+      context.setDebugger(null, null);
+    }
+  }
+
+
   private Object[] jsValues(Object[] values) {
     Object[] jsValues = new Object[values.length];
     for (int i = 0; i < values.length; i++) {
@@ -315,24 +575,7 @@ public class Script {
    * @return the result of the function call.
    */
   public Object run(final String functionReference, final Object... values) {
-    // Create a local copy of the bindings so we can multi-thread.
-    Context context = enterContext();
-    try {
-      Scriptable object = this.localScope;
-      Iterator<String> parts = Splitter.on('.').split(functionReference).iterator();
-      while (parts.hasNext()) {
-        String property = parts.next();
-        if (parts.hasNext()) {
-          object = (Scriptable) ScriptableObject.getProperty(object, property);
-        } else {
-
-          return unwrap(ScriptableObject.callMethod(context, object, property, jsValues(values)));
-        }
-      }
-      throw new IllegalArgumentException("functionName is empty");
-    } finally {
-      exitContext();
-    }
+    return invoke(null, functionReference, values);
   }
 
 
@@ -344,12 +587,61 @@ public class Script {
    * @return the result of the method call.
    */
   public Object call(final Object object, final String property, final Object... values) {
+    return invoke((Scriptable) Preconditions.checkNotNull(object, "object"), property, values);
+  }
+
+
+  /**
+   * Calls a method, recording the call in the profilers, metrics and slow call log if they're set.
+   * @param object - the receiver, or null to look functionReference up from the local scope.
+   * @param functionReference - the method name, or a dotted path from the local scope if object is null.
+   * @param values - arguments to the method.
+   */
+  private Object invoke(final Scriptable object, final String functionReference, final Object[] values) {
+    MetricsRegistry registry = this.metrics;
+    FunctionMetrics functionMetrics = registry == null ? null : registry.get(this.name, functionReference);
+    long start = functionMetrics == null ? 0 : functionMetrics.begin();
+    SlowCallLog slowCalls = this.slowCallLog;
+    SlowCallLog.Call slowCall = slowCalls == null ? null : slowCalls.begin(this.name, functionReference);
+    SamplingProfiler sampler = this.samplingProfiler;
+    boolean sampling = sampler != null && sampler.enter();
+    Throwable error = null;
+
     // Create a local copy of the bindings so we can multi-thread.
     Context context = enterContext();
+    boolean profiling = attachProfiler(context);
     try {
-      return unwrap(ScriptableObject.callMethod(context, (Scriptable) object, property, jsValues(values)));
+      if (object != null) {
+        return unwrap(ScriptableObject.callMethod(context, object, functionReference, jsValues(values)));
+      }
+
+      Scriptable receiver = this.localScope;
+      Iterator<String> parts = Splitter.on('.').split(functionReference).iterator();
+      while (parts.hasNext()) {
+        String property = parts.next();
+        if (parts.hasNext()) {
+          receiver = (Scriptable) ScriptableObject.getProperty(receiver, property);
+        } else {
+
+          return unwrap(ScriptableObject.callMethod(context, receiver, property, jsValues(values)));
+        }
+      }
+      throw new IllegalArgumentException("functionName is empty");
+    } catch (RuntimeException e) {
+      error = e;
+      throw e;
     } finally {
+      if (sampling) {
+        sampler.exit(true);
+      }
+      detachProfiler(context, profiling);
       exitContext();
+      if (functionMetrics != null) {
+        functionMetrics.end(start, error);
+      }
+      if (slowCall != null) {
+        slowCalls.end(slowCall, values, error);
+      }
     }
   }
 
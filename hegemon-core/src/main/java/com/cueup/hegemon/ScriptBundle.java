@@ -0,0 +1,351 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import org.mozilla.javascript.CompilerEnvirons;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.optimizer.ClassCompiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A single file holding an entry script and every module it loads, resolved ahead of time.
+ *
+ * Loading a script with many modules normally costs a locator lookup, a read and a compilation cache probe per
+ * module. A bundle is built once - modules are found through string literal core.load calls and resolved through a
+ * LoadPath, so the usual search order applies - and then loaded with a single sequential read or mmap. Serve files
+ * from it with a BundleScriptLocator, and use its precompiled bytecode with a BundleScriptCompilation.
+ *
+ * The format is a header and an index followed by a data section:
+ *
+ *     int magic, int version, string entryName, int moduleCount,
+ *     moduleCount x (string name, 16 byte md5 of the source, int sourceOffset, int sourceLength,
+ *                    string className, int classOffset, int classLength),
+ *     data
+ *
+ * Strings are an int length followed by UTF-8 bytes, and offsets are relative to the start of the data section.
+ * Modules without bytecode have an empty className and a classLength of 0.
+ */
+public final class ScriptBundle {
+
+  private static final int MAGIC = 0x48474d42;
+
+  private static final int VERSION = 1;
+
+  private static final int DIGEST_LENGTH = 16;
+
+
+  /**
+   * Index entry for one file in the bundle.
+   */
+  private static final class Entry {
+
+    private final byte[] digest;
+
+    private final int sourceOffset;
+
+    private final int sourceLength;
+
+    private final String className;
+
+    private final int classOffset;
+
+    private final int classLength;
+
+
+    private Entry(byte[] digest, int sourceOffset, int sourceLength,
+                  String className, int classOffset, int classLength) {
+      this.digest = digest;
+      this.sourceOffset = sourceOffset;
+      this.sourceLength = sourceLength;
+      this.className = className;
+      this.classOffset = classOffset;
+      this.classLength = classLength;
+    }
+
+  }
+
+
+  private final String entryName;
+
+  private final Map<String, Entry> index;
+
+  private final ByteBuffer data;
+
+
+  private ScriptBundle(ByteBuffer buffer) throws IOException {
+    if (buffer.getInt() != MAGIC) {
+      throw new IOException("Not a script bundle");
+    }
+    int version = buffer.getInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported script bundle version: " + version);
+    }
+
+    this.entryName = readString(buffer);
+    int count = buffer.getInt();
+    ImmutableMap.Builder<String, Entry> builder = ImmutableMap.builder();
+    for (int i = 0; i < count; i++) {
+      String name = readString(buffer);
+      byte[] digest = new byte[DIGEST_LENGTH];
+      buffer.get(digest);
+      int sourceOffset = buffer.getInt();
+      int sourceLength = buffer.getInt();
+      String className = readString(buffer);
+      builder.put(name, new Entry(digest, sourceOffset, sourceLength, className, buffer.getInt(), buffer.getInt()));
+    }
+    this.index = builder.build();
+    this.data = buffer.slice();
+  }
+
+
+  /**
+   * Reads a bundle by memory mapping the given file.
+   * @param file the bundle file.
+   * @return the bundle.
+   * @throws IOException if the file can't be read or isn't a bundle.
+   */
+  public static ScriptBundle read(File file) throws IOException {
+    return new ScriptBundle(Files.map(file));
+  }
+
+
+  /**
+   * Reads a bundle from bytes written by writeTo.
+   * @param bytes the bundle contents.
+   * @return the bundle.
+   * @throws IOException if the bytes aren't a bundle.
+   */
+  public static ScriptBundle read(byte[] bytes) throws IOException {
+    return new ScriptBundle(ByteBuffer.wrap(bytes));
+  }
+
+
+  /**
+   * Builds a bundle for the given entry script, containing every module it loads with string literal core.load
+   * calls, transitively, plus 'hegemon/core'.
+   * @param loadPath where to find the entry script and its modules.
+   * @param entryName the name of the entry script, as it would be passed to ScriptCache.get.
+   * @param precompile whether to include bytecode compiled at optimization level 9.
+   * @return the bundle.
+   * @throws LoadError if the entry script or one of its modules can't be found.
+   */
+  public static ScriptBundle create(LoadPath loadPath, String entryName, boolean precompile) throws LoadError {
+    Map<String, String> sources = Maps.newLinkedHashMap();
+    Set<String> queued = Sets.newHashSet(entryName, "hegemon/core.js");
+    LinkedList<String> queue = Lists.newLinkedList(Arrays.asList(entryName, "hegemon/core.js"));
+
+    Context context = Script.enterContext();
+    try {
+      while (!queue.isEmpty()) {
+        String name = queue.removeFirst();
+        String source = loadPath.load(name);
+        sources.put(name, source);
+        for (String load : ModulePrefetcher.findLoads(context, name, source)) {
+          if (queued.add(load + ".js")) {
+            queue.add(load + ".js");
+          }
+        }
+      }
+
+      return read(serialize(context, entryName, sources, precompile));
+    } catch (IOException e) {
+      throw new LoadError("Unable to bundle " + entryName, e);
+    } finally {
+      Script.exitContext();
+    }
+  }
+
+
+  private static byte[] serialize(Context context, String entryName, Map<String, String> sources, boolean precompile)
+      throws IOException {
+    ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+    ByteArrayOutputStream dataBytes = new ByteArrayOutputStream();
+    DataOutputStream index = new DataOutputStream(indexBytes);
+
+    index.writeInt(MAGIC);
+    index.writeInt(VERSION);
+    writeString(index, entryName);
+    index.writeInt(sources.size());
+
+    for (Map.Entry<String, String> file : sources.entrySet()) {
+      byte[] source = file.getValue().getBytes(Charsets.UTF_8);
+      HashCode digest = Hashing.md5().hashBytes(source);
+      writeString(index, file.getKey());
+      index.write(digest.asBytes());
+      index.writeInt(dataBytes.size());
+      index.writeInt(source.length);
+      dataBytes.write(source);
+
+      if (precompile) {
+        Object[] compiled = compile(context, file.getKey(), file.getValue(), digest);
+        byte[] classBytes = (byte[]) compiled[1];
+        writeString(index, (String) compiled[0]);
+        index.writeInt(dataBytes.size());
+        index.writeInt(classBytes.length);
+        dataBytes.write(classBytes);
+      } else {
+        writeString(index, "");
+        index.writeInt(0);
+        index.writeInt(0);
+      }
+    }
+
+    index.flush();
+    dataBytes.writeTo(indexBytes);
+    return indexBytes.toByteArray();
+  }
+
+
+  private static Object[] compile(Context context, String name, String source, HashCode digest) {
+    CompilerEnvirons environment = new CompilerEnvirons();
+    environment.initFromContext(context);
+    environment.setOptimizationLevel(9);
+    String className = name.replace('/', '.') + "_" + digest;
+    return new ClassCompiler(environment).compileToClassFiles(source, name, 1, className);
+  }
+
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    byte[] bytes = value.getBytes(Charsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+
+  private static String readString(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return new String(bytes, Charsets.UTF_8);
+  }
+
+
+  private byte[] bytesAt(int offset, int length) {
+    ByteBuffer view = this.data.duplicate();
+    view.position(offset);
+    byte[] bytes = new byte[length];
+    view.get(bytes);
+    return bytes;
+  }
+
+
+  /**
+   * Writes this bundle out.
+   * @param out where to write to. It is not closed.
+   * @throws IOException if writing fails.
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    DataOutputStream header = new DataOutputStream(out);
+    header.writeInt(MAGIC);
+    header.writeInt(VERSION);
+    writeString(header, this.entryName);
+    header.writeInt(this.index.size());
+    for (Map.Entry<String, Entry> file : this.index.entrySet()) {
+      Entry entry = file.getValue();
+      writeString(header, file.getKey());
+      header.write(entry.digest);
+      header.writeInt(entry.sourceOffset);
+      header.writeInt(entry.sourceLength);
+      writeString(header, entry.className);
+      header.writeInt(entry.classOffset);
+      header.writeInt(entry.classLength);
+    }
+    header.write(bytesAt(0, this.data.limit()));
+    header.flush();
+  }
+
+
+  /**
+   * Writes this bundle to a file.
+   * @param file the file to write.
+   * @throws IOException if writing fails.
+   */
+  public void writeTo(File file) throws IOException {
+    OutputStream out = new FileOutputStream(file);
+    try {
+      writeTo(out);
+    } finally {
+      out.close();
+    }
+  }
+
+
+  /**
+   * Returns the name of the entry script.
+   */
+  public String getEntryName() {
+    return this.entryName;
+  }
+
+
+  /**
+   * Returns the names of all files in this bundle.
+   */
+  public Set<String> getNames() {
+    return ImmutableSet.copyOf(this.index.keySet());
+  }
+
+
+  /**
+   * Returns the source of the named file, or null if it isn't in this bundle.
+   * @param name the file name.
+   */
+  public String getSource(String name) {
+    Entry entry = this.index.get(name);
+    return entry == null ? null : new String(bytesAt(entry.sourceOffset, entry.sourceLength), Charsets.UTF_8);
+  }
+
+
+  /**
+   * Returns the precompiled class for the named file as a { className, bytes } pair suitable for
+   * Codegen.createScriptObject, or null if there is none or if it wasn't compiled from the given source.
+   * @param name the file name.
+   * @param source the source the caller wants compiled.
+   */
+  public Object[] getCompiled(String name, String source) {
+    Entry entry = this.index.get(name);
+    if (entry == null || entry.classLength == 0) {
+      return null;
+    }
+    byte[] digest = Hashing.md5().hashBytes(source.getBytes(Charsets.UTF_8)).asBytes();
+    if (!Arrays.equals(digest, entry.digest)) {
+      return null;
+    }
+    return new Object[] { entry.className, bytesAt(entry.classOffset, entry.classLength) };
+  }
+
+}
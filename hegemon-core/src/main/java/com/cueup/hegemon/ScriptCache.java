@@ -19,24 +19,131 @@ package com.cueup.hegemon;
 import com.cueup.hegemon.compilation.CachedScriptCompilation;
 import com.cueup.hegemon.compilation.ScriptCompilation;
 import com.cueup.hegemon.compilation.SimpleScriptCompilation;
+import com.cueup.hegemon.metrics.MetricsRegistry;
+import com.cueup.hegemon.profiling.Profiler;
+import com.cueup.hegemon.profiling.SamplingProfiler;
+import com.cueup.hegemon.profiling.SlowCallLog;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.script.ScriptException;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Cache of scripts.
+ *
+ * Scripts can be reloaded explicitly with get(name, true), which rebuilds them on the calling thread. Alternatively,
+ * a cache whose LoadPath reads from local directories can watch them: see ScriptCache#watch.
  */
 public class ScriptCache {
 
+  private static final Logger LOG = LoggerFactory.getLogger(ScriptCache.class);
+
+  /**
+   * How long to wait after the last change to a file before rebuilding, so that we don't pick up half written files.
+   */
+  private static final long RELOAD_DELAY_MILLIS = 200;
+
   private final LoadingCache<String, Script> cache;
 
+  private final LoadPath loadPath;
+
+  private final ScriptCompilation scriptCompilation;
+
+  /**
+   * Background reloads queued but not yet started, by script name.
+   */
+  private final Map<String, PendingReload> pendingReloads = Maps.newHashMap(); // MUTABLE: guarded by this.
+
+  private DirectoryWatcher watcher; // MUTABLE: only set while watching, guarded by this.
+
+  private ScheduledExecutorService reloadExecutor; // MUTABLE: only set while watching, guarded by this.
+
+  private volatile RequestLog requestLog; // MUTABLE: only set while recording.
+
+  private ScheduledExecutorService recordExecutor; // MUTABLE: only set while recording, guarded by this.
+
+  private Thread recordShutdownHook; // MUTABLE: only set while recording, guarded by this.
+
+  private volatile Profiler profiler; // MUTABLE: set by setProfiler.
+
+  private volatile MetricsRegistry metrics; // MUTABLE: set by setMetrics.
+
+  private volatile SlowCallLog slowCallLog; // MUTABLE: set by setSlowCallLog.
+
+  private volatile SamplingProfiler samplingProfiler; // MUTABLE: set by setSamplingProfiler.
+
+  private volatile LoadTracer loadTracer; // MUTABLE: set by setLoadTracer.
+
+  private volatile boolean prefetching; // MUTABLE: set by setPrefetching.
+
+
+  /**
+   * Counts requests for each script, remembering the order they were first requested in.
+   */
+  private static final class RequestLog {
+
+    private final ConcurrentMap<String, AtomicLong> counts = Maps.newConcurrentMap();
+
+    private final Queue<String> order = new ConcurrentLinkedQueue<String>();
+
+
+    void record(String name) {
+      AtomicLong count = this.counts.get(name);
+      if (count == null) {
+        AtomicLong created = new AtomicLong();
+        count = this.counts.putIfAbsent(name, created);
+        if (count == null) {
+          count = created;
+          this.order.add(name);
+        }
+      }
+      count.incrementAndGet();
+    }
+
+  }
+
 
   private static final ScriptCompilation DEFAULT_COMPILATION = new CachedScriptCompilation(
       new SimpleScriptCompilation(9));
 
+  /**
+   * Weighs scripts by the heap they retain, in bytes, as estimated by Script#retainedSize. The weight is computed
+   * when a script is loaded, so modules it loads lazily later on aren't counted.
+   */
+  public static final Weigher<String, Script> RETAINED_SIZE_WEIGHER = new Weigher<String, Script>() {
+    @Override
+    public int weigh(String name, Script script) {
+      return (int) Math.min(Integer.MAX_VALUE, script.estimateRetainedSize());
+    }
+  };
+
   /**
    * Create a ScriptCache that loads scripts from the given LoadPath.
    * @param loadPath the LoadPath to load files from.
@@ -47,20 +154,464 @@ public class ScriptCache {
 
 
   /**
-   * Create a ScriptCache that loads scripts from the given LoadPath.
+   * Create an unbounded ScriptCache that loads scripts from the given LoadPath.
    * @param loadPath the LoadPath to load files from.
    * @param scriptCompilation the strategy to use to compile scripts.
    */
   public ScriptCache(final LoadPath loadPath, final ScriptCompilation scriptCompilation) {
-    this.cache = CacheBuilder.newBuilder().build(new CacheLoader<String, Script>() {
+    this(loadPath, scriptCompilation, CacheBuilder.newBuilder());
+  }
+
+
+  /**
+   * Create a ScriptCache that loads scripts from the given LoadPath, bounded as configured by cacheBuilder. For
+   * example, to keep at most 100MB of scripts that have been used in the last hour, and track hit rates:
+   *
+   *     CacheBuilder.newBuilder()
+   *         .maximumWeight(100 * 1024 * 1024)
+   *         .weigher(ScriptCache.RETAINED_SIZE_WEIGHER)
+   *         .expireAfterAccess(1, TimeUnit.HOURS)
+   *         .recordStats()
+   *
+   * Soft values and removal listeners can be configured the same way.
+   *
+   * @param loadPath the LoadPath to load files from.
+   * @param scriptCompilation the strategy to use to compile scripts.
+   * @param cacheBuilder the configuration for the underlying cache.
+   */
+  public ScriptCache(final LoadPath loadPath,
+                     final ScriptCompilation scriptCompilation,
+                     final CacheBuilder<? super String, ? super Script> cacheBuilder) {
+    this.loadPath = loadPath;
+    this.scriptCompilation = scriptCompilation;
+    this.cache = cacheBuilder.build(new CacheLoader<String, Script>() {
       @Override
       public Script load(String key) throws Exception {
-        return new Script(key, loadPath.load(key), scriptCompilation, loadPath);
+        return build(key);
+      }
+    });
+  }
+
+
+  private Script build(String name) throws LoadError {
+    LoadTracer tracer = this.loadTracer;
+    LoadTrace trace = tracer == null ? null : new LoadTrace(name, this.scriptCompilation);
+    long start = System.nanoTime();
+    String source = this.loadPath.load(name);
+    if (trace != null) {
+      trace.recordScriptRead(System.nanoTime() - start);
+    }
+    Script script = new Script(name, source, this.scriptCompilation, this.loadPath, new String[0], this.prefetching,
+        trace);
+    if (tracer != null) {
+      tracer.record(trace);
+    }
+    script.setProfiler(this.profiler);
+    script.setMetrics(this.metrics);
+    script.setSlowCallLog(this.slowCallLog);
+    script.setSamplingProfiler(this.samplingProfiler);
+    return script;
+  }
+
+
+  /**
+   * Records the calls to every script in this cache in the given registry, or stops recording if it's null.
+   * Scripts built later, including reloaded ones, record there too.
+   * @param metrics the registry to record in, or null.
+   */
+  public void setMetrics(MetricsRegistry metrics) {
+    this.metrics = metrics;
+    for (Script script : this.cache.asMap().values()) {
+      script.setMetrics(metrics);
+    }
+  }
+
+
+  /**
+   * Logs slow calls to every script in this cache in the given log, or stops logging them if it's null. Scripts
+   * built later, including reloaded ones, log there too.
+   * @param slowCallLog the log to write slow calls to, or null.
+   */
+  public void setSlowCallLog(SlowCallLog slowCallLog) {
+    this.slowCallLog = slowCallLog;
+    for (Script script : this.cache.asMap().values()) {
+      script.setSlowCallLog(slowCallLog);
+    }
+  }
+
+
+  /**
+   * Records the JS calls of every script in this cache with the given profiler, or stops recording if it's null.
+   * Scripts built later are profiled too. Only interpreted code is seen, so the cache should be created with a
+   * ScriptCompilation at optimization level -1: see {@link Profiler}.
+   * @param profiler the profiler to record with, or null.
+   */
+  public void setProfiler(Profiler profiler) {
+    this.profiler = profiler;
+    for (Script script : this.cache.asMap().values()) {
+      script.setProfiler(profiler);
+    }
+  }
+
+
+  /**
+   * Samples the threads running every script in this cache with the given profiler, or stops if it's null. Scripts
+   * built later are sampled too. Only scripts compiled to classes are seen: see {@link SamplingProfiler}.
+   * @param samplingProfiler the profiler to sample with, or null.
+   */
+  public void setSamplingProfiler(SamplingProfiler samplingProfiler) {
+    this.samplingProfiler = samplingProfiler;
+    for (Script script : this.cache.asMap().values()) {
+      script.setSamplingProfiler(samplingProfiler);
+    }
+  }
+
+
+  /**
+   * Sets whether scripts built from now on find the modules they load with string literal core.load calls, and read
+   * and compile them in parallel on a shared pool before evaluating the script. This makes building a script with
+   * many modules faster when compiling them is slow, at the cost of parsing every source one more time, and it calls
+   * the LoadPath from several threads at once. Off by default.
+   * @param prefetching whether to prefetch modules.
+   */
+  public void setPrefetching(boolean prefetching) {
+    this.prefetching = prefetching;
+  }
+
+
+  /**
+   * Traces the module loads of every script this cache builds from now on, including reloads, with the given tracer,
+   * or stops tracing if it's null.
+   * @param loadTracer the tracer to record with, or null.
+   */
+  public void setLoadTracer(LoadTracer loadTracer) {
+    this.loadTracer = loadTracer;
+  }
+
+
+  /**
+   * Start watching the directories behind this cache's LoadPath. When a file changes, each cached script that read
+   * it is rebuilt on a background thread. Callers are served the previous version until the rebuild finishes, and
+   * the new version is swapped in atomically. If the rebuild fails, the previous version is kept.
+   * @throws IOException if the directories can't be watched.
+   * @throws IllegalStateException if the LoadPath isn't a WatchableLoadPath.
+   */
+  public synchronized void watch() throws IOException {
+    if (!(this.loadPath instanceof WatchableLoadPath)) {
+      throw new IllegalStateException("Can't watch a LoadPath that doesn't read from local directories");
+    }
+    if (this.watcher != null) {
+      return;
+    }
+
+    List<File> directories = ((WatchableLoadPath) this.loadPath).getDirectories();
+    if (directories.isEmpty()) {
+      LOG.warn("No local directories in the LoadPath, so no scripts will be reloaded");
+    }
+
+    this.reloadExecutor = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("hegemon-script-reload-%d").build());
+    this.watcher = new DirectoryWatcher(directories, new DirectoryWatcher.Listener() {
+      @Override
+      public void fileChanged(String name) {
+        scheduleReloads(name);
       }
     });
   }
 
 
+  /**
+   * Stop watching for changes. Reloads already in progress are abandoned.
+   */
+  public synchronized void stopWatching() {
+    if (this.watcher != null) {
+      try {
+        this.watcher.close();
+      } catch (IOException e) {
+        LOG.warn("Error closing directory watcher", e);
+      }
+      this.reloadExecutor.shutdownNow();
+      this.watcher = null;
+      this.reloadExecutor = null;
+      this.pendingReloads.clear();
+    }
+  }
+
+
+  private void scheduleReloads(String changedFile) {
+    for (Map.Entry<String, Script> entry : this.cache.asMap().entrySet()) {
+      if (entry.getKey().equals(changedFile) || entry.getValue().getDependencies().contains(changedFile)) {
+        scheduleReload(entry.getKey());
+      }
+    }
+  }
+
+
+  private synchronized void scheduleReload(String name) {
+    if (this.reloadExecutor == null) {
+      return;
+    }
+    // Restart the delay on every change, so a file written in several chunks is only read once it's finished.
+    PendingReload previous = this.pendingReloads.get(name);
+    if (previous != null) {
+      previous.future.cancel(false);
+    }
+    PendingReload pending = new PendingReload(name);
+    pending.future = this.reloadExecutor.schedule(pending, RELOAD_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    this.pendingReloads.put(name, pending);
+  }
+
+
+  /**
+   * A reload waiting for changes to a script's files to settle.
+   */
+  private final class PendingReload implements Runnable {
+
+    private final String name;
+
+    private ScheduledFuture<?> future; // MUTABLE: set once scheduled, guarded by ScriptCache.this.
+
+
+    private PendingReload(String name) {
+      this.name = name;
+    }
+
+
+    @Override
+    public void run() {
+      synchronized (ScriptCache.this) {
+        // A later change may have replaced this reload after it had already started running.
+        if (ScriptCache.this.pendingReloads.get(this.name) != this) {
+          return;
+        }
+        ScriptCache.this.pendingReloads.remove(this.name);
+      }
+      reload(this.name);
+    }
+
+  }
+
+
+  private void reload(String name) {
+    Script current = this.cache.asMap().get(name);
+    if (current == null) {
+      return;
+    }
+
+    Script fresh;
+    try {
+      fresh = build(name);
+    } catch (LoadError e) {
+      LOG.error("Unable to reload " + name + ", keeping the previous version", e);
+      return;
+    } catch (RuntimeException e) { // lint: disable=IllegalCatchCheck
+      LOG.error("Unable to reload " + name + ", keeping the previous version", e);
+      return;
+    }
+
+    // Only swap if nobody else replaced or invalidated the entry while we were building.
+    if (this.cache.asMap().replace(name, current, fresh)) {
+      LOG.info("Reloaded " + name);
+    }
+  }
+
+
+  /**
+   * Start recording which scripts are requested, how often, and which modules they load. The recording is written
+   * to the given manifest file every period and when the JVM shuts down. Pass the manifest to preload on the next
+   * start to build those scripts before serving any requests.
+   * @param manifest the file to write.
+   * @param period how often to write it.
+   * @param unit the unit of period.
+   */
+  public synchronized void recordManifest(final File manifest, long period, TimeUnit unit) {
+    if (this.requestLog != null) {
+      throw new IllegalStateException("Already recording");
+    }
+    this.requestLog = new RequestLog();
+
+    Runnable write = new Runnable() {
+      @Override
+      public void run() {
+        try {
+          getManifest().write(manifest);
+        } catch (IOException e) {
+          LOG.warn("Unable to write preload manifest " + manifest, e);
+        }
+      }
+    };
+    this.recordExecutor = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("hegemon-manifest-writer-%d").build());
+    this.recordExecutor.scheduleWithFixedDelay(write, period, period, unit);
+    this.recordShutdownHook = new Thread(write, "hegemon-manifest-shutdown");
+    Runtime.getRuntime().addShutdownHook(this.recordShutdownHook);
+  }
+
+
+  /**
+   * Stop recording. Call getManifest first to keep what was recorded.
+   */
+  public synchronized void stopRecording() {
+    if (this.requestLog != null) {
+      this.recordExecutor.shutdownNow();
+      try {
+        Runtime.getRuntime().removeShutdownHook(this.recordShutdownHook);
+      } catch (IllegalStateException e) {
+        // Already shutting down, so the hook is running or about to.
+      }
+      this.requestLog = null;
+      this.recordExecutor = null;
+      this.recordShutdownHook = null;
+    }
+  }
+
+
+  /**
+   * Returns what has been recorded so far, with scripts in the order they were first requested.
+   * @throws IllegalStateException if this cache isn't recording.
+   */
+  public PreloadManifest getManifest() {
+    RequestLog log = this.requestLog;
+    if (log == null) {
+      throw new IllegalStateException("Not recording");
+    }
+
+    List<PreloadManifest.Entry> entries = Lists.newArrayList();
+    for (String name : log.order) {
+      Script script = this.cache.asMap().get(name);
+      Set<String> modules = script == null ? ImmutableSet.<String>of() : script.getLoadedModules();
+      entries.add(new PreloadManifest.Entry(name, log.counts.get(name).get(), modules));
+    }
+    return new PreloadManifest(entries);
+  }
+
+
+  /**
+   * Build every script in the manifest, and load the modules each one loaded last time, using the given number of
+   * threads. Blocks until everything is loaded, so call it before the service reports ready. Scripts that fail to
+   * load are logged and skipped.
+   * @param manifest the scripts to load.
+   * @param parallelism how many scripts to build at once.
+   * @return the number of scripts that loaded successfully.
+   * @throws InterruptedException if interrupted while waiting for scripts to load.
+   */
+  public int preload(PreloadManifest manifest, int parallelism) throws InterruptedException {
+    List<Callable<Boolean>> tasks = Lists.newArrayList();
+    for (final PreloadManifest.Entry entry : manifest.getEntries()) {
+      tasks.add(new Callable<Boolean>() {
+        @Override
+        public Boolean call() {
+          return preload(entry);
+        }
+      });
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(parallelism,
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("hegemon-preload-%d").build());
+    try {
+      int loaded = 0;
+      for (Future<Boolean> result : executor.invokeAll(tasks)) {
+        if (Futures.getUnchecked(result)) {
+          loaded++;
+        }
+      }
+      return loaded;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+
+  private boolean preload(PreloadManifest.Entry entry) {
+    try {
+      Script script = this.cache.get(entry.getName());
+      for (String module : entry.getModules()) {
+        script.load(module);
+      }
+      return true;
+    } catch (ExecutionException e) {
+      LOG.warn("Unable to preload " + entry.getName(), e.getCause());
+    } catch (LoadError e) {
+      LOG.warn("Unable to preload a module of " + entry.getName(), e);
+    } catch (RuntimeException e) { // lint: disable=IllegalCatchCheck
+      LOG.warn("Unable to preload " + entry.getName(), e);
+    }
+    return false;
+  }
+
+
+  /**
+   * Returns statistics for this cache. They're all zero unless the cache was built with recordStats.
+   */
+  public CacheStats stats() {
+    return this.cache.stats();
+  }
+
+
+  /**
+   * Returns the number of scripts in this cache.
+   */
+  public long size() {
+    return this.cache.size();
+  }
+
+
+  /**
+   * Estimates the heap retained by each script in this cache. This walks every script's objects, so it's meant for
+   * monitoring rather than for each request.
+   * @return the estimates, by script name.
+   */
+  public Map<String, RetainedSize> retainedSizes() {
+    Map<String, RetainedSize> result = Maps.newTreeMap();
+    for (Map.Entry<String, Script> entry : this.cache.asMap().entrySet()) {
+      result.put(entry.getKey(), entry.getValue().retainedSize());
+    }
+    return result;
+  }
+
+
+  /**
+   * Returns a view of this cache for JMX, to register with an MBeanServer. For example:
+   *
+   *     ManagementFactory.getPlatformMBeanServer().registerMBean(cache.getMXBean(),
+   *         new ObjectName("com.cueup.hegemon:type=ScriptCache,name=views"));
+   */
+  public ScriptCacheMXBean getMXBean() {
+    return new ScriptCacheMXBean() {
+      @Override
+      public long getSize() {
+        return size();
+      }
+
+
+      @Override
+      public long getRetainedBytes() {
+        long total = 0;
+        for (RetainedSize size : retainedSizes().values()) {
+          total += size.getTotalBytes();
+        }
+        return total;
+      }
+
+
+      @Override
+      public Map<String, Long> getRetainedBytesByScript() {
+        Map<String, Long> result = Maps.newTreeMap();
+        for (Map.Entry<String, RetainedSize> entry : retainedSizes().entrySet()) {
+          result.put(entry.getKey(), entry.getValue().getTotalBytes());
+        }
+        return result;
+      }
+
+
+      @Override
+      public void clear() {
+        ScriptCache.this.clear();
+      }
+    };
+  }
+
+
   /**
    * Clear the cache.
    */
@@ -78,6 +629,11 @@ public class ScriptCache {
    * @throws ScriptException if the script doesn't evaluate correctly.
    */
   public Script get(String script, boolean reload) throws LoadError, ScriptException {
+    RequestLog log = this.requestLog;
+    if (log != null) {
+      log.record(script);
+    }
+
     try {
       if (reload) {
         this.cache.invalidate(script);
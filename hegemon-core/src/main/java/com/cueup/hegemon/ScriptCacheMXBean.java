@@ -0,0 +1,49 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon;
+
+import java.util.Map;
+
+/**
+ * The JMX view of a ScriptCache: see ScriptCache#getMXBean.
+ */
+public interface ScriptCacheMXBean {
+
+  /**
+   * Returns the number of scripts in the cache.
+   */
+  long getSize();
+
+
+  /**
+   * Returns the estimated heap retained by all the scripts in the cache, in bytes.
+   */
+  long getRetainedBytes();
+
+
+  /**
+   * Returns the estimated heap retained by each script in the cache, in bytes.
+   */
+  Map<String, Long> getRetainedBytesByScript();
+
+
+  /**
+   * Empties the cache.
+   */
+  void clear();
+
+}
@@ -16,6 +16,8 @@
 
 package com.cueup.hegemon;
 
+import java.io.File;
+
 /**
  * Interface for a class that can locate scripts.
  */
@@ -27,4 +29,14 @@ public abstract class ScriptLocator {
    * @throws LoadError if the file can't be found.
    */
   public abstract String getFile(String name) throws LoadError;
+
+
+  /**
+   * Returns the local directory this locator reads files from, if any. Files are found under it by the same
+   * names passed to getFile.
+   * @return the directory, or null if this locator doesn't read from the local file system.
+   */
+  public File getDirectory() {
+    return null;
+  }
 }
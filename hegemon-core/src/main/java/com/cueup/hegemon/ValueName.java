@@ -16,6 +16,8 @@
 
 package com.cueup.hegemon;
 
+import com.google.common.base.Objects;
+
 /**
  * A value identifier. Used to give names to static values.
  */
@@ -33,4 +35,46 @@ public class ValueName {
     this.namespace = namespace;
     this.name = name;
   }
+
+
+  /**
+   * Returns the namespace the value is defined in.
+   */
+  public String getNamespace() {
+    return this.namespace;
+  }
+
+
+  /**
+   * Returns the name of the value.
+   */
+  public String getName() {
+    return this.name;
+  }
+
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    ValueName other = (ValueName) o;
+    return Objects.equal(this.namespace, other.namespace) && Objects.equal(this.name, other.name);
+  }
+
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(this.namespace, this.name);
+  }
+
+
+  @Override
+  public String toString() {
+    return this.namespace + ":" + this.name;
+  }
 }
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded, concurrent store of named values shared by every script in the JVM, for reference data that's
+ * expensive to build.
+ *
+ * Values are computed at most once at a time: concurrent callers asking for the same missing value wait for the
+ * first one to compute it. Each value can have its own time to live. Values are shared between threads and scripts,
+ * so treat them as immutable.
+ */
+public class ValueStore {
+
+  /**
+   * A stored value and when it expires.
+   */
+  private static final class Holder {
+
+    private final Object value;
+
+    private final long expiresAtNanos;
+
+
+    private Holder(Object value, long ttlMillis) {
+      this.value = value;
+      this.expiresAtNanos = ttlMillis > 0
+          ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttlMillis)
+          : Long.MAX_VALUE;
+    }
+
+
+    private boolean isExpired() {
+      return this.expiresAtNanos != Long.MAX_VALUE && System.nanoTime() - this.expiresAtNanos >= 0;
+    }
+
+  }
+
+
+  private final Cache<ValueName, Holder> cache;
+
+
+  /**
+   * Creates a store holding at most maximumSize values, recording statistics.
+   * @param maximumSize the maximum number of values.
+   */
+  public ValueStore(long maximumSize) {
+    this(CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats());
+  }
+
+
+  /**
+   * Creates a store bounded as configured by cacheBuilder.
+   * @param cacheBuilder the configuration for the underlying cache.
+   */
+  public ValueStore(CacheBuilder<Object, Object> cacheBuilder) {
+    this.cache = cacheBuilder.build();
+  }
+
+
+  /**
+   * Returns the named value, computing it with loader if it's missing or expired. Only one caller computes a given
+   * value at a time; the rest wait for its result.
+   * @param name the name of the value.
+   * @param ttlMillis how long a newly computed value lives, in milliseconds. 0 or less means until evicted.
+   * @param loader computes the value. Exceptions it throws are rethrown, unchecked.
+   * @return the value.
+   */
+  public Object get(ValueName name, final long ttlMillis, final Callable<?> loader) {
+    Holder current = this.cache.asMap().get(name);
+    if (current != null && current.isExpired()) {
+      this.cache.asMap().remove(name, current);
+    }
+
+    try {
+      return this.cache.get(name, new Callable<Holder>() {
+        @Override
+        public Holder call() throws Exception { // lint: disable=IllegalThrowsCheck
+          return new Holder(loader.call(), ttlMillis);
+        }
+      }).value;
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    } catch (UncheckedExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+
+  /**
+   * Returns the named value, computing it with loader if it's missing. It lives until evicted.
+   * @see ValueStore#get(ValueName, long, Callable)
+   */
+  public Object get(ValueName name, Callable<?> loader) {
+    return get(name, 0, loader);
+  }
+
+
+  /**
+   * Returns the named value, or null if it's missing or expired.
+   * @param name the name of the value.
+   */
+  public Object getIfPresent(ValueName name) {
+    Holder holder = this.cache.getIfPresent(name);
+    return holder == null || holder.isExpired() ? null : holder.value;
+  }
+
+
+  /**
+   * Stores a value.
+   * @param name the name of the value.
+   * @param value the value.
+   * @param ttlMillis how long the value lives, in milliseconds. 0 or less means until evicted.
+   */
+  public void put(ValueName name, Object value, long ttlMillis) {
+    this.cache.put(name, new Holder(value, ttlMillis));
+  }
+
+
+  /**
+   * Stores a value that lives until evicted.
+   * @param name the name of the value.
+   * @param value the value.
+   */
+  public void put(ValueName name, Object value) {
+    put(name, value, 0);
+  }
+
+
+  /**
+   * Removes the named value.
+   */
+  public void invalidate(ValueName name) {
+    this.cache.invalidate(name);
+  }
+
+
+  /**
+   * Removes all values.
+   */
+  public void invalidateAll() {
+    this.cache.invalidateAll();
+  }
+
+
+  /**
+   * Returns the number of stored values, including expired ones that haven't been replaced yet.
+   */
+  public long size() {
+    return this.cache.size();
+  }
+
+
+  /**
+   * Returns statistics for this store. They're all zero unless it was built with recordStats.
+   */
+  public CacheStats stats() {
+    return this.cache.stats();
+  }
+
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * A LoadPath whose files live in directories on the local file system, so changes to them can be watched.
+ */
+public interface WatchableLoadPath extends LoadPath {
+
+  /**
+   * Returns the local directories this LoadPath reads files from, in search order.
+   * @return the directories. Files are found under each directory by the names passed to load.
+   */
+  List<File> getDirectories();
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.compilation;
+
+import com.cueup.hegemon.ScriptBundle;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.optimizer.Codegen;
+
+/**
+ * Script compilation that uses the bytecode precompiled into a ScriptBundle when it matches the source being
+ * compiled, and otherwise falls back to another compilation.
+ *
+ * Each call defines a new class, so wrap this in a CachedScriptCompilation.
+ */
+public class BundleScriptCompilation implements ScriptCompilation {
+
+  private final ScriptBundle bundle;
+
+  private final ScriptCompilation fallback;
+
+
+  public BundleScriptCompilation(ScriptBundle bundle, ScriptCompilation fallback) {
+    this.bundle = bundle;
+    this.fallback = fallback;
+  }
+
+
+  @Override
+  public Script compile(Context c, String name, String source) {
+    Object[] nameAndBytes = this.bundle.getCompiled(name, source);
+    if (nameAndBytes == null) {
+      return this.fallback.compile(c, name, source);
+    }
+    return new Codegen().createScriptObject(nameAndBytes, null);
+  }
+
+}
@@ -75,4 +75,12 @@ public class CachedScriptCompilation implements ScriptCompilation {
     return this.compilationCache.getUnchecked(new CompilationKey(c, source, name));
   }
 
+
+  /**
+   * Returns whether compiling the given source would be a cache hit.
+   */
+  public boolean isCached(String name, String source) {
+    return this.compilationCache.getIfPresent(new CompilationKey(null, source, name)) != null;
+  }
+
 }
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.POJONode;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import org.mozilla.javascript.BaseFunction;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.ScriptRuntime;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.Undefined;
+import org.mozilla.javascript.Wrapper;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Converts Java values to native JS values directly: maps and beans become JS objects, collections and arrays become
+ * JS arrays, and numbers, strings and booleans become JS primitives. This gives the same result as serializing with
+ * Jackson and parsing with JSON.parse, without building the intermediate string.
+ *
+ * Beans are converted through their public getters and public fields, found once per class. Jackson annotations
+ * are not consulted; values that rely on them should still go through json.roundtripJson. An object reached twice
+ * converts to the same JS object, so shared references and cycles are kept rather than copied or rejected.
+ */
+public final class NativeConverter {
+
+  /**
+   * How deeply values may nest by default before conversion gives up.
+   */
+  public static final int DEFAULT_MAX_DEPTH = 100;
+
+
+  /**
+   * The readable properties of each bean class, in the order they are converted. Stored on the class itself, so the
+   * getters and fields held here don't keep the class or its ClassLoader alive.
+   */
+  private static final ClassValue<ImmutableList<Property>> PROPERTIES = new ClassValue<ImmutableList<Property>>() {
+    @Override
+    protected ImmutableList<Property> computeValue(Class<?> cls) {
+      try {
+        return properties(cls);
+      } catch (IntrospectionException e) {
+        throw Throwables.propagate(e);
+      }
+    }
+  };
+
+
+  private final Context cx;
+
+  private final Scriptable scope;
+
+  private final int maxDepth;
+
+  /**
+   * The JS object each Java object converted so far became.
+   */
+  private final Map<Object, Scriptable> converted = Maps.newIdentityHashMap();
+
+
+  private NativeConverter(Context cx, Scriptable scope, int maxDepth) {
+    this.cx = cx;
+    this.scope = scope;
+    this.maxDepth = maxDepth;
+  }
+
+
+  /**
+   * Converts value to a native JS value, nesting at most {@link #DEFAULT_MAX_DEPTH} deep.
+   * @param cx the current context.
+   * @param scope the scope to create JS objects in.
+   * @param value the Java value.
+   * @return the JS value.
+   */
+  public static Object toNative(Context cx, Scriptable scope, Object value) {
+    return toNative(cx, scope, value, DEFAULT_MAX_DEPTH);
+  }
+
+
+  /**
+   * Converts value to a native JS value.
+   * @param cx the current context.
+   * @param scope the scope to create JS objects in.
+   * @param value the Java value.
+   * @param maxDepth how many objects and arrays deep value may nest.
+   * @return the JS value.
+   * @throws IllegalArgumentException if value nests more deeply than maxDepth.
+   */
+  public static Object toNative(Context cx, Scriptable scope, Object value, int maxDepth) {
+    return new NativeConverter(cx, scope, maxDepth).convert(value, 0);
+  }
+
+
+  /**
+   * Creates the JS function behind json.toNative. Called once by 'hegemon/json' when it is loaded.
+   * @return a function that takes a value and an optional maximum depth, and throws a RangeError past that depth.
+   */
+  public static Function function() {
+    Context cx = Context.getCurrentContext();
+    Scriptable scope = ScriptableObject.getTopLevelScope(ScriptRuntime.getTopCallScope(cx));
+    BaseFunction function = new BaseFunction() {
+      @Override
+      public Object call(Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
+        Object value = args.length > 0 ? args[0] : Undefined.instance;
+        int maxDepth = args.length > 1 && args[1] != Undefined.instance
+            ? ScriptRuntime.toInt32(args[1]) : DEFAULT_MAX_DEPTH;
+        try {
+          return toNative(cx, ScriptableObject.getTopLevelScope(scope), value, maxDepth);
+        } catch (IllegalArgumentException e) {
+          throw ScriptRuntime.constructError("RangeError", e.getMessage());
+        }
+      }
+
+
+      @Override
+      public String getFunctionName() {
+        return "toNative";
+      }
+
+
+      @Override
+      public int getArity() {
+        return 2;
+      }
+    };
+    ScriptRuntime.setFunctionProtoAndParent(function, scope);
+    return function;
+  }
+
+
+  private Object convert(Object value, int depth) {
+    Object v = value instanceof Wrapper ? ((Wrapper) value).unwrap() : value;
+    if (v == null || v == Undefined.instance || v instanceof Boolean || v instanceof Scriptable) {
+      return v;
+    } else if (v instanceof CharSequence || v instanceof Character || v instanceof Enum) {
+      return v.toString();
+    } else if (v instanceof Integer || v instanceof Short || v instanceof Byte) {
+      return ((Number) v).intValue();
+    } else if (v instanceof Number) {
+      return ((Number) v).doubleValue();
+    } else if (v instanceof Date) {
+      return (double) ((Date) v).getTime();
+    } else if (v instanceof Calendar) {
+      return (double) ((Calendar) v).getTimeInMillis();
+    } else if (v instanceof JsonNode && ((JsonNode) v).isValueNode()) {
+      return convertValueNode((JsonNode) v, depth);
+    }
+
+    Scriptable result = this.converted.get(v);
+    if (result != null) {
+      return result;
+    }
+    if (depth >= this.maxDepth) {
+      throw new IllegalArgumentException("Can't convert values nested more than " + this.maxDepth + " deep");
+    }
+
+    if (v instanceof Map) {
+      result = this.cx.newObject(this.scope);
+      this.converted.put(v, result);
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) v).entrySet()) {
+        put(result, String.valueOf(entry.getKey()), convert(entry.getValue(), depth + 1));
+      }
+    } else if (v instanceof JsonNode && ((JsonNode) v).isObject()) {
+      result = this.cx.newObject(this.scope);
+      this.converted.put(v, result);
+      Iterator<Map.Entry<String, JsonNode>> fields = ((JsonNode) v).fields();
+      while (fields.hasNext()) {
+        Map.Entry<String, JsonNode> field = fields.next();
+        put(result, field.getKey(), convert(field.getValue(), depth + 1));
+      }
+    } else if (v instanceof Iterable) {
+      result = this.cx.newArray(this.scope, 0);
+      this.converted.put(v, result);
+      int index = 0;
+      for (Object element : (Iterable<?>) v) {
+        result.put(index++, result, convert(element, depth + 1));
+      }
+    } else if (v.getClass().isArray()) {
+      int length = Array.getLength(v);
+      result = this.cx.newArray(this.scope, length);
+      this.converted.put(v, result);
+      for (int i = 0; i < length; i++) {
+        result.put(i, result, convert(Array.get(v, i), depth + 1));
+      }
+    } else if (v.getClass().getName().startsWith("java.")) {
+      // Other JDK values, like UUIDs, URIs and files, are written as strings by Jackson.
+      return v.toString();
+    } else {
+      result = this.cx.newObject(this.scope);
+      this.converted.put(v, result);
+      for (Property property : PROPERTIES.get(v.getClass())) {
+        put(result, property.name, convert(property.get(v), depth + 1));
+      }
+    }
+    return result;
+  }
+
+
+  private Object convertValueNode(JsonNode node, int depth) {
+    if (node.isNull() || node.isMissingNode()) {
+      return null;
+    } else if (node.isBoolean()) {
+      return node.booleanValue();
+    } else if (node.isInt()) {
+      return node.intValue();
+    } else if (node.isNumber()) {
+      return node.doubleValue();
+    } else if (node.isPojo()) {
+      return convert(((POJONode) node).getPojo(), depth);
+    }
+    return node.asText();
+  }
+
+
+  /**
+   * Sets obj[name] the way a JS assignment would, so numeric names become indexes.
+   */
+  private void put(Scriptable obj, String name, Object value) {
+    ScriptRuntime.setObjectElem(obj, name, value, this.cx);
+  }
+
+
+  private static ImmutableList<Property> properties(Class<?> cls) throws IntrospectionException {
+    Map<String, Property> properties = Maps.newLinkedHashMap();
+    for (PropertyDescriptor descriptor : Introspector.getBeanInfo(cls, Object.class).getPropertyDescriptors()) {
+      Method getter = descriptor.getReadMethod();
+      if (getter != null && Modifier.isPublic(getter.getModifiers()) && getter.getParameterTypes().length == 0) {
+        // Public methods of non-public classes, like anonymous ones, still need to be made accessible.
+        getter.setAccessible(true);
+        properties.put(descriptor.getName(), new Property(descriptor.getName(), getter, null));
+      }
+    }
+    for (Field field : cls.getFields()) {
+      int modifiers = field.getModifiers();
+      if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)
+          && !properties.containsKey(field.getName())) {
+        field.setAccessible(true);
+        properties.put(field.getName(), new Property(field.getName(), null, field));
+      }
+    }
+    return ImmutableList.copyOf(properties.values());
+  }
+
+
+  /**
+   * A readable bean property: a getter or a public field.
+   */
+  private static final class Property {
+
+    private final String name;
+
+    private final Method getter;
+
+    private final Field field;
+
+
+    private Property(String name, Method getter, Field field) {
+      this.name = name;
+      this.getter = getter;
+      this.field = field;
+    }
+
+
+    private Object get(Object bean) {
+      try {
+        return this.getter != null ? this.getter.invoke(bean) : this.field.get(bean);
+      } catch (InvocationTargetException e) {
+        throw Throwables.propagate(e.getCause());
+      } catch (IllegalAccessException e) {
+        throw Throwables.propagate(e);
+      }
+    }
+
+  }
+
+}
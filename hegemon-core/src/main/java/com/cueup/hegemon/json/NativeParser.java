@@ -0,0 +1,293 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.collect.Lists;
+import org.mozilla.javascript.BaseFunction;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ScriptRuntime;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.Undefined;
+import org.mozilla.javascript.WrappedException;
+import org.mozilla.javascript.Wrapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.net.URL;
+import java.util.List;
+
+/**
+ * Parses json into native JS values straight from Jackson's token stream, without buffering the text into a string
+ * for JSON.parse. Objects, arrays, strings, numbers and booleans come out as JSON.parse would make them.
+ *
+ * Readers and streams are read to the end of the value but not closed; they belong to the caller.
+ */
+public final class NativeParser {
+
+  private static final JsonFactory FACTORY = new JsonFactory()
+      .configure(JsonParser.Feature.AUTO_CLOSE_SOURCE, false);
+
+
+  private NativeParser() { }
+
+
+  /**
+   * A native function of 'hegemon/json'.
+   */
+  private abstract static class ParserFunction extends BaseFunction {
+
+    private final String name;
+
+    private final int arity;
+
+
+    ParserFunction(Scriptable scope, String name, int arity) {
+      this.name = name;
+      this.arity = arity;
+      ScriptRuntime.setFunctionProtoAndParent(this, scope);
+    }
+
+
+    @Override
+    public String getFunctionName() {
+      return this.name;
+    }
+
+
+    @Override
+    public int getArity() {
+      return this.arity;
+    }
+
+
+    @Override
+    public Object call(Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
+      try {
+        return apply(cx, ScriptableObject.getTopLevelScope(scope), args.length > 0 ? args[0] : Undefined.instance);
+      } catch (JsonParseException e) {
+        throw ScriptRuntime.constructError("SyntaxError", e.getOriginalMessage() + " at " + e.getLocation());
+      } catch (IOException e) {
+        throw new WrappedException(e);
+      }
+    }
+
+
+    /**
+     * @param cx the current context.
+     * @param scope the top level scope of the caller.
+     * @param arg the first argument.
+     * @return the JS return value.
+     * @throws IOException if the json can't be read.
+     */
+    abstract Object apply(Context cx, Scriptable scope, Object arg) throws IOException;
+
+  }
+
+
+  /**
+   * Creates the native parsing functions. Called once by 'hegemon/json' when it is loaded.
+   * @return an object whose parse and elements properties are the functions.
+   */
+  public static Scriptable functions() {
+    Context cx = Context.getCurrentContext();
+    Scriptable scope = ScriptableObject.getTopLevelScope(ScriptRuntime.getTopCallScope(cx));
+    Scriptable result = cx.newObject(scope);
+
+    ScriptableObject.putProperty(result, "parse", new ParserFunction(scope, "parse", 1) {
+      @Override
+      Object apply(Context cx, Scriptable scope, Object arg) throws IOException {
+        JsonParser parser = createParser(arg);
+        try {
+          Object value = readValue(cx, scope, parser, parser.nextToken());
+          if (parser.nextToken() != null) {
+            throw ScriptRuntime.constructError("SyntaxError", "Unexpected content after json value at "
+                + parser.getTokenLocation());
+          }
+          return value;
+        } finally {
+          parser.close();
+        }
+      }
+    });
+
+    ScriptableObject.putProperty(result, "elements", new ParserFunction(scope, "elements", 1) {
+      @Override
+      Object apply(Context cx, Scriptable scope, Object arg) throws IOException {
+        JsonParser parser = createParser(arg);
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+          parser.close();
+          throw ScriptRuntime.typeError("json.elements needs a json array");
+        }
+        return elements(cx, scope, parser);
+      }
+    });
+
+    return result;
+  }
+
+
+  /**
+   * Reads the value that starts at the parser's current token. The parser is left at the value's last token.
+   * @param cx the current context.
+   * @param scope the scope to create JS objects in.
+   * @param parser the parser, positioned at the first token of the value.
+   * @return the JS value.
+   * @throws IOException if the json can't be read.
+   */
+  public static Object read(Context cx, Scriptable scope, JsonParser parser) throws IOException {
+    return readValue(cx, scope, parser, parser.getCurrentToken());
+  }
+
+
+  private static JsonParser createParser(Object arg) throws IOException {
+    Object source = arg instanceof Wrapper ? ((Wrapper) arg).unwrap() : arg;
+    if (source instanceof CharSequence) {
+      return FACTORY.createParser(source.toString());
+    } else if (source instanceof Reader) {
+      return FACTORY.createParser((Reader) source);
+    } else if (source instanceof InputStream) {
+      return FACTORY.createParser((InputStream) source);
+    } else if (source instanceof byte[]) {
+      return FACTORY.createParser((byte[]) source);
+    } else if (source instanceof File) {
+      return FACTORY.createParser((File) source);
+    } else if (source instanceof URL) {
+      return FACTORY.createParser((URL) source);
+    }
+    throw ScriptRuntime.typeError("Can't read json from " + ScriptRuntime.toString(source));
+  }
+
+
+  private static Object readValue(Context cx, Scriptable scope, JsonParser parser, JsonToken token)
+      throws IOException {
+    if (token == null) {
+      throw ScriptRuntime.constructError("SyntaxError", "Unexpected end of json input");
+    }
+    switch (token) {
+      case START_OBJECT:
+        Scriptable obj = cx.newObject(scope);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+          String name = parser.getCurrentName();
+          ScriptRuntime.setObjectElem(obj, name, readValue(cx, scope, parser, parser.nextToken()), cx);
+        }
+        return obj;
+      case START_ARRAY:
+        List<Object> elements = Lists.newArrayList();
+        for (JsonToken next = parser.nextToken(); next != JsonToken.END_ARRAY; next = parser.nextToken()) {
+          elements.add(readValue(cx, scope, parser, next));
+        }
+        return cx.newArray(scope, elements.toArray());
+      case VALUE_STRING:
+        return parser.getText();
+      case VALUE_NUMBER_INT:
+        return parser.getNumberType() == JsonParser.NumberType.INT ? parser.getIntValue() : parser.getDoubleValue();
+      case VALUE_NUMBER_FLOAT:
+        return parser.getDoubleValue();
+      case VALUE_TRUE:
+        return Boolean.TRUE;
+      case VALUE_FALSE:
+        return Boolean.FALSE;
+      case VALUE_NULL:
+        return null;
+      default:
+        throw ScriptRuntime.constructError("SyntaxError", "Unexpected " + token + " at " + parser.getTokenLocation());
+    }
+  }
+
+
+  /**
+   * The elements of a json array, read one at a time.
+   */
+  private static final class Elements {
+
+    private final JsonParser parser;
+
+    /**
+     * The first token of the next element, once hasNext has read it.
+     */
+    private JsonToken next;
+
+
+    private Elements(JsonParser parser) {
+      this.parser = parser;
+    }
+
+
+    private boolean hasNext() throws IOException {
+      if (this.next == null && !this.parser.isClosed()) {
+        this.next = this.parser.nextToken();
+        if (this.next == JsonToken.END_ARRAY || this.next == null) {
+          this.next = null;
+          this.parser.close();
+        }
+      }
+      return this.next != null;
+    }
+
+
+    private Object next(Context cx, Scriptable scope) throws IOException {
+      if (!hasNext()) {
+        throw ScriptRuntime.constructError("Error", "No more elements");
+      }
+      JsonToken token = this.next;
+      this.next = null;
+      return readValue(cx, scope, this.parser, token);
+    }
+
+  }
+
+
+  /**
+   * @return a JS iterator, with hasNext, next and close methods, over the elements of the array the parser is at.
+   */
+  private static Scriptable elements(Context cx, Scriptable scope, JsonParser parser) {
+    final Elements elements = new Elements(parser);
+    Scriptable iterator = cx.newObject(scope);
+
+    ScriptableObject.putProperty(iterator, "hasNext", new ParserFunction(scope, "hasNext", 0) {
+      @Override
+      Object apply(Context cx, Scriptable scope, Object arg) throws IOException {
+        return elements.hasNext();
+      }
+    });
+
+    ScriptableObject.putProperty(iterator, "next", new ParserFunction(scope, "next", 0) {
+      @Override
+      Object apply(Context cx, Scriptable scope, Object arg) throws IOException {
+        return elements.next(cx, scope);
+      }
+    });
+
+    ScriptableObject.putProperty(iterator, "close", new ParserFunction(scope, "close", 0) {
+      @Override
+      Object apply(Context cx, Scriptable scope, Object arg) throws IOException {
+        elements.parser.close();
+        return Undefined.instance;
+      }
+    });
+
+    return iterator;
+  }
+
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.json;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.Version;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.NativeArray;
+import org.mozilla.javascript.NativeJavaObject;
+import org.mozilla.javascript.NativeObject;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.Undefined;
+import org.mozilla.javascript.Wrapper;
+
+import java.io.IOException;
+
+/**
+ * A Jackson module that serializes Rhino values the way JSON.stringify does.
+ *
+ * Without it, Jackson sees NativeObject and NativeArray as a Map and a List of boxed values and looks up a
+ * serializer for each one. Here JS objects and arrays are walked directly: primitives are written inline, and only
+ * wrapped Java objects go back to Jackson. As in JSON.stringify, undefined and function properties are left out,
+ * undefined array elements are null, whole numbers have no decimal point, and objects with a toJSON method are
+ * written as its result.
+ */
+public class RhinoModule extends SimpleModule {
+
+  /**
+   * Doubles with a larger magnitude aren't necessarily whole numbers that a long can represent exactly.
+   */
+  private static final double MAX_EXACT_DOUBLE = 9007199254740992.0;
+
+
+  /**
+   * Creates the module.
+   */
+  public RhinoModule() {
+    super("hegemon-rhino", Version.unknownVersion());
+    ScriptableSerializer scriptables = new ScriptableSerializer();
+    addSerializer(NativeObject.class, scriptables);
+    addSerializer(NativeArray.class, scriptables);
+    addSerializer(ScriptableObject.class, scriptables);
+    addSerializer(NativeJavaObject.class, scriptables);
+    addSerializer(Undefined.class, new UndefinedSerializer());
+    addSerializer(Double.class, new DoubleSerializer());
+  }
+
+
+  /**
+   * Serializes JS objects and arrays, and unwraps wrapped Java objects.
+   */
+  private static final class ScriptableSerializer extends StdSerializer<Scriptable> {
+
+    private ScriptableSerializer() {
+      super(Scriptable.class);
+    }
+
+
+    @Override
+    public void serialize(Scriptable value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+      writeValue(value, gen, provider);
+    }
+
+  }
+
+
+  /**
+   * Serializes undefined as null.
+   */
+  private static final class UndefinedSerializer extends StdSerializer<Undefined> {
+
+    private UndefinedSerializer() {
+      super(Undefined.class);
+    }
+
+
+    @Override
+    public void serialize(Undefined value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+      gen.writeNull();
+    }
+
+  }
+
+
+  /**
+   * Serializes doubles as JS numbers.
+   */
+  private static final class DoubleSerializer extends StdSerializer<Double> {
+
+    private DoubleSerializer() {
+      super(Double.class);
+    }
+
+
+    @Override
+    public void serialize(Double value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+      writeNumber(value, gen);
+    }
+
+  }
+
+
+  private static void writeValue(Object value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+    if (value == null || value == Undefined.instance || value == Scriptable.NOT_FOUND) {
+      gen.writeNull();
+    } else if (value instanceof CharSequence) {
+      gen.writeString(value.toString());
+    } else if (value instanceof Boolean) {
+      gen.writeBoolean((Boolean) value);
+    } else if (value instanceof Double || value instanceof Float) {
+      writeNumber(((Number) value).doubleValue(), gen);
+    } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+      gen.writeNumber(((Number) value).longValue());
+    } else if (value instanceof Wrapper) {
+      provider.defaultSerializeValue(((Wrapper) value).unwrap(), gen);
+    } else if (value instanceof Function) {
+      gen.writeNull();
+    } else if (value instanceof NativeArray) {
+      writeArray((NativeArray) value, gen, provider);
+    } else if (value instanceof Scriptable) {
+      writeObject((Scriptable) value, gen, provider);
+    } else {
+      provider.defaultSerializeValue(value, gen);
+    }
+  }
+
+
+  private static void writeNumber(double d, JsonGenerator gen) throws IOException {
+    if (Double.isNaN(d) || Double.isInfinite(d)) {
+      gen.writeNull();
+    } else if (d == Math.rint(d) && Math.abs(d) <= MAX_EXACT_DOUBLE) {
+      gen.writeNumber((long) d);
+    } else {
+      gen.writeNumber(d);
+    }
+  }
+
+
+  private static void writeArray(NativeArray array, JsonGenerator gen, SerializerProvider provider)
+      throws IOException {
+    gen.writeStartArray();
+    long length = array.getLength();
+    for (int i = 0; i < length; i++) {
+      Object element = array.get(i, array);
+      writeValue(element instanceof Function ? null : element, gen, provider);
+    }
+    gen.writeEndArray();
+  }
+
+
+  private static void writeObject(Scriptable obj, JsonGenerator gen, SerializerProvider provider) throws IOException {
+    Object toJson = ScriptableObject.getProperty(obj, "toJSON");
+    Context cx = Context.getCurrentContext();
+    if (toJson instanceof Function && cx != null) {
+      writeValue(((Function) toJson).call(cx, ScriptableObject.getTopLevelScope(obj), obj, new Object[] {""}),
+          gen, provider);
+      return;
+    }
+
+    gen.writeStartObject();
+    for (Object id : obj.getIds()) {
+      Object value = id instanceof Integer ? obj.get((Integer) id, obj) : obj.get(id.toString(), obj);
+      if (value != Scriptable.NOT_FOUND && value != Undefined.instance && !(value instanceof Function)) {
+        gen.writeFieldName(id.toString());
+        writeValue(value, gen, provider);
+      }
+    }
+    gen.writeEndObject();
+  }
+
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.metrics;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import org.mozilla.javascript.EcmaError;
+import org.mozilla.javascript.WrappedException;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Calls, errors, latency and concurrency for one function of one script. Recording is lock-free.
+ */
+public final class FunctionMetrics implements FunctionMetricsMXBean {
+
+  private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final String script;
+
+  private final String function;
+
+  private final Histogram latency = new Histogram();
+
+  private final AtomicInteger active = new AtomicInteger();
+
+  private final AtomicLong errors = new AtomicLong();
+
+  private final ConcurrentMap<String, AtomicLong> errorsByType = Maps.newConcurrentMap();
+
+
+  FunctionMetrics(String script, String function) {
+    this.script = script;
+    this.function = function;
+  }
+
+
+  /**
+   * Records the start of a call.
+   * @return the time the call started, to pass to end.
+   */
+  public long begin() {
+    this.active.incrementAndGet();
+    return System.nanoTime();
+  }
+
+
+  /**
+   * Records the end of a call.
+   * @param start what begin returned.
+   * @param error what the call threw, or null if it returned.
+   */
+  public void end(long start, Throwable error) {
+    this.latency.record(Math.max(0, System.nanoTime() - start));
+    this.active.decrementAndGet();
+    if (error != null) {
+      this.errors.incrementAndGet();
+      String type = typeOf(error);
+      AtomicLong count = this.errorsByType.get(type);
+      if (count == null) {
+        AtomicLong created = new AtomicLong();
+        count = this.errorsByType.putIfAbsent(type, created);
+        if (count == null) {
+          count = created;
+        }
+      }
+      count.incrementAndGet();
+    }
+  }
+
+
+  /**
+   * Returns the latencies of finished calls, in nanoseconds.
+   */
+  public Histogram getLatency() {
+    return this.latency;
+  }
+
+
+  @Override
+  public String getScript() {
+    return this.script;
+  }
+
+
+  @Override
+  public String getFunction() {
+    return this.function;
+  }
+
+
+  @Override
+  public long getCalls() {
+    return this.latency.getCount();
+  }
+
+
+  @Override
+  public long getErrors() {
+    return this.errors.get();
+  }
+
+
+  @Override
+  public Map<String, Long> getErrorsByType() {
+    ImmutableMap.Builder<String, Long> result = ImmutableMap.builder();
+    for (Map.Entry<String, AtomicLong> entry : this.errorsByType.entrySet()) {
+      result.put(entry.getKey(), entry.getValue().get());
+    }
+    return result.build();
+  }
+
+
+  @Override
+  public int getActive() {
+    return this.active.get();
+  }
+
+
+  @Override
+  public double getMeanMillis() {
+    return this.latency.getMean() / NANOS_PER_MILLI;
+  }
+
+
+  @Override
+  public double getP50Millis() {
+    return this.latency.getValueAtQuantile(0.5) / NANOS_PER_MILLI;
+  }
+
+
+  @Override
+  public double getP99Millis() {
+    return this.latency.getValueAtQuantile(0.99) / NANOS_PER_MILLI;
+  }
+
+
+  @Override
+  public double getP999Millis() {
+    return this.latency.getValueAtQuantile(0.999) / NANOS_PER_MILLI;
+  }
+
+
+  @Override
+  public double getMaxMillis() {
+    return this.latency.getMax() / NANOS_PER_MILLI;
+  }
+
+
+  @Override
+  public void reset() {
+    this.latency.reset();
+    this.errors.set(0);
+    this.errorsByType.clear();
+  }
+
+
+  /**
+   * Returns how errors are grouped: the name of a JS error, the class of a wrapped Java exception, or otherwise the
+   * class of the error itself.
+   */
+  public static String typeOf(Throwable error) {
+    if (error instanceof EcmaError) {
+      return ((EcmaError) error).getName();
+    } else if (error instanceof WrappedException) {
+      return ((WrappedException) error).getWrappedException().getClass().getName();
+    }
+    return error.getClass().getName();
+  }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.metrics;
+
+import java.util.Map;
+
+/**
+ * The JMX view of the metrics for one function of one script.
+ */
+public interface FunctionMetricsMXBean {
+
+  /**
+   * Returns the name of the script.
+   */
+  String getScript();
+
+
+  /**
+   * Returns the function reference, as passed to Script.run, or the method name passed to Script.call.
+   */
+  String getFunction();
+
+
+  /**
+   * Returns the number of calls that have finished, successfully or not.
+   */
+  long getCalls();
+
+
+  /**
+   * Returns the number of calls that threw.
+   */
+  long getErrors();
+
+
+  /**
+   * Returns the number of calls that threw, by type of error: the JS error name, like TypeError, or the class of
+   * the exception thrown.
+   */
+  Map<String, Long> getErrorsByType();
+
+
+  /**
+   * Returns the number of calls running now.
+   */
+  int getActive();
+
+
+  /**
+   * Returns the mean latency in milliseconds.
+   */
+  double getMeanMillis();
+
+
+  /**
+   * Returns the median latency in milliseconds.
+   */
+  double getP50Millis();
+
+
+  /**
+   * Returns the 99th percentile latency in milliseconds.
+   */
+  double getP99Millis();
+
+
+  /**
+   * Returns the 99.9th percentile latency in milliseconds.
+   */
+  double getP999Millis();
+
+
+  /**
+   * Returns the highest latency in milliseconds.
+   */
+  double getMaxMillis();
+
+
+  /**
+   * Forgets the calls, errors and latencies recorded so far.
+   */
+  void reset();
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.metrics;
+
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of non-negative longs, such as latencies in nanoseconds, that can be recorded to from many
+ * threads at once.
+ *
+ * Values are counted in log-linear buckets: exact below 64, and otherwise within 1/32 (about 3%) of the value.
+ * Values of 2^40 or more, over 18 minutes in nanoseconds, share the last bucket. Percentiles read while values are
+ * being recorded reflect some, but not necessarily all, of the values recorded concurrently.
+ */
+public final class Histogram {
+
+  /**
+   * Values below 2^SUB_BUCKET_BITS have a bucket each; above, each power of two is split into 2^(SUB_BUCKET_BITS-1)
+   * buckets.
+   */
+  private static final int SUB_BUCKET_BITS = 6;
+
+  private static final int HALF_SUB_BUCKETS = 1 << (SUB_BUCKET_BITS - 1);
+
+  private static final int MAX_EXPONENT = 40;
+
+  private static final long MAX_VALUE = (1L << MAX_EXPONENT) - 1;
+
+  private static final int BUCKETS = bucketOf(MAX_VALUE) + 1;
+
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+  private final AtomicLong count = new AtomicLong();
+
+  private final AtomicLong sum = new AtomicLong();
+
+  private final AtomicLong max = new AtomicLong();
+
+
+  /**
+   * Records a value.
+   * @param value the value, at least 0.
+   */
+  public void record(long value) {
+    Preconditions.checkArgument(value >= 0, "Can't record negative values");
+    this.counts.incrementAndGet(bucketOf(Math.min(value, MAX_VALUE)));
+    this.count.incrementAndGet();
+    this.sum.addAndGet(value);
+
+    long current = this.max.get();
+    while (value > current && !this.max.compareAndSet(current, value)) {
+      current = this.max.get();
+    }
+  }
+
+
+  /**
+   * Returns the number of values recorded.
+   */
+  public long getCount() {
+    return this.count.get();
+  }
+
+
+  /**
+   * Returns the mean of the values recorded, or 0 if there are none.
+   */
+  public double getMean() {
+    long n = this.count.get();
+    return n == 0 ? 0 : (double) this.sum.get() / n;
+  }
+
+
+  /**
+   * Returns the largest value recorded, or 0 if there are none.
+   */
+  public long getMax() {
+    return this.max.get();
+  }
+
+
+  /**
+   * Returns an upper bound, within the bucket precision, for the value that the given fraction of values are at or
+   * below.
+   * @param quantile the fraction, between 0 and 1: 0.99 for the 99th percentile.
+   * @return the value, or 0 if none have been recorded.
+   */
+  public long getValueAtQuantile(double quantile) {
+    Preconditions.checkArgument(quantile >= 0 && quantile <= 1, "quantile must be between 0 and 1");
+    long[] snapshot = new long[BUCKETS];
+    long total = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      snapshot[i] = this.counts.get(i);
+      total += snapshot[i];
+    }
+    if (total == 0) {
+      return 0;
+    }
+
+    long rank = Math.max(1, (long) Math.ceil(quantile * total));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        return Math.min(highestValueIn(i), this.max.get());
+      }
+    }
+    return this.max.get();
+  }
+
+
+  /**
+   * Forgets every value recorded. Values recorded concurrently may or may not be kept.
+   */
+  public void reset() {
+    for (int i = 0; i < BUCKETS; i++) {
+      this.counts.set(i, 0);
+    }
+    this.count.set(0);
+    this.sum.set(0);
+    this.max.set(0);
+  }
+
+
+  private static int bucketOf(long value) {
+    if (value < 2 * HALF_SUB_BUCKETS) {
+      return (int) value;
+    }
+    int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    return shift * HALF_SUB_BUCKETS + (int) (value >>> shift);
+  }
+
+
+  private static long highestValueIn(int bucket) {
+    if (bucket < 2 * HALF_SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = bucket / HALF_SUB_BUCKETS - 1;
+    long top = bucket - shift * HALF_SUB_BUCKETS;
+    return ((top + 1) << shift) - 1;
+  }
+
+}
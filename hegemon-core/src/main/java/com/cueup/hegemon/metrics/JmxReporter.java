@@ -0,0 +1,102 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Registers each function's metrics as an MXBean named like
+ * com.cueup.hegemon:type=ScriptFunction,script="views/page",function="render".
+ */
+public class JmxReporter implements MetricsReporter {
+
+  private static final Logger LOG = LoggerFactory.getLogger(JmxReporter.class);
+
+  /**
+   * The default JMX domain.
+   */
+  public static final String DEFAULT_DOMAIN = "com.cueup.hegemon";
+
+  private final MBeanServer server;
+
+  private final String domain;
+
+
+  /**
+   * Creates a reporter that registers with the platform MBean server, in the default domain.
+   */
+  public JmxReporter() {
+    this(ManagementFactory.getPlatformMBeanServer(), DEFAULT_DOMAIN);
+  }
+
+
+  /**
+   * Creates a reporter.
+   * @param server the server to register with.
+   * @param domain the JMX domain to register in. Use different domains for registries that may see the same
+   *     script names.
+   */
+  public JmxReporter(MBeanServer server, String domain) {
+    this.server = server;
+    this.domain = domain;
+  }
+
+
+  /**
+   * @param metrics a function's metrics.
+   * @return the name they're registered under.
+   */
+  public ObjectName nameOf(FunctionMetrics metrics) {
+    try {
+      return new ObjectName(this.domain + ":type=ScriptFunction,script=" + ObjectName.quote(metrics.getScript())
+          + ",function=" + ObjectName.quote(metrics.getFunction()));
+    } catch (MalformedObjectNameException e) {
+      throw new IllegalArgumentException("Bad JMX domain: " + this.domain, e);
+    }
+  }
+
+
+  @Override
+  public void register(FunctionMetrics metrics) {
+    try {
+      this.server.registerMBean(metrics, nameOf(metrics));
+    } catch (JMException e) {
+      LOG.warn("Couldn't register metrics for " + metrics.getScript() + " " + metrics.getFunction(), e);
+    }
+  }
+
+
+  @Override
+  public void unregister(FunctionMetrics metrics) {
+    try {
+      this.server.unregisterMBean(nameOf(metrics));
+    } catch (InstanceNotFoundException e) {
+      // Registration failed, and was logged then.
+    } catch (JMException e) {
+      LOG.warn("Couldn't unregister metrics for " + metrics.getScript() + " " + metrics.getFunction(), e);
+    }
+  }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.metrics;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The metrics of each function called through Script.run or Script.call, by script name and function reference.
+ * Attach it with Script#setMetrics, or to every script of a ScriptCache with ScriptCache#setMetrics. Metrics are
+ * kept by name, so they carry on when a script is reloaded.
+ *
+ * For example, to see scripts' latency and errors in JMX:
+ *
+ *     scriptCache.setMetrics(new MetricsRegistry(new JmxReporter()));
+ */
+public class MetricsRegistry implements Closeable {
+
+  private final List<MetricsReporter> reporters;
+
+  private final ConcurrentMap<String, ConcurrentMap<String, FunctionMetrics>> scripts = Maps.newConcurrentMap();
+
+
+  /**
+   * Creates a registry.
+   * @param reporters where to publish each function's metrics.
+   */
+  public MetricsRegistry(MetricsReporter... reporters) {
+    this.reporters = ImmutableList.copyOf(reporters);
+  }
+
+
+  /**
+   * Returns the metrics for a function, creating them and telling the reporters about them if needed.
+   * @param script the script's name.
+   * @param function the function reference or method name.
+   * @return the function's metrics.
+   */
+  public FunctionMetrics get(String script, String function) {
+    ConcurrentMap<String, FunctionMetrics> functions = this.scripts.get(script);
+    if (functions == null) {
+      ConcurrentMap<String, FunctionMetrics> created = Maps.newConcurrentMap();
+      functions = this.scripts.putIfAbsent(script, created);
+      if (functions == null) {
+        functions = created;
+      }
+    }
+
+    FunctionMetrics metrics = functions.get(function);
+    if (metrics == null) {
+      FunctionMetrics created = new FunctionMetrics(script, function);
+      metrics = functions.putIfAbsent(function, created);
+      if (metrics == null) {
+        metrics = created;
+        for (MetricsReporter reporter : this.reporters) {
+          reporter.register(metrics);
+        }
+      }
+    }
+    return metrics;
+  }
+
+
+  /**
+   * Returns the metrics of every function called so far.
+   */
+  public List<FunctionMetrics> getAll() {
+    List<FunctionMetrics> result = Lists.newArrayList();
+    for (ConcurrentMap<String, FunctionMetrics> functions : this.scripts.values()) {
+      result.addAll(functions.values());
+    }
+    return result;
+  }
+
+
+  /**
+   * Unregisters every function's metrics from the reporters.
+   */
+  @Override
+  public void close() {
+    for (FunctionMetrics metrics : getAll()) {
+      for (MetricsReporter reporter : this.reporters) {
+        reporter.unregister(metrics);
+      }
+    }
+  }
+
+}
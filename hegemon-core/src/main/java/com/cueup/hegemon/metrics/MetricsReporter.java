@@ -0,0 +1,38 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.metrics;
+
+/**
+ * Publishes function metrics somewhere, such as JMX. A MetricsRegistry tells its reporters about each function's
+ * metrics when they're first recorded; reporters that push values periodically can keep them and read them later.
+ */
+public interface MetricsReporter {
+
+  /**
+   * Called once for each function, before its first call is recorded.
+   * @param metrics the function's metrics.
+   */
+  void register(FunctionMetrics metrics);
+
+
+  /**
+   * Called when the registry is closed.
+   * @param metrics metrics passed to register earlier.
+   */
+  void unregister(FunctionMetrics metrics);
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.profiling;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What a Profiler recorded for one JS function.
+ */
+public final class FunctionProfile {
+
+  private final String name;
+
+  private final long calls;
+
+  private final long inclusiveNanos;
+
+  private final long exclusiveNanos;
+
+
+  FunctionProfile(String name, long calls, long inclusiveNanos, long exclusiveNanos) {
+    this.name = name;
+    this.calls = calls;
+    this.inclusiveNanos = inclusiveNanos;
+    this.exclusiveNanos = exclusiveNanos;
+  }
+
+
+  /**
+   * Returns the function's name, source file and first line, like "render (views/page.js:12)".
+   */
+  public String getName() {
+    return this.name;
+  }
+
+
+  /**
+   * Returns the number of calls recorded.
+   */
+  public long getCalls() {
+    return this.calls;
+  }
+
+
+  /**
+   * Returns the time spent in the function and the functions it called. Time in recursive calls is counted once.
+   */
+  public long getInclusiveNanos() {
+    return this.inclusiveNanos;
+  }
+
+
+  /**
+   * Returns the time spent in the function itself, not counting the JS functions it called.
+   */
+  public long getExclusiveNanos() {
+    return this.exclusiveNanos;
+  }
+
+
+  @Override
+  public String toString() {
+    return this.name + ": " + this.calls + " calls, " + TimeUnit.NANOSECONDS.toMicros(this.inclusiveNanos)
+        + "us inclusive, " + TimeUnit.NANOSECONDS.toMicros(this.exclusiveNanos) + "us exclusive";
+  }
+
+}
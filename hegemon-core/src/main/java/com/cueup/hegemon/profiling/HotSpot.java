@@ -0,0 +1,91 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.profiling;
+
+/**
+ * The samples a SamplingProfiler took at one line of a JS function.
+ */
+public final class HotSpot {
+
+  private final String source;
+
+  private final String function;
+
+  private final int line;
+
+  private final long selfSamples;
+
+  private final long totalSamples;
+
+
+  HotSpot(JsFrame frame, long selfSamples, long totalSamples) {
+    this.source = frame.getSource();
+    this.function = frame.getFunction();
+    this.line = frame.getLine();
+    this.selfSamples = selfSamples;
+    this.totalSamples = totalSamples;
+  }
+
+
+  /**
+   * Returns the name of the script or module the line is in.
+   */
+  public String getSource() {
+    return this.source;
+  }
+
+
+  /**
+   * Returns the name of the function the line is in, "<anonymous>", or "<script>" for top level code.
+   */
+  public String getFunction() {
+    return this.function;
+  }
+
+
+  /**
+   * Returns the line number.
+   */
+  public int getLine() {
+    return this.line;
+  }
+
+
+  /**
+   * Returns the number of samples where this line was the innermost JS frame. That includes time spent in Java code
+   * the line called.
+   */
+  public long getSelfSamples() {
+    return this.selfSamples;
+  }
+
+
+  /**
+   * Returns the number of samples where this line was anywhere on the stack.
+   */
+  public long getTotalSamples() {
+    return this.totalSamples;
+  }
+
+
+  @Override
+  public String toString() {
+    return this.function + " (" + this.source + ":" + this.line + "): " + this.selfSamples + " self, "
+        + this.totalSamples + " total";
+  }
+
+}
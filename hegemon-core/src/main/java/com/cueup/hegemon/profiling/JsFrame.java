@@ -0,0 +1,116 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.profiling;
+
+import com.google.common.base.Objects;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A JS function's frame in a Java stack. Rhino compiles each function's body to a method of a generated class, named
+ * _c_ followed by the function name and an index, and gives the class the script's name as its source file and the
+ * script's line numbers, so Java stack traces can be mapped back to JS without help from the compiler.
+ */
+final class JsFrame {
+
+  private static final Pattern BODY_METHOD = Pattern.compile("_c_(.*)_\\d+");
+
+  private final String source;
+
+  private final String function;
+
+  private final int line;
+
+
+  private JsFrame(String source, String function, int line) {
+    this.source = source;
+    this.function = function;
+    this.line = line;
+  }
+
+
+  /**
+   * @param element a frame from a Java stack trace.
+   * @return the JS frame it represents, or null if it isn't a compiled JS function body.
+   */
+  static JsFrame of(StackTraceElement element) {
+    String file = element.getFileName();
+    if (file == null || file.endsWith(".java") || element.getLineNumber() < 0) {
+      return null;
+    }
+    Matcher matcher = BODY_METHOD.matcher(element.getMethodName());
+    if (!matcher.matches()) {
+      return null;
+    }
+    // Rhino names the bodies of anonymous functions "anonymous"; use Profiler's name for them.
+    String function = matcher.group(1);
+    if (function.equals("anonymous")) {
+      function = "<anonymous>";
+    } else if (function.equals("script")) {
+      function = "<script>";
+    }
+    return new JsFrame(file, function, element.getLineNumber());
+  }
+
+
+  /**
+   * Returns the name of the script or module the function is in.
+   */
+  String getSource() {
+    return this.source;
+  }
+
+
+  /**
+   * Returns the function's name, "<anonymous>", or "<script>" for top level code.
+   */
+  String getFunction() {
+    return this.function;
+  }
+
+
+  /**
+   * Returns the line being run.
+   */
+  int getLine() {
+    return this.line;
+  }
+
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof JsFrame)) {
+      return false;
+    }
+    JsFrame other = (JsFrame) o;
+    return this.line == other.line && this.source.equals(other.source) && this.function.equals(other.function);
+  }
+
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(this.source, this.function, this.line);
+  }
+
+
+  @Override
+  public String toString() {
+    return this.function + " (" + this.source + ":" + this.line + ")";
+  }
+
+}
@@ -0,0 +1,365 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.profiling;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.debug.DebugFrame;
+import org.mozilla.javascript.debug.DebuggableScript;
+import org.mozilla.javascript.debug.Debugger;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records call counts and time per JS function, through Rhino's Debugger hooks. Attach it to a Script with
+ * Script#setProfiler, or to every script of a ScriptCache with ScriptCache#setProfiler.
+ *
+ * Rhino only calls debuggers from interpreted code, so profiled scripts must be compiled at optimization level -1,
+ * for example with new SimpleScriptCompilation(-1). Functions compiled to classes aren't seen.
+ *
+ * Calls are kept as a tree of call paths, so both per function totals and collapsed stacks for flame graph tools
+ * can be reported. To profile under production traffic, pass sampleEvery: only every Nth outermost call on each
+ * thread is recorded, along with everything it calls, and the rest cost one thread local lookup per call.
+ */
+public class Profiler implements Debugger {
+
+  /**
+   * The name recorded for each function, computed once as it involves scanning the function's code.
+   */
+  private static final LoadingCache<DebuggableScript, String> NAMES = CacheBuilder.newBuilder()
+      .weakKeys()
+      .build(new CacheLoader<DebuggableScript, String>() {
+        @Override
+        public String load(DebuggableScript fn) {
+          return nameOf(fn);
+        }
+      });
+
+
+  private final int sampleEvery;
+
+  private final ThreadLocal<ThreadState> threadState = new ThreadLocal<ThreadState>() {
+    @Override
+    protected ThreadState initialValue() {
+      return new ThreadState();
+    }
+  };
+
+  private volatile CallNode root = new CallNode(null); // MUTABLE: replaced by reset.
+
+
+  /**
+   * Creates a profiler that records every call.
+   */
+  public Profiler() {
+    this(1);
+  }
+
+
+  /**
+   * Creates a profiler that records every Nth outermost call on each thread, and everything that call makes.
+   * @param sampleEvery N: 1 to record every call.
+   */
+  public Profiler(int sampleEvery) {
+    Preconditions.checkArgument(sampleEvery > 0, "sampleEvery must be positive");
+    this.sampleEvery = sampleEvery;
+  }
+
+
+  /**
+   * A node in the tree of call paths: one function, called from the path of its parent.
+   */
+  private static final class CallNode {
+
+    private final String name;
+
+    private final ConcurrentMap<String, CallNode> children = Maps.newConcurrentMap();
+
+    private final AtomicLong calls = new AtomicLong();
+
+    private final AtomicLong inclusiveNanos = new AtomicLong();
+
+    private final AtomicLong exclusiveNanos = new AtomicLong();
+
+
+    private CallNode(String name) {
+      this.name = name;
+    }
+
+
+    CallNode child(String childName) {
+      CallNode child = this.children.get(childName);
+      if (child == null) {
+        CallNode created = new CallNode(childName);
+        child = this.children.putIfAbsent(childName, created);
+        if (child == null) {
+          child = created;
+        }
+      }
+      return child;
+    }
+
+  }
+
+
+  /**
+   * The calls being recorded on one thread.
+   */
+  private static final class ThreadState {
+
+    /**
+     * The innermost call being recorded, or null when none is.
+     */
+    private Frame top;
+
+    /**
+     * Whether an outermost call that isn't sampled is running.
+     */
+    private boolean skipping;
+
+    private long outermostCalls;
+
+  }
+
+
+  /**
+   * One recorded call.
+   */
+  private final class Frame implements DebugFrame {
+
+    private final ThreadState state;
+
+    private final String name;
+
+    private Frame parent;
+
+    private CallNode node;
+
+    private long start;
+
+    private long childNanos;
+
+
+    private Frame(ThreadState state, String name) {
+      this.state = state;
+      this.name = name;
+    }
+
+
+    @Override
+    public void onEnter(Context cx, Scriptable activation, Scriptable thisObj, Object[] args) {
+      this.parent = this.state.top;
+      this.node = (this.parent == null ? Profiler.this.root : this.parent.node).child(this.name);
+      this.state.top = this;
+      this.start = System.nanoTime();
+    }
+
+
+    @Override
+    public void onExit(Context cx, boolean byThrow, Object resultOrException) {
+      long elapsed = System.nanoTime() - this.start;
+      this.node.calls.incrementAndGet();
+      this.node.inclusiveNanos.addAndGet(elapsed);
+      this.node.exclusiveNanos.addAndGet(elapsed - this.childNanos);
+      if (this.parent != null) {
+        this.parent.childNanos += elapsed;
+      }
+      this.state.top = this.parent;
+    }
+
+
+    @Override
+    public void onLineChange(Context cx, int lineNumber) { }
+
+
+    @Override
+    public void onExceptionThrown(Context cx, Throwable ex) { }
+
+
+    @Override
+    public void onDebuggerStatement(Context cx) { }
+
+  }
+
+
+  /**
+   * Stands in for an outermost call that isn't sampled, so the calls it makes aren't recorded either.
+   */
+  private static final class SkippedFrame implements DebugFrame {
+
+    private final ThreadState state;
+
+
+    private SkippedFrame(ThreadState state) {
+      this.state = state;
+    }
+
+
+    @Override
+    public void onEnter(Context cx, Scriptable activation, Scriptable thisObj, Object[] args) {
+      this.state.skipping = true;
+    }
+
+
+    @Override
+    public void onExit(Context cx, boolean byThrow, Object resultOrException) {
+      this.state.skipping = false;
+    }
+
+
+    @Override
+    public void onLineChange(Context cx, int lineNumber) { }
+
+
+    @Override
+    public void onExceptionThrown(Context cx, Throwable ex) { }
+
+
+    @Override
+    public void onDebuggerStatement(Context cx) { }
+
+  }
+
+
+  @Override
+  public void handleCompilationDone(Context cx, DebuggableScript fnOrScript, String source) {
+    // Functions are named lazily, when they're first called.
+  }
+
+
+  @Override
+  public DebugFrame getFrame(Context cx, DebuggableScript fnOrScript) {
+    ThreadState state = this.threadState.get();
+    if (state.skipping) {
+      return null;
+    }
+    if (state.top == null && this.sampleEvery > 1 && state.outermostCalls++ % this.sampleEvery != 0) {
+      return new SkippedFrame(state);
+    }
+    return new Frame(state, NAMES.getUnchecked(fnOrScript));
+  }
+
+
+  /**
+   * Discards everything recorded so far.
+   */
+  public void reset() {
+    this.root = new CallNode(null);
+  }
+
+
+  /**
+   * Returns the totals for each function recorded, most exclusive time first.
+   */
+  public List<FunctionProfile> getFunctions() {
+    Map<String, long[]> totals = Maps.newHashMap();
+    addTotals(this.root, HashMultiset.<String>create(), totals);
+
+    List<FunctionProfile> result = Lists.newArrayList();
+    for (Map.Entry<String, long[]> entry : totals.entrySet()) {
+      long[] total = entry.getValue();
+      result.add(new FunctionProfile(entry.getKey(), total[0], total[1], total[2]));
+    }
+    Collections.sort(result, new Comparator<FunctionProfile>() {
+      @Override
+      public int compare(FunctionProfile a, FunctionProfile b) {
+        return Long.compare(b.getExclusiveNanos(), a.getExclusiveNanos());
+      }
+    });
+    return result;
+  }
+
+
+  /**
+   * Writes the exclusive time of each call path in the collapsed stack format read by flame graph tools: one line
+   * per path, its functions outermost first, separated by semicolons, then the time in microseconds.
+   * @param out where to write the stacks.
+   * @throws IOException if out can't be written to.
+   */
+  public void writeCollapsedStacks(Writer out) throws IOException {
+    for (CallNode child : this.root.children.values()) {
+      writeCollapsedStacks(child, "", out);
+    }
+    out.flush();
+  }
+
+
+  private static void writeCollapsedStacks(CallNode node, String prefix, Writer out) throws IOException {
+    String path = prefix + node.name.replace(';', ':');
+    long micros = TimeUnit.NANOSECONDS.toMicros(node.exclusiveNanos.get());
+    if (micros > 0) {
+      out.write(path + " " + micros + "\n");
+    }
+    for (CallNode child : node.children.values()) {
+      writeCollapsedStacks(child, path + ";", out);
+    }
+  }
+
+
+  /**
+   * Adds the calls, inclusive and exclusive time of node and its descendants to totals.
+   * @param active the functions on the path to node, so that recursive calls' inclusive time is counted once.
+   */
+  private static void addTotals(CallNode node, Multiset<String> active, Map<String, long[]> totals) {
+    for (CallNode child : node.children.values()) {
+      long[] total = totals.get(child.name);
+      if (total == null) {
+        total = new long[3];
+        totals.put(child.name, total);
+      }
+      total[0] += child.calls.get();
+      if (!active.contains(child.name)) {
+        total[1] += child.inclusiveNanos.get();
+      }
+      total[2] += child.exclusiveNanos.get();
+
+      active.add(child.name);
+      addTotals(child, active, totals);
+      active.remove(child.name);
+    }
+  }
+
+
+  private static String nameOf(DebuggableScript fn) {
+    String name = fn.isFunction() ? fn.getFunctionName() : "<script>";
+    if (name == null || name.isEmpty()) {
+      name = "<anonymous>";
+    }
+    int line = Integer.MAX_VALUE;
+    for (int l : fn.getLineNumbers()) {
+      line = Math.min(line, l);
+    }
+    return name + " (" + fn.getSourceName() + (line == Integer.MAX_VALUE ? "" : ":" + line) + ")";
+  }
+
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.profiling;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.Longs;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finds the hot spots of compiled scripts by periodically sampling the stacks of threads inside Script.run or
+ * Script.call. Attach it to a Script with Script#setSamplingProfiler, or to every script of a ScriptCache with
+ * ScriptCache#setSamplingProfiler.
+ *
+ * Unlike the Profiler, this doesn't slow down the code it measures: calls only register their thread, and the stacks
+ * of all registered threads are read at once on a background thread. Frames are mapped back to JS through the source
+ * names and line numbers Rhino compiles into its generated classes, so only scripts compiled to classes, at
+ * optimization level 0 or above, are seen. Samples are taken at safepoints, so lines in tight loops may be credited
+ * to the loop's back edge or the next call.
+ */
+public class SamplingProfiler implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SamplingProfiler.class);
+
+  /**
+   * The deepest stack read, counted in Java frames.
+   */
+  private static final int MAX_DEPTH = 1024;
+
+  /**
+   * Orders hot spots by self samples, then by total samples, most first.
+   */
+  private static final Comparator<HotSpot> BY_SAMPLES = new Comparator<HotSpot>() {
+    @Override
+    public int compare(HotSpot a, HotSpot b) {
+      int result = Longs.compare(b.getSelfSamples(), a.getSelfSamples());
+      return result != 0 ? result : Longs.compare(b.getTotalSamples(), a.getTotalSamples());
+    }
+  };
+
+
+  private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+  private final ConcurrentMap<Long, Boolean> active = Maps.newConcurrentMap();
+
+  private final ScheduledExecutorService sampler;
+
+  /**
+   * Self and total sample counts for each line seen.
+   */
+  private final Map<JsFrame, long[]> counts = Maps.newHashMap(); // MUTABLE: guarded by this.
+
+  private long samples; // MUTABLE: guarded by this.
+
+  private long unattributedSamples; // MUTABLE: guarded by this.
+
+
+  /**
+   * Creates a profiler that samples every 10 milliseconds.
+   */
+  public SamplingProfiler() {
+    this(10);
+  }
+
+
+  /**
+   * Creates a profiler.
+   * @param intervalMillis how often to sample.
+   */
+  public SamplingProfiler(long intervalMillis) {
+    Preconditions.checkArgument(intervalMillis > 0, "intervalMillis must be positive");
+    this.sampler = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("hegemon-sampler-%d").build());
+    this.sampler.scheduleAtFixedRate(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          sample();
+        } catch (RuntimeException e) {
+          LOG.warn("Unexpected error sampling script stacks", e);
+        }
+      }
+    }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+
+  /**
+   * Starts sampling the current thread, unless it's already being sampled.
+   * @return whether the thread was registered, and so must be passed to exit.
+   */
+  public boolean enter() {
+    return this.active.putIfAbsent(Thread.currentThread().getId(), Boolean.TRUE) == null;
+  }
+
+
+  /**
+   * Stops sampling the current thread.
+   * @param entered what enter returned.
+   */
+  public void exit(boolean entered) {
+    if (entered) {
+      this.active.remove(Thread.currentThread().getId());
+    }
+  }
+
+
+  /**
+   * Returns the number of samples taken of threads running scripts.
+   */
+  public synchronized long getSamples() {
+    return this.samples;
+  }
+
+
+  /**
+   * Returns the number of samples with no compiled JS frames, for example of interpreted scripts.
+   */
+  public synchronized long getUnattributedSamples() {
+    return this.unattributedSamples;
+  }
+
+
+  /**
+   * Returns every line sampled, by self samples, most first.
+   */
+  public synchronized List<HotSpot> getHotSpots() {
+    List<HotSpot> result = Lists.newArrayListWithCapacity(this.counts.size());
+    for (Map.Entry<JsFrame, long[]> entry : this.counts.entrySet()) {
+      result.add(new HotSpot(entry.getKey(), entry.getValue()[0], entry.getValue()[1]));
+    }
+    Collections.sort(result, BY_SAMPLES);
+    return result;
+  }
+
+
+  /**
+   * Writes the hottest lines as a table, with the share of samples each accounts for.
+   * @param out where to write.
+   * @param limit the most lines to write.
+   * @throws IOException if writing fails.
+   */
+  public void writeReport(Writer out, int limit) throws IOException {
+    List<HotSpot> hotSpots = getHotSpots();
+    long total = Math.max(1, getSamples());
+    out.write(String.format("%d samples, %d unattributed%n", getSamples(), getUnattributedSamples()));
+    out.write(String.format("%7s %7s  %s%n", "self%", "total%", "location"));
+    for (HotSpot hotSpot : hotSpots.subList(0, Math.min(limit, hotSpots.size()))) {
+      out.write(String.format("%6.1f%% %6.1f%%  %s (%s:%d)%n",
+          100.0 * hotSpot.getSelfSamples() / total, 100.0 * hotSpot.getTotalSamples() / total,
+          hotSpot.getFunction(), hotSpot.getSource(), hotSpot.getLine()));
+    }
+    out.flush();
+  }
+
+
+  /**
+   * Discards the samples taken so far.
+   */
+  public synchronized void reset() {
+    this.counts.clear();
+    this.samples = 0;
+    this.unattributedSamples = 0;
+  }
+
+
+  /**
+   * Stops sampling. Samples taken so far can still be read.
+   */
+  @Override
+  public void close() {
+    this.sampler.shutdownNow();
+  }
+
+
+  private void sample() {
+    if (this.active.isEmpty()) {
+      return;
+    }
+    long[] ids = Longs.toArray(this.active.keySet());
+    // Read every thread's stack at once, so sampling costs the running scripts one safepoint per interval.
+    ThreadInfo[] infos = this.threads.getThreadInfo(ids, MAX_DEPTH);
+    synchronized (this) {
+      for (ThreadInfo info : infos) {
+        if (info != null) {
+          record(info.getStackTrace());
+        }
+      }
+    }
+  }
+
+
+  private void record(StackTraceElement[] stack) {
+    this.samples++;
+    boolean innermost = true;
+    Set<JsFrame> seen = Sets.newHashSet();
+    for (StackTraceElement element : stack) {
+      JsFrame frame = JsFrame.of(element);
+      if (frame == null) {
+        continue;
+      }
+      long[] count = this.counts.get(frame);
+      if (count == null) {
+        count = new long[2];
+        this.counts.put(frame, count);
+      }
+      if (innermost) {
+        count[0]++;
+        innermost = false;
+      }
+      // Recursive calls count once towards the total.
+      if (seen.add(frame)) {
+        count[1]++;
+      }
+    }
+    if (innermost) {
+      this.unattributedSamples++;
+    }
+  }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.profiling;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+/**
+ * A call that a SlowCallLog found to take longer than its threshold.
+ */
+public final class SlowCall {
+
+  private final long timestamp;
+
+  private final String script;
+
+  private final String function;
+
+  private final long durationMillis;
+
+  private final long thresholdMillis;
+
+  private final ImmutableList<String> arguments;
+
+  private final ImmutableList<String> stack;
+
+  private final String error;
+
+  private final long suppressed;
+
+
+  SlowCall(long timestamp, String script, String function, long durationMillis, long thresholdMillis,
+           List<String> arguments, List<String> stack, String error, long suppressed) {
+    this.timestamp = timestamp;
+    this.script = script;
+    this.function = function;
+    this.durationMillis = durationMillis;
+    this.thresholdMillis = thresholdMillis;
+    this.arguments = ImmutableList.copyOf(arguments);
+    this.stack = ImmutableList.copyOf(stack);
+    this.error = error;
+    this.suppressed = suppressed;
+  }
+
+
+  /**
+   * Returns when the call finished, in milliseconds since the epoch.
+   */
+  public long getTimestamp() {
+    return this.timestamp;
+  }
+
+
+  /**
+   * Returns the name of the script called.
+   */
+  public String getScript() {
+    return this.script;
+  }
+
+
+  /**
+   * Returns the function reference, as passed to Script.run, or the method name passed to Script.call.
+   */
+  public String getFunction() {
+    return this.function;
+  }
+
+
+  /**
+   * Returns how long the call took.
+   */
+  public long getDurationMillis() {
+    return this.durationMillis;
+  }
+
+
+  /**
+   * Returns the threshold the call exceeded.
+   */
+  public long getThresholdMillis() {
+    return this.thresholdMillis;
+  }
+
+
+  /**
+   * Returns a short description of each argument.
+   */
+  public List<String> getArguments() {
+    return this.arguments;
+  }
+
+
+  /**
+   * Returns the JS frames running when the call passed its threshold, innermost first, like "render (page.js:12)".
+   * Empty if the call finished before the stack was sampled, or if the script is interpreted.
+   */
+  public List<String> getStack() {
+    return this.stack;
+  }
+
+
+  /**
+   * Returns the type of error the call threw, or null if it returned.
+   */
+  public String getError() {
+    return this.error;
+  }
+
+
+  /**
+   * Returns how many slow calls were dropped by rate limiting since the previous one was logged.
+   */
+  public long getSuppressed() {
+    return this.suppressed;
+  }
+
+
+  @Override
+  public String toString() {
+    StringBuilder result = new StringBuilder();
+    result.append("Slow call to ").append(this.script).append(' ').append(this.function).append(": ")
+        .append(this.durationMillis).append("ms (threshold ").append(this.thresholdMillis).append("ms)");
+    if (this.error != null) {
+      result.append(", threw ").append(this.error);
+    }
+    result.append("\n  arguments: (").append(Joiner.on(", ").join(this.arguments)).append(')');
+    for (String frame : this.stack) {
+      result.append("\n  at ").append(frame);
+    }
+    if (this.suppressed > 0) {
+      result.append("\n  (").append(this.suppressed).append(" slow calls suppressed)");
+    }
+    return result.toString();
+  }
+
+}
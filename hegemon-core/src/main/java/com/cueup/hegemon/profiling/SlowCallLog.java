@@ -0,0 +1,331 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.profiling;
+
+import com.cueup.hegemon.metrics.FunctionMetrics;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.NativeArray;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.Undefined;
+import org.mozilla.javascript.Wrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Logs calls made through Script.run and Script.call that take longer than a threshold, with the function
+ * reference, the duration, a short summary of the arguments and the JS stack. Attach it with Script#setSlowCallLog,
+ * or to every script of a ScriptCache with ScriptCache#setSlowCallLog.
+ *
+ * The stack is captured by a watchdog thread while the call is still running, as soon as it passes its threshold,
+ * so it shows where the time went rather than where the call ended up. It's read from the Java stack of the calling
+ * thread, which only has JS frames for scripts compiled to classes: at optimization level -1 it's empty, but the
+ * Profiler can be used instead.
+ *
+ * Each slow call is written as a line of JSON to the given Writer, or logged as a warning if there isn't one. To keep
+ * a slow dependency from flooding the log, at most maxPerSecond calls are logged, and each logged call counts the
+ * ones suppressed before it.
+ */
+public class SlowCallLog implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SlowCallLog.class);
+
+  /**
+   * The longest string argument shown in full.
+   */
+  public static final int MAX_ARGUMENT_LENGTH = 80;
+
+  /**
+   * The most object keys shown for an argument.
+   */
+  public static final int MAX_ARGUMENT_KEYS = 5;
+
+  /**
+   * The most stack frames recorded.
+   */
+  public static final int MAX_STACK_DEPTH = 32;
+
+  /**
+   * How often the watchdog looks for calls that passed their threshold.
+   */
+  private static final long CHECK_INTERVAL_MILLIS = 20;
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+
+  private final long defaultThresholdMillis;
+
+  private final ConcurrentMap<String, Long> thresholds = Maps.newConcurrentMap();
+
+  private final RateLimiter rateLimiter;
+
+  private final Writer out;
+
+  private final Set<Call> active = Collections.newSetFromMap(Maps.<Call, Boolean>newConcurrentMap());
+
+  private final AtomicLong suppressed = new AtomicLong();
+
+  private final ScheduledExecutorService watchdog;
+
+
+  /**
+   * Creates a log that warns through SLF4J about calls slower than the given threshold, at most 10 per second.
+   * @param defaultThresholdMillis the threshold for scripts without one of their own.
+   */
+  public SlowCallLog(long defaultThresholdMillis) {
+    this(defaultThresholdMillis, 10, null);
+  }
+
+
+  /**
+   * Creates a log.
+   * @param defaultThresholdMillis the threshold for scripts without one of their own.
+   * @param maxPerSecond the most slow calls to log per second.
+   * @param out where to write a line of JSON per slow call, or null to log them through SLF4J.
+   */
+  public SlowCallLog(long defaultThresholdMillis, double maxPerSecond, Writer out) {
+    Preconditions.checkArgument(defaultThresholdMillis >= 0, "defaultThresholdMillis must not be negative");
+    this.defaultThresholdMillis = defaultThresholdMillis;
+    this.rateLimiter = RateLimiter.create(maxPerSecond);
+    this.out = out;
+    this.watchdog = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("hegemon-slow-calls-%d").build());
+    this.watchdog.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        captureStacks();
+      }
+    }, CHECK_INTERVAL_MILLIS, CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+
+  /**
+   * Sets the threshold for one script, overriding the default.
+   * @param script the script's name.
+   * @param thresholdMillis the threshold, or null to go back to the default.
+   */
+  public void setThreshold(String script, Long thresholdMillis) {
+    if (thresholdMillis == null) {
+      this.thresholds.remove(script);
+    } else {
+      Preconditions.checkArgument(thresholdMillis >= 0, "thresholdMillis must not be negative");
+      this.thresholds.put(script, thresholdMillis);
+    }
+  }
+
+
+  /**
+   * Returns the threshold for a script.
+   * @param script the script's name.
+   */
+  public long getThreshold(String script) {
+    Long threshold = this.thresholds.get(script);
+    return threshold == null ? this.defaultThresholdMillis : threshold;
+  }
+
+
+  /**
+   * Starts watching a call. Must be followed by end, on the same thread.
+   * @param script the script's name.
+   * @param function the function reference or method name.
+   * @return the call, to pass to end.
+   */
+  public Call begin(String script, String function) {
+    Call call = new Call(script, function, getThreshold(script));
+    this.active.add(call);
+    return call;
+  }
+
+
+  /**
+   * Stops watching a call, and logs it if it was slow.
+   * @param call what begin returned.
+   * @param arguments the arguments the call was made with.
+   * @param error what the call threw, or null.
+   */
+  public void end(Call call, Object[] arguments, Throwable error) {
+    this.active.remove(call);
+    call.done = true;
+    long durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - call.start);
+    if (durationMillis < call.thresholdMillis) {
+      return;
+    }
+    if (!this.rateLimiter.tryAcquire()) {
+      this.suppressed.incrementAndGet();
+      return;
+    }
+
+    List<String> summaries = Lists.newArrayListWithCapacity(arguments.length);
+    for (Object argument : arguments) {
+      summaries.add(summarize(argument));
+    }
+    List<String> stack = call.stack;
+    log(new SlowCall(System.currentTimeMillis(), call.script, call.function, durationMillis, call.thresholdMillis,
+        summaries, stack == null ? ImmutableList.<String>of() : stack,
+        error == null ? null : FunctionMetrics.typeOf(error), this.suppressed.getAndSet(0)));
+  }
+
+
+  /**
+   * Stops the watchdog. The Writer, if any, is left open.
+   */
+  @Override
+  public void close() {
+    this.watchdog.shutdownNow();
+  }
+
+
+  private void log(SlowCall call) {
+    if (this.out == null) {
+      LOG.warn(call.toString());
+      return;
+    }
+    try {
+      String line = MAPPER.writeValueAsString(call);
+      synchronized (this.out) {
+        this.out.write(line);
+        this.out.write('\n');
+        this.out.flush();
+      }
+    } catch (IOException e) {
+      LOG.warn("Unable to write slow call: " + call, e);
+    }
+  }
+
+
+  private void captureStacks() {
+    long now = System.nanoTime();
+    for (Call call : this.active) {
+      if (call.stack == null && now - call.start >= TimeUnit.MILLISECONDS.toNanos(call.thresholdMillis)) {
+        List<String> stack = jsStack(call.thread.getStackTrace());
+        // The thread may have moved on while its stack was read.
+        if (!call.done) {
+          call.stack = stack;
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Returns the frames of compiled JS functions in a Java stack, like "render (page.js:12)".
+   */
+  static List<String> jsStack(StackTraceElement[] elements) {
+    List<String> result = Lists.newArrayList();
+    for (StackTraceElement element : elements) {
+      JsFrame frame = JsFrame.of(element);
+      if (frame != null) {
+        result.add(frame.toString());
+        if (result.size() == MAX_STACK_DEPTH) {
+          break;
+        }
+      }
+    }
+    return result;
+  }
+
+
+  /**
+   * Returns a short description of an argument: strings truncated, numbers and booleans as they are, and the size
+   * or first few keys of anything bigger.
+   */
+  static String summarize(Object value) {
+    if (value instanceof Wrapper) {
+      value = ((Wrapper) value).unwrap();
+    }
+    if (value == null) {
+      return "null";
+    } else if (value == Undefined.instance) {
+      return "undefined";
+    } else if (value instanceof CharSequence) {
+      String string = value.toString();
+      if (string.length() <= MAX_ARGUMENT_LENGTH) {
+        return '"' + string + '"';
+      }
+      return '"' + string.substring(0, MAX_ARGUMENT_LENGTH) + "...\" (" + string.length() + " chars)";
+    } else if (value instanceof Number || value instanceof Boolean) {
+      return value.toString();
+    } else if (value instanceof NativeArray) {
+      return "Array(" + ((NativeArray) value).getLength() + ")";
+    } else if (value instanceof Function) {
+      Object name = ((Function) value).get("name", (Function) value);
+      return "function " + (name instanceof String ? name : "");
+    } else if (value instanceof Scriptable) {
+      Object[] ids = ((Scriptable) value).getIds();
+      List<Object> keys = Lists.newArrayList(ids).subList(0, Math.min(ids.length, MAX_ARGUMENT_KEYS));
+      return "{" + Joiner.on(", ").join(keys) + (ids.length > keys.size() ? ", ...}" : "}");
+    } else if (value instanceof Collection) {
+      return value.getClass().getSimpleName() + "(" + ((Collection<?>) value).size() + ")";
+    } else if (value instanceof Map) {
+      return value.getClass().getSimpleName() + "(" + ((Map<?, ?>) value).size() + ")";
+    } else if (value.getClass().isArray()) {
+      return value.getClass().getComponentType().getSimpleName() + "[" + java.lang.reflect.Array.getLength(value) + "]";
+    }
+    return value.getClass().getSimpleName();
+  }
+
+
+  /**
+   * A call being watched.
+   */
+  public static final class Call {
+
+    private final String script;
+
+    private final String function;
+
+    private final long thresholdMillis;
+
+    private final Thread thread = Thread.currentThread();
+
+    private final long start = System.nanoTime();
+
+    private volatile List<String> stack; // MUTABLE: set by the watchdog once the call passes its threshold.
+
+    private volatile boolean done; // MUTABLE: set by end.
+
+
+    private Call(String script, String function, long thresholdMillis) {
+      this.script = script;
+      this.function = function;
+      this.thresholdMillis = thresholdMillis;
+    }
+
+  }
+
+}
@@ -19,7 +19,8 @@ core = {};
 /**
  * Returns the module requested. Note that this is more like a macro than a function. If you pass in anything other
  * than a string literal, the hegemon preprocessor  won't know to upload the corresponding file to the server, and
- * stuff will break.
+ * stuff will break. String literal loads are also how a ScriptCache with prefetching on finds modules to read and
+ * compile in parallel before evaluation starts - anything else gets read and compiled on the spot when the call runs.
  * @param name - the name of the module to load.
  * @return {Object} the named module object.
  */
@@ -49,3 +50,62 @@ core.slurp = function(name) {
 core.nullable = function(el) { return el || null; };
 
 
+/**
+ * Returns the value cached under namespace and name in Script.STATIC_VALUES, calling fn() to compute it if needed.
+ * @param {string} namespace - keeps names used by different functions apart.
+ * @param {string} name - the name to cache the value under.
+ * @param {number} ttl - how long the value lives, in milliseconds, or 0 to keep it until evicted.
+ * @param {function(): T} fn - computes the value.
+ * @return {T} the cached value.
+ * @template T
+ */
+function cachedValue(namespace, name, ttl, fn) {
+  let holder = com.cueup.hegemon.Script.STATIC_VALUES.get(
+      new com.cueup.hegemon.ValueName(namespace, name), ttl, new java.util.concurrent.Callable({
+        // Wrapping the value in an array keeps it a JS value across the trip through Java.
+        call: function() { return [fn()]; }
+      }));
+  return holder[0];
+}
+
+
+/**
+ * Returns the value cached under name, calling fn() to compute it if it's missing or older than ttl. The value is
+ * shared by every script in the JVM, and concurrent callers only compute it once, so use this for expensive
+ * reference data. Treat the value as immutable.
+ * @param {string} name - the name to cache the value under.
+ * @param {number?} ttl - how long the value lives, in milliseconds. Omit it to keep the value until evicted.
+ * @param {function(): T} fn - computes the value.
+ * @return {T} the cached value.
+ * @template T
+ */
+core.cached = function(name, ttl, fn) {
+  if (typeof ttl == 'function') {
+    fn = ttl;
+    ttl = 0;
+  }
+  return cachedValue('core.cached', name, ttl || 0, fn);
+};
+
+
+/**
+ * Returns a function that caches fn's results like core.cached, keyed by name and the JSON of its arguments.
+ * @param {string} name - the name to cache results under.
+ * @param {number?} ttl - how long each result lives, in milliseconds. Omit it to keep results until evicted.
+ * @param {function(...): T} fn - the function to memoize.
+ * @return {function(...): T} the memoized function.
+ * @template T
+ */
+core.memoize = function(name, ttl, fn) {
+  if (typeof ttl == 'function') {
+    fn = ttl;
+    ttl = 0;
+  }
+  return function() {
+    let self = this;
+    let args = arguments;
+    return cachedValue('core.memoize', name + JSON.stringify(Array.prototype.slice.call(args)), ttl || 0, function() {
+      return fn.apply(self, args);
+    });
+  };
+};
@@ -17,6 +17,19 @@
 let json = {};
 
 let MAPPER = new com.fasterxml.jackson.databind.ObjectMapper();
+MAPPER.registerModule(new com.cueup.hegemon.json.RhinoModule());
+MAPPER.configure(com.fasterxml.jackson.core.JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+
+/**
+ * Rhino converts undefined to the string 'undefined' when passing it to Java.
+ * @param object - the object to pass.
+ * @return object, or null if it's undefined.
+ * @private
+ */
+json.orNull_ = function(object) {
+  return object === undefined ? null : object;
+};
+
 
 /**
  * Converts object to a json string.
@@ -24,12 +37,58 @@ let MAPPER = new com.fasterxml.jackson.databind.ObjectMapper();
  * @return {String} the resultant json.
  */
 json.toJson = function(object) {
-  return MAPPER.writeValueAsString(object);
+  return MAPPER.writeValueAsString(json.orNull_(object));
 };
 
 
-json.roundtripJson = function(object) {
-  return JSON.parse(json.toJson(object));
+/**
+ * Writes object as json directly to a Writer or OutputStream, without building a string first. The writer or stream
+ * is flushed but not closed.
+ * @param object - the object to convert.
+ * @param {java.io.Writer|java.io.OutputStream} out - where to write the json.
+ */
+json.writeTo = function(object, out) {
+  MAPPER.writeValue(out, json.orNull_(object));
 };
 
 
+/**
+ * Converts a Java value to native JS values directly: maps and beans become objects, collections and arrays become
+ * arrays. Gives the same result as json.roundtripJson without serializing to a string and parsing it again, except
+ * that Jackson annotations aren't applied, and repeated references, including cycles, become the same JS object.
+ * @param object - the Java value.
+ * @param {number=} opt_maxDepth - how deeply the value may nest, 100 by default.
+ * @return the JS value.
+ */
+json.toNative = com.cueup.hegemon.json.NativeConverter.function();
+
+
+/**
+ * Native parsing functions.
+ * @private
+ */
+json.natives_ = com.cueup.hegemon.json.NativeParser.functions();
+
+
+/**
+ * Parses json into JS values as JSON.parse does, reading it straight from a Reader or InputStream without buffering
+ * the whole text. Strings, byte arrays, Files and URLs are also accepted. Readers and streams are not closed.
+ * @param {string|java.io.Reader|java.io.InputStream} source - the json.
+ * @return the parsed value.
+ */
+json.parse = json.natives_.parse;
+
+
+/**
+ * Reads the elements of a json array one at a time, so a large array can be processed without holding all of it.
+ * Each call to next() parses one element; the rest of the input isn't read yet.
+ * @param {string|java.io.Reader|java.io.InputStream} source - json whose top level value is an array.
+ * @return {{hasNext: function(): boolean, next: function(): *, close: function()}} an iterator over the elements,
+ *     which can be passed to 'hegemon/sequence'.
+ */
+json.elements = json.natives_.elements;
+
+
+json.roundtripJson = function(object) {
+  return JSON.parse(json.toJson(object));
+};
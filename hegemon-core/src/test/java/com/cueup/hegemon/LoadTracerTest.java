@@ -0,0 +1,157 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon;
+
+import com.cueup.hegemon.compilation.CachedScriptCompilation;
+import com.cueup.hegemon.compilation.SimpleScriptCompilation;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for the LoadTracer class.
+ */
+public class LoadTracerTest {
+
+  private static ScriptCache cacheFor(File root) {
+    LoadPath loadPath = LoadPaths.customPath(ImmutableList.<ScriptLocator>of(new PathScriptLocator(root)),
+        ImmutableList.<ScriptLocator>of());
+    return new ScriptCache(loadPath, new CachedScriptCompilation(new SimpleScriptCompilation(0)));
+  }
+
+
+  private static LoadTrace.Module child(LoadTrace.Module module, String name) {
+    for (LoadTrace.Module child : module.getChildren()) {
+      if (child.getName().equals(name)) {
+        return child;
+      }
+    }
+    Assert.fail(module.getName() + " didn't load " + name);
+    return null;
+  }
+
+
+  @Test
+  public void tracesEachBuildAndRollsUpModules() throws Exception {
+    File root = Files.createTempDir();
+    Files.write("let inner = core.load('inner'); let outer = {value: inner.value};",
+        new File(root, "outer.js"), Charsets.UTF_8);
+    Files.write("let inner = {value: 1};", new File(root, "inner.js"), Charsets.UTF_8);
+    Files.write("let outer = core.load('outer'); function value() { return outer.value; }",
+        new File(root, "main.js"), Charsets.UTF_8);
+
+    ScriptCache cache = cacheFor(root);
+    LoadTracer tracer = new LoadTracer();
+    cache.setLoadTracer(tracer);
+    cache.get("main.js");
+    cache.get("main.js", true);
+
+    List<LoadTrace> traces = tracer.getTraces();
+    Assert.assertEquals(2, traces.size());
+    LoadTrace first = traces.get(0);
+    Assert.assertEquals("main.js", first.getScript());
+    Assert.assertTrue(first.getTotalNanos() > 0);
+    LoadTrace.Module core = child(first.getRoot(), "hegemon/core");
+    LoadTrace.Module outer = child(first.getRoot(), "outer");
+    LoadTrace.Module inner = child(outer, "inner");
+    Assert.assertEquals(LoadTrace.Cache.MISS, outer.getCache());
+    Assert.assertTrue(outer.getTotalNanos() >= inner.getTotalNanos());
+    Assert.assertTrue(core.getExecuteNanos() >= 0);
+
+    LoadTrace.Module rebuilt = child(traces.get(1).getRoot(), "outer");
+    Assert.assertEquals(LoadTrace.Cache.HIT, rebuilt.getCache());
+
+    Map<String, LoadTracer.ModuleStats> stats = tracer.getModuleStats();
+    Assert.assertEquals(2, stats.get("inner").getLoads());
+    Assert.assertEquals(1, stats.get("inner").getHits());
+    Assert.assertEquals(1, stats.get("inner").getMisses());
+
+    StringWriter text = new StringWriter();
+    tracer.writeText(text);
+    Assert.assertTrue(text.toString(), text.toString().contains("Most recent build:"));
+    Assert.assertTrue(text.toString(), text.toString().contains("      inner  "));
+
+    StringWriter json = new StringWriter();
+    tracer.writeJson(json);
+    JsonNode tree = new ObjectMapper().readTree(json.toString());
+    Assert.assertEquals(2, tree.get("traces").size());
+    Assert.assertEquals("main.js", tree.get("traces").get(0).get("script").asText());
+    Assert.assertTrue(tree.get("modules").size() >= 3);
+
+    // Writing json leaves the writer open for more.
+    StringWriter both = new StringWriter();
+    Writer out = new BufferedWriter(both);
+    traces.get(0).writeJson(out);
+    tracer.writeJson(out);
+    Assert.assertTrue(both.toString(), both.toString().startsWith("{\"root\":"));
+    Assert.assertTrue(both.toString(), both.toString().contains("}{\"modules\":"));
+    out.close();
+  }
+
+
+  @Test
+  public void prefetchingIsOptIn() throws Exception {
+    File root = Files.createTempDir();
+    Files.write("let module = {value: 1};", new File(root, "module.js"), Charsets.UTF_8);
+    Files.write("let module = core.load('module'); function value() { return module.value; }"
+        + " function unused() { return core.load('missing'); }", new File(root, "main.js"), Charsets.UTF_8);
+
+    ScriptCache cache = cacheFor(root);
+    LoadTracer tracer = new LoadTracer();
+    cache.setLoadTracer(tracer);
+    cache.get("main.js");
+    cache.setPrefetching(true);
+    Script script = cache.get("main.js", true);
+    Assert.assertEquals(1, ((Number) script.run("value")).intValue());
+
+    List<LoadTrace> traces = tracer.getTraces();
+    Assert.assertFalse(child(traces.get(0).getRoot(), "module").isPrefetched());
+    Assert.assertTrue(child(traces.get(1).getRoot(), "module").isPrefetched());
+    Assert.assertTrue(traces.get(1).getPrefetchNanos() > 0);
+  }
+
+
+  @Test
+  public void tracesStandaloneScripts() throws Exception {
+    LoadTracer tracer = new LoadTracer(1);
+    Script script = tracer.build("test", "function f() { return 1; }",
+        new CachedScriptCompilation(new SimpleScriptCompilation(0)), LoadPaths.defaultPath());
+    Assert.assertEquals(1, ((Number) script.run("f")).intValue());
+    tracer.build("test", "1;", new SimpleScriptCompilation(0), LoadPaths.defaultPath());
+
+    List<LoadTrace> traces = tracer.getTraces();
+    Assert.assertEquals(1, traces.size());
+    Assert.assertEquals(LoadTrace.Cache.UNKNOWN, child(traces.get(0).getRoot(), "hegemon/core").getCache());
+    Assert.assertEquals(2, tracer.getModuleStats().get("hegemon/core").getLoads());
+
+    tracer.reset();
+    Assert.assertTrue(tracer.getTraces().isEmpty());
+    Assert.assertTrue(tracer.getModuleStats().isEmpty());
+  }
+
+}
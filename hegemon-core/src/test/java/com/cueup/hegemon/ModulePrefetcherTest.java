@@ -0,0 +1,67 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon;
+
+import com.cueup.hegemon.compilation.SimpleScriptCompilation;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mozilla.javascript.Context;
+
+import java.util.Set;
+
+/**
+ * Tests for the ModulePrefetcher class.
+ */
+public class ModulePrefetcherTest {
+
+  private static Set<String> findLoads(String source) {
+    Context context = Script.enterContext();
+    try {
+      return ModulePrefetcher.findLoads(context, "test", source);
+    } finally {
+      Script.exitContext();
+    }
+  }
+
+
+  @Test
+  public void findLoadsOnlyFindsStringLiterals() {
+    Assert.assertEquals(ImmutableSet.of("a", "b/c"), findLoads(
+        "let a = core.load('a'); function f() { return core.load(\"b/c\"); } core.load(a); other.load('d');"));
+  }
+
+
+  @Test
+  public void findLoadsIgnoresSourcesThatDontParse() {
+    Assert.assertEquals(ImmutableSet.of(), findLoads("let a = core.load('a'"));
+  }
+
+
+  @Test
+  public void prefetchCompilesTheWholeTree() {
+    ModulePrefetcher.Result result = ModulePrefetcher.prefetch(LoadPaths.defaultPath(), new SimpleScriptCompilation(0),
+        "test", "let test = core.load('hegemon/test');", ImmutableList.of("hegemon/core"), null);
+    Assert.assertNotNull(result.getEntry());
+    Assert.assertNotNull(result.takeModule("hegemon/core.js"));
+    Assert.assertNotNull(result.takeModule("hegemon/test.js"));
+    Assert.assertNotNull(result.takeModule("hegemon/testImport.js"));
+    Assert.assertNull(result.takeModule("hegemon/testImport.js"));
+  }
+
+}
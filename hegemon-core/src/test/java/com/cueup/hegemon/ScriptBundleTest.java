@@ -0,0 +1,81 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon;
+
+import com.cueup.hegemon.compilation.BundleScriptCompilation;
+import com.cueup.hegemon.compilation.SimpleScriptCompilation;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mozilla.javascript.Context;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Tests for the ScriptBundle class.
+ */
+public class ScriptBundleTest {
+
+  private static ScriptBundle roundTrip(ScriptBundle bundle) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    bundle.writeTo(out);
+    return ScriptBundle.read(out.toByteArray());
+  }
+
+
+  @Test
+  public void bundleContainsTheWholeModuleTree() throws Exception {
+    ScriptBundle bundle = roundTrip(ScriptBundle.create(LoadPaths.defaultPath(), "hegemon/test.js", false));
+    Assert.assertEquals("hegemon/test.js", bundle.getEntryName());
+    Assert.assertEquals(ImmutableSet.of("hegemon/test.js", "hegemon/core.js", "hegemon/testImport.js"),
+        bundle.getNames());
+    Assert.assertEquals(LoadPaths.defaultPath().load("hegemon/testImport.js"),
+        bundle.getSource("hegemon/testImport.js"));
+    Assert.assertNull(bundle.getSource("hegemon/json.js"));
+  }
+
+
+  @Test
+  public void scriptsRunFromPrecompiledBundles() throws Exception {
+    ScriptBundle bundle = roundTrip(ScriptBundle.create(LoadPaths.defaultPath(), "hegemon/test.js", true));
+    String source = bundle.getSource("hegemon/test.js");
+    Assert.assertNotNull(bundle.getCompiled("hegemon/test.js", source));
+    Assert.assertNull(bundle.getCompiled("hegemon/test.js", source + "\n"));
+
+    LoadPath loadPath = LoadPaths.customPath(
+        ImmutableList.<ScriptLocator>of(new BundleScriptLocator(bundle)), ImmutableList.<ScriptLocator>of());
+    Script script = new Script("hegemon/test.js", source,
+        new BundleScriptCompilation(bundle, new SimpleScriptCompilation(-1)), loadPath);
+    Assert.assertEquals("here", script.run("test.me"));
+  }
+
+
+  @Test
+  public void bundledBytecodeIsUsedWhenTheSourceMatches() throws Exception {
+    ScriptBundle bundle = ScriptBundle.create(LoadPaths.defaultPath(), "hegemon/testImport.js", true);
+    String source = bundle.getSource("hegemon/testImport.js");
+    Context context = Script.enterContext();
+    try {
+      Assert.assertTrue(new BundleScriptCompilation(bundle, new SimpleScriptCompilation(-1))
+          .compile(context, "hegemon/testImport.js", source).getClass().getName().startsWith("hegemon.testImport"));
+    } finally {
+      Script.exitContext();
+    }
+  }
+
+}
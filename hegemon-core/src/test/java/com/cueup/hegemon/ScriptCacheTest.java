@@ -0,0 +1,190 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon;
+
+import com.cueup.hegemon.compilation.SimpleScriptCompilation;
+import com.google.common.base.Charsets;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for the ScriptCache class.
+ */
+public class ScriptCacheTest {
+
+  private static final long RELOAD_TIMEOUT_MILLIS = 15000;
+
+
+  private static LoadPath pathFor(File root) {
+    return LoadPaths.customPath(ImmutableList.<ScriptLocator>of(new PathScriptLocator(root)),
+        ImmutableList.<ScriptLocator>of());
+  }
+
+
+  private static void waitForValue(ScriptCache cache, String script, Object expected) throws Exception {
+    long deadline = System.currentTimeMillis() + RELOAD_TIMEOUT_MILLIS;
+    while (!expected.equals(cache.get(script).run("value"))) {
+      if (System.currentTimeMillis() > deadline) {
+        Assert.fail("Timed out waiting for " + script + " to reload");
+      }
+      Thread.sleep(50);
+    }
+  }
+
+
+  @Test
+  public void getReturnsTheSameScriptUntilReloaded() throws Exception {
+    ScriptCache cache = new ScriptCache(LoadPaths.defaultPath());
+    Script script = cache.get("hegemon/test.js");
+    Assert.assertSame(script, cache.get("hegemon/test.js"));
+    Assert.assertNotSame(script, cache.get("hegemon/test.js", true));
+  }
+
+
+  @Test
+  public void watchingReloadsChangedDependenciesAndKeepsLastGoodVersion() throws Exception {
+    File root = Files.createTempDir();
+    File module = new File(root, "module.js");
+    Files.write("let module = {value: 'one'};", module, Charsets.UTF_8);
+    Files.write("let module = core.load('module'); function value() { return module.value; }",
+        new File(root, "main.js"), Charsets.UTF_8);
+
+    ScriptCache cache = new ScriptCache(pathFor(root));
+    cache.watch();
+    try {
+      Assert.assertEquals("one", cache.get("main.js").run("value"));
+
+      Files.write("let module = {value: 'two'};", module, Charsets.UTF_8);
+      waitForValue(cache, "main.js", "two");
+
+      Files.write("let module = {value: ", module, Charsets.UTF_8);
+      Thread.sleep(1000);
+      Assert.assertEquals("two", cache.get("main.js").run("value"));
+    } finally {
+      cache.stopWatching();
+    }
+  }
+
+
+  @Test(expected = IllegalStateException.class)
+  public void watchingRequiresAWatchableLoadPath() throws Exception {
+    new ScriptCache(new LoadPath() {
+      @Override
+      public String load(String name) throws LoadError {
+        throw new LoadError(name);
+      }
+    }).watch();
+  }
+
+
+  @Test
+  public void boundedCachesEvictAndRecordStats() throws Exception {
+    final List<String> removed = Lists.newArrayList();
+    ScriptCache cache = new ScriptCache(LoadPaths.defaultPath(), new SimpleScriptCompilation(-1),
+        CacheBuilder.newBuilder()
+            .maximumSize(1)
+            .recordStats()
+            .removalListener(new RemovalListener<String, Script>() {
+              @Override
+              public void onRemoval(RemovalNotification<String, Script> notification) {
+                removed.add(notification.getKey());
+              }
+            }));
+
+    cache.get("hegemon/test.js");
+    cache.get("hegemon/test.js");
+    cache.get("hegemon/testImport.js");
+
+    Assert.assertEquals(1, cache.size());
+    Assert.assertEquals(ImmutableList.of("hegemon/test.js"), removed);
+    Assert.assertEquals(1, cache.stats().hitCount());
+    Assert.assertEquals(2, cache.stats().missCount());
+  }
+
+
+  @Test
+  public void weigherEstimatesScopeSize() throws Exception {
+    Script small = new Script("small", "");
+    Script large = new Script("large", "function a() {} function b() {} let test = core.load('hegemon/test');");
+    Assert.assertTrue(ScriptCache.RETAINED_SIZE_WEIGHER.weigh("small", small) > 0);
+    Assert.assertTrue(ScriptCache.RETAINED_SIZE_WEIGHER.weigh("large", large)
+        > ScriptCache.RETAINED_SIZE_WEIGHER.weigh("small", small));
+  }
+
+
+  @Test
+  public void reportsRetainedSizes() throws Exception {
+    ScriptCache cache = new ScriptCache(LoadPaths.defaultPath());
+    Script test = cache.get("hegemon/test.js");
+    cache.get("hegemon/testImport.js");
+
+    Map<String, RetainedSize> sizes = cache.retainedSizes();
+    Assert.assertEquals(ImmutableSet.of("hegemon/test.js", "hegemon/testImport.js"), sizes.keySet());
+    Assert.assertEquals(test.estimateRetainedSize(), sizes.get("hegemon/test.js").getTotalBytes());
+
+    ScriptCacheMXBean bean = cache.getMXBean();
+    Assert.assertEquals(2, bean.getSize());
+    Assert.assertEquals(sizes.get("hegemon/test.js").getTotalBytes()
+        + sizes.get("hegemon/testImport.js").getTotalBytes(), bean.getRetainedBytes());
+  }
+
+
+  @Test
+  public void recordedManifestsPreloadScriptsAndModules() throws Exception {
+    File root = Files.createTempDir();
+    Files.write("let lazy = {value: 'lazy'};", new File(root, "lazy.js"), Charsets.UTF_8);
+    Files.write("function value() { return core.load('lazy').value; }", new File(root, "main.js"), Charsets.UTF_8);
+    Files.write("function value() { return 'other'; }", new File(root, "other.js"), Charsets.UTF_8);
+    File manifestFile = new File(root, "preload.manifest");
+
+    ScriptCache recording = new ScriptCache(pathFor(root));
+    recording.recordManifest(manifestFile, 1, TimeUnit.HOURS);
+    try {
+      recording.get("other.js");
+      Assert.assertEquals("lazy", recording.get("main.js").run("value"));
+      recording.get("main.js");
+      recording.getManifest().write(manifestFile);
+    } finally {
+      recording.stopRecording();
+    }
+
+    PreloadManifest manifest = PreloadManifest.read(manifestFile);
+    Assert.assertEquals(2, manifest.getEntries().size());
+    PreloadManifest.Entry main = manifest.getEntries().get(1);
+    Assert.assertEquals("main.js", main.getName());
+    Assert.assertEquals(2, main.getCount());
+    Assert.assertTrue(main.getModules().contains("lazy"));
+
+    ScriptCache preloaded = new ScriptCache(pathFor(root));
+    Assert.assertEquals(2, preloaded.preload(manifest, 2));
+    Assert.assertEquals(2, preloaded.size());
+    Assert.assertTrue(preloaded.get("main.js").getLoadedModules().contains("lazy"));
+  }
+
+}
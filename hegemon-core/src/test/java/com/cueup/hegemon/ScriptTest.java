@@ -16,6 +16,7 @@
 
 package com.cueup.hegemon;
 
+import com.google.common.collect.ImmutableList;
 import org.junit.Assert;
 import org.junit.Test;
 import org.mozilla.javascript.EcmaError;
@@ -88,5 +89,77 @@ public class ScriptTest {
   public void circularDependencyThrowsException() throws Exception {
     new Script("test", "", LoadPaths.defaultPath(), "hegemon/testCircleA");
   }
-}
 
+
+  @Test
+  public void dynamicLoadsStillWork() throws Exception {
+    final Script s = new Script("test", "let name = 'hegemon/' + 'test'; let test = core.load(name);"
+        + "function tester() { return test.me(); }");
+    Assert.assertEquals("here", s.run("tester"));
+    Assert.assertTrue(s.getDependencies().contains("hegemon/testImport.js"));
+  }
+
+
+  @Test
+  public void cachedValuesAreSharedAcrossScripts() throws Exception {
+    String source = "let calls = 0; function get() { return core.cached('scriptTest', 0, function() {"
+        + " calls++; return {value: 'computed'}; }).value; } function count() { return calls; }";
+    Script first = new Script("first", source);
+    Script second = new Script("second", source);
+    Assert.assertEquals("computed", first.run("get"));
+    Assert.assertEquals("computed", second.run("get"));
+    Assert.assertEquals(1, ((Number) first.run("count")).intValue() + ((Number) second.run("count")).intValue());
+  }
+
+
+  @Test
+  public void memoizeCachesByArguments() throws Exception {
+    Script s = new Script("test", "let calls = 0; let double = core.memoize('scriptTestDouble', 0, function(x) {"
+        + " calls++; return x * 2; }); function run(x) { return double(x); } function count() { return calls; }");
+    Assert.assertEquals(4, ((Number) s.run("run", 2)).intValue());
+    Assert.assertEquals(4, ((Number) s.run("run", 2)).intValue());
+    Assert.assertEquals(6, ((Number) s.run("run", 3)).intValue());
+    Assert.assertEquals(2, ((Number) s.run("count")).intValue());
+  }
+
+
+  @Test
+  public void cachedAndMemoizeTakeAnOptionalTtl() throws Exception {
+    Script s = new Script("test", "let calls = 0; let triple = core.memoize('scriptTestTriple', function(x) {"
+        + " calls++; return x * 3; }); function get() { return core.cached('scriptTestNoTtl', function() {"
+        + " calls++; return 5; }); } function run(x) { return triple(x); } function count() { return calls; }");
+    Assert.assertEquals(5, ((Number) s.run("get")).intValue());
+    Assert.assertEquals(5, ((Number) s.run("get")).intValue());
+    Assert.assertEquals(6, ((Number) s.run("run", 2)).intValue());
+    Assert.assertEquals(6, ((Number) s.run("run", 2)).intValue());
+    Assert.assertEquals(2, ((Number) s.run("count")).intValue());
+  }
+
+
+  @Test
+  public void memoizedResultsDontCollideWithCachedValues() throws Exception {
+    Script s = new Script("test", "let f = core.memoize('scriptTestCollide', function(x) { return 'memoized'; });"
+        + " function cached() { return core.cached('scriptTestCollide[1]', function() { return 'cached'; }); }"
+        + " function memoized() { return f(1); }");
+    Assert.assertEquals("cached", s.run("cached"));
+    Assert.assertEquals("memoized", s.run("memoized"));
+  }
+
+
+  @Test
+  public void retainedSizeIsAttributedToModules() throws Exception {
+    Script s = new Script("test", "let test = core.load('hegemon/test'); let data = [];"
+        + " function grow(n) { for (let i = 0; i < n; i++) { data.push({id: 'item' + i}); } }");
+    RetainedSize before = s.retainedSize();
+    Assert.assertEquals(ImmutableList.of("hegemon/core", "hegemon/testImport", "hegemon/test"),
+        ImmutableList.copyOf(before.getModuleBytes().keySet()));
+    Assert.assertTrue(before.getModuleBytes().get("hegemon/core") > 0);
+
+    s.run("grow", 1000);
+    RetainedSize after = s.retainedSize();
+    Assert.assertEquals(before.getModuleBytes(), after.getModuleBytes());
+    // Each item is at least an object, a property and a string.
+    Assert.assertTrue(after.toString(), after.getScopeBytes() - before.getScopeBytes() > 1000 * 100);
+    Assert.assertEquals(after.getTotalBytes(), s.estimateRetainedSize());
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for the ValueStore class.
+ */
+public class ValueStoreTest {
+
+  private static Callable<Object> counting(final AtomicInteger calls) {
+    return new Callable<Object>() {
+      @Override
+      public Object call() throws InterruptedException {
+        Thread.sleep(10);
+        return calls.incrementAndGet();
+      }
+    };
+  }
+
+
+  @Test
+  public void valuesAreComputedOnceAcrossThreads() throws Exception {
+    final ValueStore store = new ValueStore(10);
+    final AtomicInteger calls = new AtomicInteger();
+    TestUtils.runConcurrent(10, new Runnable() {
+      @Override
+      public void run() {
+        Assert.assertEquals(1, store.get(new ValueName("test", "value"), counting(calls)));
+      }
+    });
+    Assert.assertEquals(1, calls.get());
+    Assert.assertEquals(10, store.stats().requestCount());
+  }
+
+
+  @Test
+  public void expiredValuesAreRecomputed() throws Exception {
+    ValueStore store = new ValueStore(10);
+    AtomicInteger calls = new AtomicInteger();
+    Assert.assertEquals(1, store.get(new ValueName("test", "value"), 1, counting(calls)));
+    Thread.sleep(5);
+    Assert.assertNull(store.getIfPresent(new ValueName("test", "value")));
+    Assert.assertEquals(2, store.get(new ValueName("test", "value"), 1, counting(calls)));
+  }
+
+
+  @Test
+  public void nullValuesAreStored() throws Exception {
+    ValueStore store = new ValueStore(10);
+    Assert.assertNull(store.get(new ValueName("test", "value"), new Callable<Object>() {
+      @Override
+      public Object call() {
+        return null;
+      }
+    }));
+  }
+
+
+  @Test(expected = IllegalStateException.class)
+  public void loaderExceptionsArePropagated() throws Exception {
+    new ValueStore(10).get(new ValueName("test", "value"), new Callable<Object>() {
+      @Override
+      public Object call() {
+        throw new IllegalStateException();
+      }
+    });
+  }
+
+}
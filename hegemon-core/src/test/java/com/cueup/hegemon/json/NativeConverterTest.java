@@ -0,0 +1,150 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.json;
+
+import com.cueup.hegemon.LoadError;
+import com.cueup.hegemon.Script;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for converting Java values to JS values with NativeConverter.
+ */
+public class NativeConverterTest {
+
+  private static final String SOURCE =
+      "let json = core.load('hegemon/json');\n"
+      + "function viaJson(value) { return String(JSON.stringify(json.roundtripJson(value))); }\n"
+      + "function viaNative(value) { return String(JSON.stringify(json.toNative(value))); }\n"
+      + "function stringify(value) { return String(JSON.stringify(value)); }\n"
+      + "function isCycle(value) { let v = json.toNative(value); return v.self === v && v.list[0] === v; }\n"
+      + "function tooDeep(value, depth) { try { json.toNative(value, depth); return false; } catch (e) { "
+      + "return e instanceof RangeError; } }\n";
+
+
+  /**
+   * A bean with a getter, a boolean getter and a public field.
+   */
+  public static class Bean {
+
+    public final String name = "bean";
+
+    private final int[] counts = {1, 2};
+
+
+    public int[] getCounts() {
+      return this.counts;
+    }
+
+
+    public boolean isReady() {
+      return true;
+    }
+
+
+    public Kind getKind() {
+      return Kind.SMALL;
+    }
+
+  }
+
+
+  /**
+   * An enum property.
+   */
+  public enum Kind { SMALL }
+
+
+  @Test
+  public void matchesJsonRoundTrip() throws LoadError {
+    Script script = new Script("test", SOURCE);
+    Map<String, Object> value = Maps.newLinkedHashMap();
+    value.put("s", "x");
+    value.put("n", 3);
+    value.put("d", 1.5);
+    value.put("list", ImmutableList.of(1, "two", ImmutableMap.of("k", true)));
+    value.put("nothing", null);
+    value.put("0", "zero");
+
+    Assert.assertEquals(script.run("viaJson", value), script.run("viaNative", value));
+    Assert.assertEquals("{\"s\":\"x\",\"n\":3,\"d\":1.5,\"list\":[1,\"two\",{\"k\":true}],\"nothing\":null,"
+        + "\"0\":\"zero\"}", script.run("viaNative", value));
+  }
+
+
+  @Test
+  public void convertsBeans() throws LoadError {
+    Script script = new Script("test", SOURCE);
+    Assert.assertEquals("{\"counts\":[1,2],\"kind\":\"SMALL\",\"ready\":true,\"name\":\"bean\"}",
+        script.run("viaNative", new Bean()));
+    Assert.assertEquals("[[1,2],[3]]", script.run("viaNative", (Object) new int[][] {{1, 2}, {3}}));
+  }
+
+
+  @Test
+  public void convertsJacksonTrees() throws Exception {
+    Script script = new Script("test", SOURCE);
+    String json = "{\"a\":[1,2.5,null,\"s\"],\"b\":{\"c\":false}}";
+    Assert.assertEquals(json, script.run("viaNative", new ObjectMapper().readTree(json)));
+  }
+
+
+  @Test
+  public void keepsCycles() throws LoadError {
+    Script script = new Script("test", SOURCE);
+    Map<String, Object> value = Maps.newHashMap();
+    List<Object> list = Lists.newArrayList();
+    list.add(value);
+    value.put("self", value);
+    value.put("list", list);
+    Assert.assertEquals(true, script.run("isCycle", value));
+  }
+
+
+  @Test
+  public void limitsDepth() throws LoadError {
+    Script script = new Script("test", SOURCE);
+    Object value = ImmutableList.of(ImmutableList.of(ImmutableList.of()));
+    Assert.assertEquals(false, script.run("tooDeep", value, 3));
+    Assert.assertEquals(true, script.run("tooDeep", value, 2));
+
+    // Java values inside a Jackson tree count towards its depth.
+    ObjectNode tree = JsonNodeFactory.instance.objectNode();
+    tree.putPOJO("p", ImmutableList.of(ImmutableList.of()));
+    Assert.assertEquals(false, script.run("tooDeep", tree, 3));
+    Assert.assertEquals(true, script.run("tooDeep", tree, 2));
+  }
+
+
+  @Test
+  public void convertsFromJava() throws LoadError {
+    Script script = new Script("test", SOURCE);
+    Object value = script.toNative(ImmutableMap.of("a", ImmutableList.of(1, 2)));
+    Assert.assertEquals("{\"a\":[1,2]}", script.run("stringify", value));
+  }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.json;
+
+import com.cueup.hegemon.LoadError;
+import com.cueup.hegemon.Script;
+import com.google.common.base.Charsets;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.Reader;
+import java.io.StringReader;
+
+/**
+ * Tests for parsing json into JS values with NativeParser, through 'hegemon/json'.
+ */
+public class NativeParserTest {
+
+  private static final String SOURCE =
+      "let json = core.load('hegemon/json');\n"
+      + "function reparse(source) { return String(JSON.stringify(json.parse(source))); }\n"
+      + "function syntaxError(source) { try { json.parse(source); return 'parsed'; } catch (e) { "
+      + "return e.name; } }\n"
+      + "function indexed(source) { let v = json.parse(source); return v[0] + v.a[1]; }\n"
+      + "function firstTwo(source) { let it = json.elements(source); let result = [];\n"
+      + "  while (it.hasNext() && result.length < 2) { result.push(it.next().id); }\n"
+      + "  it.close(); return result.join(','); }\n"
+      + "function all(source) { let it = json.elements(source); let result = [];\n"
+      + "  while (it.hasNext()) { result.push(JSON.stringify(it.next())); } return result.join(' '); }\n";
+
+
+  @Test
+  public void parsesLikeJsonParse() throws LoadError {
+    Script script = new Script("test", SOURCE);
+    String json = "{\"a\":[1,2.5,-3,1e+21,null,\"s\\\"\u00e9\"],\"b\":{\"c\":false,\"d\":true},\"e\":{}}";
+    Assert.assertEquals(json, script.run("reparse", json));
+    Assert.assertEquals("7", script.run("reparse", " 7 "));
+    Assert.assertEquals("4294967296", script.run("reparse", "4294967296"));
+    Assert.assertEquals("zerob", script.run("indexed", "{\"0\": \"zero\", \"a\": [\"a\", \"b\"]}"));
+  }
+
+
+  @Test
+  public void readsReadersAndStreams() throws Exception {
+    Script script = new Script("test", SOURCE);
+    Reader reader = new StringReader("[\"x\", {\"y\": 1}]");
+    Assert.assertEquals("[\"x\",{\"y\":1}]", script.run("reparse", reader));
+    Assert.assertEquals(-1, reader.read());
+
+    byte[] bytes = "{\"s\": \"\u00e9\"}".getBytes(Charsets.UTF_8);
+    Assert.assertEquals("{\"s\":\"\u00e9\"}", script.run("reparse", new ByteArrayInputStream(bytes)));
+  }
+
+
+  @Test
+  public void reportsSyntaxErrors() throws LoadError {
+    Script script = new Script("test", SOURCE);
+    Assert.assertEquals("SyntaxError", script.run("syntaxError", "{\"a\": }"));
+    Assert.assertEquals("SyntaxError", script.run("syntaxError", "[1, 2"));
+    Assert.assertEquals("SyntaxError", script.run("syntaxError", "1 2"));
+    Assert.assertEquals("SyntaxError", script.run("syntaxError", ""));
+  }
+
+
+  @Test
+  public void readsElementsOneAtATime() throws LoadError {
+    Script script = new Script("test", SOURCE);
+    // Stops before the malformed tail is read.
+    Assert.assertEquals("1,2", script.run("firstTwo", new StringReader("[{\"id\": 1}, {\"id\": 2}, {\"id\": ")));
+    Assert.assertEquals("1 \"a\" [true] {\"b\":null}", script.run("all", "[1, \"a\", [true], {\"b\": null}]"));
+    Assert.assertEquals("", script.run("all", "[]"));
+  }
+
+}
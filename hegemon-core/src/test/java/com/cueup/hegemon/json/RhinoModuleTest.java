@@ -0,0 +1,83 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.json;
+
+import com.cueup.hegemon.LoadError;
+import com.cueup.hegemon.Script;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+
+/**
+ * Tests for serializing JS values with RhinoModule, through 'hegemon/json'.
+ */
+public class RhinoModuleTest {
+
+  private static final String SOURCE =
+      "let json = core.load('hegemon/json');\n"
+      + "function toJson(source) { return String(json.toJson(eval('(' + source + ')'))); }\n"
+      + "function writeTo(source, out) { json.writeTo(eval('(' + source + ')'), out); }\n";
+
+
+  private static String toJson(String source) throws LoadError {
+    return (String) new Script("test", SOURCE).run("toJson", source);
+  }
+
+
+  @Test
+  public void serializesLikeJsonStringify() throws LoadError {
+    Assert.assertEquals("{\"a\":1,\"b\":[1.5,null,null,\"x\"],\"c\":{\"d\":true,\"e\":null}}",
+        toJson("{a: 1, b: [1.5, undefined, function() {}, 'x'], c: {d: true, e: null, f: undefined, g: function() {}}}"));
+    Assert.assertEquals("[null,null,-3]", toJson("[NaN, 1/0, -3]"));
+    Assert.assertEquals("{\"0\":\"zero\",\"x\":\"y\"}", toJson("{0: 'zero', x: 'y'}"));
+    Assert.assertEquals("2", toJson("2"));
+    Assert.assertEquals("null", toJson("undefined"));
+  }
+
+
+  @Test
+  public void serializesWrappedJavaObjects() throws LoadError {
+    Assert.assertEquals("{\"list\":[\"a\",1],\"s\":\"b\"}",
+        toJson("{list: (function() { let l = java.util.ArrayList(); l.add('a'); l.add(java.lang.Integer(1)); "
+            + "return l; })(), s: java.lang.String('b')}"));
+  }
+
+
+  @Test
+  public void usesToJson() throws LoadError {
+    Assert.assertEquals("{\"when\":\"1970-01-01T00:00:00.000Z\",\"custom\":[1,2]}",
+        toJson("{when: new Date(0), custom: {toJSON: function() { return [1, 2]; }}}"));
+  }
+
+
+  @Test
+  public void writesToWritersAndStreams() throws Exception {
+    Script script = new Script("test", SOURCE);
+
+    StringWriter writer = new StringWriter();
+    script.run("writeTo", "{a: [1, 2]}", writer);
+    writer.write("!");
+    Assert.assertEquals("{\"a\":[1,2]}!", writer.toString());
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    script.run("writeTo", "'\\u00e9'", out);
+    Assert.assertEquals("\"\u00e9\"", out.toString("UTF-8"));
+  }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Tests for Histogram.
+ */
+public class HistogramTest {
+
+  @Test
+  public void smallValuesAreExact() {
+    Histogram histogram = new Histogram();
+    for (int i = 1; i <= 50; i++) {
+      histogram.record(i);
+    }
+    Assert.assertEquals(50, histogram.getCount());
+    Assert.assertEquals(25, histogram.getValueAtQuantile(0.5));
+    Assert.assertEquals(50, histogram.getValueAtQuantile(0.99));
+    Assert.assertEquals(50, histogram.getMax());
+    Assert.assertEquals(25.5, histogram.getMean(), 1e-9);
+  }
+
+
+  @Test
+  public void largeValuesAreWithinPrecision() {
+    Histogram histogram = new Histogram();
+    for (long i = 1; i <= 100000; i++) {
+      histogram.record(i * 1000);
+    }
+    assertWithin(50000000, histogram.getValueAtQuantile(0.5));
+    assertWithin(99000000, histogram.getValueAtQuantile(0.99));
+    assertWithin(99900000, histogram.getValueAtQuantile(0.999));
+    Assert.assertEquals(100000000, histogram.getValueAtQuantile(1));
+
+    histogram.record(Long.MAX_VALUE);
+    Assert.assertEquals(Long.MAX_VALUE, histogram.getMax());
+  }
+
+
+  @Test
+  public void recordsFromManyThreads() throws InterruptedException {
+    final Histogram histogram = new Histogram();
+    final CountDownLatch done = new CountDownLatch(8);
+    for (int t = 0; t < 8; t++) {
+      new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; i < 10000; i++) {
+            histogram.record(i);
+          }
+          done.countDown();
+        }
+      }.start();
+    }
+    done.await();
+    Assert.assertEquals(80000, histogram.getCount());
+    Assert.assertEquals(9999, histogram.getMax());
+
+    histogram.reset();
+    Assert.assertEquals(0, histogram.getCount());
+    Assert.assertEquals(0, histogram.getValueAtQuantile(0.5));
+  }
+
+
+  private static void assertWithin(long expected, long actual) {
+    Assert.assertTrue(expected + " ~ " + actual, Math.abs(expected - actual) <= expected / 32);
+  }
+
+}
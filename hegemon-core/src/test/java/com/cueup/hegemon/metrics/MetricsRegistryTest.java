@@ -0,0 +1,94 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.metrics;
+
+import com.cueup.hegemon.LoadError;
+import com.cueup.hegemon.LoadPaths;
+import com.cueup.hegemon.Script;
+import com.cueup.hegemon.ScriptCache;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mozilla.javascript.RhinoException;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+/**
+ * Tests for recording script metrics.
+ */
+public class MetricsRegistryTest {
+
+  private static final String SOURCE =
+      "function ok() { return 1; }\n"
+      + "function fails(kind) { if (kind == 'type') { null.x; } else { throw new Error('no'); } }\n"
+      + "let api = {get: function() { return 2; }};\n";
+
+
+  @Test
+  public void recordsCallsErrorsAndLatency() throws LoadError {
+    Script script = new Script("metrics", SOURCE);
+    MetricsRegistry registry = new MetricsRegistry();
+    script.setMetrics(registry);
+
+    script.run("ok");
+    script.run("ok");
+    script.call(script.getScope().get("api", script.getScope()), "get");
+    for (String kind : new String[] {"type", "other"}) {
+      try {
+        script.run("fails", kind);
+        Assert.fail();
+      } catch (RhinoException e) {
+        // Expected.
+      }
+    }
+
+    FunctionMetrics ok = registry.get("metrics", "ok");
+    Assert.assertEquals(2, ok.getCalls());
+    Assert.assertEquals(0, ok.getErrors());
+    Assert.assertEquals(0, ok.getActive());
+    Assert.assertTrue(ok.getMaxMillis() > 0);
+
+    FunctionMetrics fails = registry.get("metrics", "fails");
+    Assert.assertEquals(2, fails.getCalls());
+    Assert.assertEquals(2, fails.getErrors());
+    Assert.assertEquals(ImmutableMap.of("TypeError", 1L, "org.mozilla.javascript.JavaScriptException", 1L),
+        fails.getErrorsByType());
+
+    Assert.assertEquals(1, registry.get("metrics", "get").getCalls());
+    Assert.assertEquals(3, registry.getAll().size());
+  }
+
+
+  @Test
+  public void registersWithJmx() throws Exception {
+    MBeanServer server = MBeanServerFactory.newMBeanServer();
+    MetricsRegistry registry = new MetricsRegistry(new JmxReporter(server, "test"));
+    ScriptCache cache = new ScriptCache(LoadPaths.defaultPath());
+    cache.setMetrics(registry);
+    cache.get("hegemon/test.js").run("test.me");
+
+    ObjectName name = new ObjectName("test:type=ScriptFunction,script=\"hegemon/test.js\",function=\"test.me\"");
+    Assert.assertEquals(1L, server.getAttribute(name, "Calls"));
+    Assert.assertEquals(0, server.getAttribute(name, "Active"));
+
+    registry.close();
+    Assert.assertFalse(server.isRegistered(name));
+  }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.profiling;
+
+import com.cueup.hegemon.LoadError;
+import com.cueup.hegemon.LoadPaths;
+import com.cueup.hegemon.Script;
+import com.cueup.hegemon.compilation.SimpleScriptCompilation;
+import com.google.common.collect.Maps;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Tests for Profiler.
+ */
+public class ProfilerTest {
+
+  private static final String SOURCE =
+      "function leaf(n) { let x = 0; for (let i = 0; i < n; i++) { x += i; } return x; }\n"
+      + "function middle() { return leaf(1000) + leaf(1000); }\n"
+      + "function fib(n) { return n < 2 ? n : fib(n - 1) + fib(n - 2); }\n"
+      + "function outer() { return middle() + fib(5); }\n";
+
+
+  private static Script interpreted() throws LoadError {
+    return new Script("profiled.js", SOURCE, new SimpleScriptCompilation(-1), LoadPaths.defaultPath());
+  }
+
+
+  private static Map<String, FunctionProfile> byName(Profiler profiler) {
+    Map<String, FunctionProfile> result = Maps.newHashMap();
+    for (FunctionProfile function : profiler.getFunctions()) {
+      result.put(function.getName(), function);
+    }
+    return result;
+  }
+
+
+  @Test
+  public void countsCallsAndTime() throws LoadError {
+    Script script = interpreted();
+    Profiler profiler = new Profiler();
+    script.setProfiler(profiler);
+    script.run("outer");
+    script.run("outer");
+
+    Map<String, FunctionProfile> functions = byName(profiler);
+    FunctionProfile outer = functions.get("outer (profiled.js:4)");
+    FunctionProfile middle = functions.get("middle (profiled.js:2)");
+    FunctionProfile leaf = functions.get("leaf (profiled.js:1)");
+    FunctionProfile fib = functions.get("fib (profiled.js:3)");
+
+    Assert.assertEquals(2, outer.getCalls());
+    Assert.assertEquals(4, leaf.getCalls());
+    Assert.assertEquals(30, fib.getCalls());
+    Assert.assertTrue(middle.getInclusiveNanos() >= leaf.getInclusiveNanos());
+    Assert.assertTrue(outer.getExclusiveNanos() < outer.getInclusiveNanos());
+    // Recursive calls are only counted once towards inclusive time.
+    Assert.assertTrue(fib.getInclusiveNanos() <= outer.getInclusiveNanos() - middle.getInclusiveNanos());
+  }
+
+
+  @Test
+  public void writesCollapsedStacks() throws Exception {
+    Script script = interpreted();
+    Profiler profiler = new Profiler();
+    script.setProfiler(profiler);
+    script.run("outer");
+
+    StringWriter out = new StringWriter();
+    profiler.writeCollapsedStacks(out);
+    Pattern leafPath = Pattern.compile(
+        "^outer \\(profiled.js:4\\);middle \\(profiled.js:2\\);leaf \\(profiled.js:1\\) \\d+$", Pattern.MULTILINE);
+    Assert.assertTrue(out.toString(), leafPath.matcher(out.toString()).find());
+  }
+
+
+  @Test
+  public void samplesEveryNthOutermostCall() throws LoadError {
+    Script script = interpreted();
+    Profiler profiler = new Profiler(3);
+    script.setProfiler(profiler);
+    for (int i = 0; i < 6; i++) {
+      script.run("outer");
+    }
+
+    Map<String, FunctionProfile> functions = byName(profiler);
+    Assert.assertEquals(2, functions.get("outer (profiled.js:4)").getCalls());
+    Assert.assertEquals(4, functions.get("leaf (profiled.js:1)").getCalls());
+  }
+
+
+  @Test
+  public void detachesAndResets() throws LoadError {
+    Script script = interpreted();
+    Profiler profiler = new Profiler();
+    script.setProfiler(profiler);
+    script.run("middle");
+    script.setProfiler(null);
+    script.run("middle");
+    Assert.assertEquals(1, byName(profiler).get("middle (profiled.js:2)").getCalls());
+
+    profiler.reset();
+    Assert.assertTrue(profiler.getFunctions().isEmpty());
+  }
+
+}
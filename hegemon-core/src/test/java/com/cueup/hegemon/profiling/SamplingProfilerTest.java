@@ -0,0 +1,138 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.profiling;
+
+import com.cueup.hegemon.LoadError;
+import com.cueup.hegemon.Script;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+
+/**
+ * Tests for sampling compiled scripts.
+ */
+public class SamplingProfilerTest {
+
+  private static final String SOURCE =
+      "function spin(millis) {\n"
+      + "  var end = Date.now() + millis;\n"
+      + "  while (Date.now() < end) {}\n"
+      + "}\n"
+      + "function outer(millis) {\n"
+      + "  spin(millis);\n"
+      + "}\n"
+      + "function viaAnonymous(millis) {\n"
+      + "  (function() {\n"
+      + "    spin(millis);\n"
+      + "  })();\n"
+      + "}\n";
+
+
+  /**
+   * Creates the script and calls into it once, so that samples of a cold JVM setting up the call don't skew results.
+   */
+  private static Script warmScript() throws LoadError {
+    Script script = new Script("hot.js", SOURCE);
+    script.run("viaAnonymous", 1);
+    return script;
+  }
+
+
+  @Test
+  public void mapsSamplesToJsLines() throws LoadError, IOException {
+    Script script = warmScript();
+    SamplingProfiler profiler = new SamplingProfiler(5);
+    script.setSamplingProfiler(profiler);
+    try {
+      script.run("outer", 300);
+    } finally {
+      profiler.close();
+    }
+
+    Assert.assertTrue(profiler.getSamples() > 10);
+    long attributed = profiler.getSamples() - profiler.getUnattributedSamples();
+    Assert.assertTrue(attributed > profiler.getSamples() * 9 / 10);
+
+    List<HotSpot> hotSpots = profiler.getHotSpots();
+    HotSpot hottest = hotSpots.get(0);
+    Assert.assertEquals("hot.js", hottest.getSource());
+    Assert.assertEquals("spin", hottest.getFunction());
+    Assert.assertTrue(hottest.getLine() == 2 || hottest.getLine() == 3);
+    Assert.assertTrue(hottest.getSelfSamples() > attributed / 2);
+
+    boolean sawCaller = false;
+    for (HotSpot hotSpot : hotSpots) {
+      if (hotSpot.getFunction().equals("outer")) {
+        Assert.assertEquals(6, hotSpot.getLine());
+        Assert.assertEquals(0, hotSpot.getSelfSamples());
+        Assert.assertEquals(attributed, hotSpot.getTotalSamples());
+        sawCaller = true;
+      }
+    }
+    Assert.assertTrue(sawCaller);
+
+    StringWriter report = new StringWriter();
+    profiler.writeReport(report, 10);
+    Assert.assertTrue(report.toString(), report.toString().contains("spin (hot.js:"));
+
+    profiler.reset();
+    Assert.assertEquals(0, profiler.getSamples());
+    Assert.assertTrue(profiler.getHotSpots().isEmpty());
+  }
+
+
+  @Test
+  public void namesAnonymousFunctionsLikeProfiler() throws LoadError {
+    Script script = warmScript();
+    SamplingProfiler profiler = new SamplingProfiler(5);
+    script.setSamplingProfiler(profiler);
+    try {
+      script.run("viaAnonymous", 200);
+    } finally {
+      profiler.close();
+    }
+
+    boolean sawAnonymous = false;
+    for (HotSpot hotSpot : profiler.getHotSpots()) {
+      if (hotSpot.getFunction().equals("<anonymous>")) {
+        Assert.assertEquals(10, hotSpot.getLine());
+        Assert.assertEquals(profiler.getSamples() - profiler.getUnattributedSamples(), hotSpot.getTotalSamples());
+        sawAnonymous = true;
+      }
+    }
+    Assert.assertTrue(profiler.getHotSpots().toString(), sawAnonymous);
+  }
+
+
+  @Test
+  public void onlySamplesThreadsInScripts() throws LoadError, InterruptedException {
+    Script script = new Script("hot.js", SOURCE);
+    SamplingProfiler profiler = new SamplingProfiler(5);
+    script.setSamplingProfiler(profiler);
+    try {
+      script.run("outer", 1);
+      Thread.sleep(100);
+    } finally {
+      profiler.close();
+    }
+    Assert.assertTrue(profiler.getSamples() <= 1);
+  }
+
+}
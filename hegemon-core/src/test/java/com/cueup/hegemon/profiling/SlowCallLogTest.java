@@ -0,0 +1,129 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.profiling;
+
+import com.cueup.hegemon.LoadError;
+import com.cueup.hegemon.Script;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+
+/**
+ * Tests for logging slow script calls.
+ */
+public class SlowCallLogTest {
+
+  private static final String SOURCE =
+      "function spin(millis) { var end = Date.now() + millis; while (Date.now() < end) {} }\n"
+      + "function slow(millis, label) {\n"
+      + "  spin(millis);\n"
+      + "  return label;\n"
+      + "}\n"
+      + "function fast() { return 1; }\n";
+
+
+  private static List<JsonNode> lines(StringWriter out) throws IOException {
+    List<JsonNode> result = Lists.newArrayList();
+    for (String line : Splitter.on('\n').omitEmptyStrings().split(out.toString())) {
+      result.add(new ObjectMapper().readTree(line));
+    }
+    return result;
+  }
+
+
+  @Test
+  public void logsSlowCallsWithTheirStack() throws LoadError, IOException {
+    Script script = new Script("slow.js", SOURCE);
+    StringWriter out = new StringWriter();
+    SlowCallLog log = new SlowCallLog(100, 100, out);
+    script.setSlowCallLog(log);
+    try {
+      script.run("fast");
+      script.run("slow", 300, "label");
+    } finally {
+      log.close();
+    }
+
+    List<JsonNode> lines = lines(out);
+    Assert.assertEquals(1, lines.size());
+    JsonNode call = lines.get(0);
+    Assert.assertEquals("slow.js", call.get("script").asText());
+    Assert.assertEquals("slow", call.get("function").asText());
+    Assert.assertTrue(call.get("durationMillis").asLong() >= 250);
+    Assert.assertEquals(100, call.get("thresholdMillis").asLong());
+    Assert.assertEquals("300", call.get("arguments").get(0).asText());
+    Assert.assertEquals("\"label\"", call.get("arguments").get(1).asText());
+    Assert.assertEquals("spin (slow.js:1)", call.get("stack").get(0).asText());
+    Assert.assertEquals("slow (slow.js:3)", call.get("stack").get(1).asText());
+    Assert.assertTrue(call.get("error").isNull());
+  }
+
+
+  @Test
+  public void appliesThresholdsAndRateLimits() throws LoadError, IOException, InterruptedException {
+    Script script = new Script("slow.js", SOURCE);
+    StringWriter out = new StringWriter();
+    SlowCallLog log = new SlowCallLog(0, 1, out);
+    script.setSlowCallLog(log);
+    try {
+      log.setThreshold("slow.js", 10000L);
+      Assert.assertEquals(10000, log.getThreshold("slow.js"));
+      script.run("fast");
+      Assert.assertEquals("", out.toString());
+
+      log.setThreshold("slow.js", null);
+      for (int i = 0; i < 3; i++) {
+        script.run("fast");
+      }
+      Thread.sleep(1100);
+      script.run("fast");
+    } finally {
+      log.close();
+    }
+
+    List<JsonNode> lines = lines(out);
+    Assert.assertEquals(2, lines.size());
+    Assert.assertEquals(0, lines.get(0).get("suppressed").asLong());
+    Assert.assertEquals(2, lines.get(1).get("suppressed").asLong());
+  }
+
+
+  @Test
+  public void summarizesArguments() throws LoadError {
+    Script script = new Script("slow.js", SOURCE);
+    Assert.assertEquals("null", SlowCallLog.summarize(null));
+    Assert.assertEquals("1.5", SlowCallLog.summarize(1.5));
+    Assert.assertEquals('"' + Strings.repeat("x", SlowCallLog.MAX_ARGUMENT_LENGTH) + "...\" (100 chars)",
+        SlowCallLog.summarize(Strings.repeat("x", 100)));
+    Assert.assertEquals("ArrayList(3)", SlowCallLog.summarize(Lists.newArrayList(1, 2, 3)));
+    Assert.assertEquals("int[2]", SlowCallLog.summarize(new int[2]));
+    Assert.assertEquals("{a, b}", SlowCallLog.summarize(script.toNative(ImmutableMap.of("a", 1, "b", 2))));
+    Assert.assertEquals("Array(2)", SlowCallLog.summarize(script.toNative(ImmutableList.of(1, 2))));
+    Assert.assertEquals("function fast", SlowCallLog.summarize(script.getScope().get("fast", script.getScope())));
+  }
+
+}
@@ -20,6 +20,8 @@ import com.cueup.hegemon.LoadError;
 import com.cueup.hegemon.LoadPath;
 import com.cueup.hegemon.Script;
 import com.cueup.hegemon.ScriptCache;
+import com.cueup.hegemon.compilation.ScriptCompilation;
+import com.google.common.cache.CacheBuilder;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
@@ -41,6 +43,17 @@ public class InjectableScriptCache extends ScriptCache {
   }
 
 
+  /**
+   * Creates a bounded cache. Use from a provider method to give the singleton cache a memory ceiling.
+   * @see ScriptCache#ScriptCache(LoadPath, ScriptCompilation, CacheBuilder)
+   */
+  public InjectableScriptCache(final LoadPath loadPath,
+                               final ScriptCompilation scriptCompilation,
+                               final CacheBuilder<? super String, ? super Script> cacheBuilder) {
+    super(loadPath, scriptCompilation, cacheBuilder);
+  }
+
+
   @Override
   public Script get(String script, boolean reload) throws LoadError, ScriptException {
     return super.get(script, reload);
@@ -0,0 +1,363 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.stdlib;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.ScriptRuntime;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.Undefined;
+import org.mozilla.javascript.Wrapper;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Native aggregation operators for 'hegemon/sequence': grouping, counting, reductions, top-k and sorting.
+ */
+final class Aggregates {
+
+  private Aggregates() { }
+
+
+  /**
+   * An element and the key it's ranked or sorted by.
+   */
+  private static final class Keyed {
+
+    private final Object key;
+
+    private final double number;
+
+    /**
+     * The element's position in the sequence, to keep ties in order.
+     */
+    private final int index;
+
+    private final Object element;
+
+
+    private Keyed(Object key, double number, int index, Object element) {
+      this.key = key;
+      this.number = number;
+      this.index = index;
+      this.element = element;
+    }
+
+  }
+
+
+  /**
+   * Orders by numeric key, lowest first, and ties by position, latest first: the order in which topK evicts.
+   */
+  private static final Comparator<Keyed> WORST_FIRST = new Comparator<Keyed>() {
+    @Override
+    public int compare(Keyed a, Keyed b) {
+      int result = compareScores(a.number, b.number);
+      return result != 0 ? result : Integer.compare(b.index, a.index);
+    }
+  };
+
+
+  /**
+   * Compares topK scores. NaN, which is what missing and non-numeric keys become, ranks below every number rather
+   * than above them all as it would with Double.compare.
+   */
+  private static int compareScores(double a, double b) {
+    if (Double.isNaN(a) || Double.isNaN(b)) {
+      return Boolean.compare(!Double.isNaN(a), !Double.isNaN(b));
+    }
+    return Double.compare(a, b);
+  }
+
+
+  /**
+   * Orders numeric keys before anything else, numbers numerically and the rest as strings, keeping ties in order.
+   * Comparing a number to a string some other way wouldn't be transitive, which sorting requires.
+   */
+  private static final Comparator<Keyed> KEY_ORDER = new Comparator<Keyed>() {
+    @Override
+    public int compare(Keyed a, Keyed b) {
+      boolean aNumber = a.key instanceof Number;
+      boolean bNumber = b.key instanceof Number;
+      int result;
+      if (aNumber != bNumber) {
+        result = aNumber ? -1 : 1;
+      } else if (aNumber) {
+        result = Double.compare(a.number, b.number);
+      } else {
+        result = ScriptRuntime.toString(a.key).compareTo(ScriptRuntime.toString(b.key));
+      }
+      return result != 0 ? result : Integer.compare(a.index, b.index);
+    }
+  };
+
+
+  /**
+   * The most topK keeps in its heap before it's seen any elements.
+   */
+  private static final int INITIAL_HEAP_CAPACITY = 16;
+
+
+  /**
+   * Running numeric totals, kept as primitives.
+   */
+  private static final class Totals implements Sequences.Visitor {
+
+    private final Context cx;
+
+    private final Scriptable scope;
+
+    private final Function valueFn;
+
+    private long count;
+
+    private double sum;
+
+    private double min = Double.POSITIVE_INFINITY;
+
+    private double max = Double.NEGATIVE_INFINITY;
+
+
+    private Totals(Context cx, Scriptable scope, Function valueFn) {
+      this.cx = cx;
+      this.scope = scope;
+      this.valueFn = valueFn;
+    }
+
+
+    @Override
+    public boolean visit(Object element) {
+      double value = toDouble(this.valueFn == null ? element : Sequences.invoke(this.cx, this.scope, this.valueFn,
+          element));
+      this.count++;
+      this.sum += value;
+      this.min = Math.min(this.min, value);
+      this.max = Math.max(this.max, value);
+      return false;
+    }
+
+  }
+
+
+  /**
+   * Defines the aggregation functions.
+   * @param target the object to define them on.
+   * @param scope the scope to create them in.
+   */
+  static void define(Scriptable target, Scriptable scope) {
+    Sequences.define(target, new Sequences.SequenceFunction(scope, "groupBy", 2) {
+      @Override
+      Object apply(Context cx, Scriptable scope, Object[] args) {
+        Map<String, List<Object>> groups = group(cx, scope, args);
+        Scriptable result = cx.newObject(scope);
+        for (Map.Entry<String, List<Object>> group : groups.entrySet()) {
+          ScriptRuntime.setObjectElem(result, group.getKey(), cx.newArray(scope, group.getValue().toArray()), cx);
+        }
+        return result;
+      }
+    });
+
+    Sequences.define(target, new Sequences.SequenceFunction(scope, "countBy", 2) {
+      @Override
+      Object apply(final Context cx, final Scriptable scope, Object[] args) {
+        final Function keyFn = Sequences.function(args, 1);
+        final Map<String, int[]> counts = Maps.newLinkedHashMap();
+        Sequences.iterate(cx, scope, Sequences.arg(args, 0), new Sequences.Visitor() {
+          @Override
+          public boolean visit(Object element) {
+            String key = stringKey(Sequences.invoke(cx, scope, keyFn, element));
+            int[] count = counts.get(key);
+            if (count == null) {
+              count = new int[1];
+              counts.put(key, count);
+            }
+            count[0]++;
+            return false;
+          }
+        });
+
+        Scriptable result = cx.newObject(scope);
+        for (Map.Entry<String, int[]> count : counts.entrySet()) {
+          ScriptRuntime.setObjectElem(result, count.getKey(), count.getValue()[0], cx);
+        }
+        return result;
+      }
+    });
+
+    Sequences.define(target, new Sequences.SequenceFunction(scope, "reduce", 3) {
+      @Override
+      Object apply(final Context cx, final Scriptable scope, Object[] args) {
+        final Function fn = Sequences.function(args, 1);
+        final Object[] accumulator = {Sequences.arg(args, 2)};
+        Sequences.iterate(cx, scope, Sequences.arg(args, 0), new Sequences.Visitor() {
+          @Override
+          public boolean visit(Object element) {
+            accumulator[0] = fn.call(cx, scope, scope, new Object[] {accumulator[0], element});
+            return false;
+          }
+        });
+        return accumulator[0];
+      }
+    });
+
+    Sequences.define(target, new Sequences.SequenceFunction(scope, "sum", 2) {
+      @Override
+      Object apply(Context cx, Scriptable scope, Object[] args) {
+        return totals(cx, scope, args).sum;
+      }
+    });
+
+    Sequences.define(target, new Sequences.SequenceFunction(scope, "mean", 2) {
+      @Override
+      Object apply(Context cx, Scriptable scope, Object[] args) {
+        Totals totals = totals(cx, scope, args);
+        return totals.count == 0 ? Double.NaN : totals.sum / totals.count;
+      }
+    });
+
+    Sequences.define(target, new Sequences.SequenceFunction(scope, "min", 2) {
+      @Override
+      Object apply(Context cx, Scriptable scope, Object[] args) {
+        Totals totals = totals(cx, scope, args);
+        return totals.count == 0 ? Undefined.instance : totals.min;
+      }
+    });
+
+    Sequences.define(target, new Sequences.SequenceFunction(scope, "max", 2) {
+      @Override
+      Object apply(Context cx, Scriptable scope, Object[] args) {
+        Totals totals = totals(cx, scope, args);
+        return totals.count == 0 ? Undefined.instance : totals.max;
+      }
+    });
+
+    Sequences.define(target, new Sequences.SequenceFunction(scope, "topK", 3) {
+      @Override
+      Object apply(final Context cx, final Scriptable scope, Object[] args) {
+        // Anything too big for an int, like Infinity, means every element.
+        double requested = ScriptRuntime.toNumber(Sequences.arg(args, 1));
+        final int n = requested >= Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) requested;
+        if (n <= 0) {
+          return cx.newArray(scope, 0);
+        }
+        final Function keyFn = Sequences.function(args, 2);
+        final PriorityQueue<Keyed> heap = new PriorityQueue<Keyed>(Math.min(n, INITIAL_HEAP_CAPACITY), WORST_FIRST);
+        Sequences.iterate(cx, scope, Sequences.arg(args, 0), new Sequences.Visitor() {
+          private int index;
+
+          @Override
+          public boolean visit(Object element) {
+            Object key = Sequences.invoke(cx, scope, keyFn, element);
+            double number = toDouble(key);
+            // Later elements lose ties, so only a strictly greater key displaces the worst one kept.
+            if (heap.size() < n || compareScores(number, heap.peek().number) > 0) {
+              if (heap.size() == n) {
+                heap.poll();
+              }
+              heap.add(new Keyed(key, number, this.index, element));
+            }
+            this.index++;
+            return false;
+          }
+        });
+
+        List<Keyed> best = Lists.newArrayList(heap);
+        Collections.sort(best, Collections.reverseOrder(WORST_FIRST));
+        return elementsOf(cx, scope, best);
+      }
+    });
+
+    Sequences.define(target, new Sequences.SequenceFunction(scope, "sortBy", 2) {
+      @Override
+      Object apply(final Context cx, final Scriptable scope, Object[] args) {
+        final Function keyFn = Sequences.function(args, 1);
+        final List<Keyed> keyed = Lists.newArrayList();
+        Sequences.iterate(cx, scope, Sequences.arg(args, 0), new Sequences.Visitor() {
+          @Override
+          public boolean visit(Object element) {
+            Object key = Sequences.invoke(cx, scope, keyFn, element);
+            Object unwrapped = key instanceof Wrapper ? ((Wrapper) key).unwrap() : key;
+            double number = unwrapped instanceof Number ? ((Number) unwrapped).doubleValue() : Double.NaN;
+            keyed.add(new Keyed(unwrapped, number, keyed.size(), element));
+            return false;
+          }
+        });
+
+        Collections.sort(keyed, KEY_ORDER);
+        return elementsOf(cx, scope, keyed);
+      }
+    });
+  }
+
+
+  private static Map<String, List<Object>> group(final Context cx, final Scriptable scope, Object[] args) {
+    final Function keyFn = Sequences.function(args, 1);
+    final Map<String, List<Object>> groups = Maps.newLinkedHashMap();
+    Sequences.iterate(cx, scope, Sequences.arg(args, 0), new Sequences.Visitor() {
+      @Override
+      public boolean visit(Object element) {
+        String key = stringKey(Sequences.invoke(cx, scope, keyFn, element));
+        List<Object> group = groups.get(key);
+        if (group == null) {
+          group = Lists.newArrayList();
+          groups.put(key, group);
+        }
+        group.add(element);
+        return false;
+      }
+    });
+    return groups;
+  }
+
+
+  private static Totals totals(Context cx, Scriptable scope, Object[] args) {
+    Object valueFn = Sequences.arg(args, 1);
+    Totals totals = new Totals(cx, scope, valueFn instanceof Function ? (Function) valueFn : null);
+    Sequences.iterate(cx, scope, Sequences.arg(args, 0), totals);
+    return totals;
+  }
+
+
+  private static Scriptable elementsOf(Context cx, Scriptable scope, List<Keyed> keyed) {
+    Object[] elements = new Object[keyed.size()];
+    for (int i = 0; i < elements.length; i++) {
+      elements[i] = keyed.get(i).element;
+    }
+    return cx.newArray(scope, elements);
+  }
+
+
+  /**
+   * @return key as a JS property name, the way obj[key] would convert it.
+   */
+  private static String stringKey(Object key) {
+    return ScriptRuntime.toString(key instanceof Wrapper ? ((Wrapper) key).unwrap() : key);
+  }
+
+
+  private static double toDouble(Object value) {
+    Object v = value instanceof Wrapper ? ((Wrapper) value).unwrap() : value;
+    return v instanceof Number ? ((Number) v).doubleValue() : ScriptRuntime.toNumber(v);
+  }
+
+}
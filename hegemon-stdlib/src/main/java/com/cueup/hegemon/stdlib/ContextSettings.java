@@ -0,0 +1,63 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.stdlib;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+
+/**
+ * The settings of a Context, for entering an equivalent one later or on another thread.
+ */
+final class ContextSettings {
+
+  private final ContextFactory factory;
+
+  private final int languageVersion;
+
+  private final int optimizationLevel;
+
+  private final ClassLoader classLoader;
+
+
+  /**
+   * @param cx the context to copy settings from.
+   */
+  ContextSettings(Context cx) {
+    this.factory = cx.getFactory();
+    this.languageVersion = cx.getLanguageVersion();
+    this.optimizationLevel = cx.getOptimizationLevel();
+    this.classLoader = cx.getApplicationClassLoader();
+  }
+
+
+  /**
+   * Enters a Context on the current thread, configured with these settings if the thread didn't already have one.
+   * Exit it with Context.exit().
+   * @return the context.
+   */
+  Context enter() {
+    boolean configure = Context.getCurrentContext() == null;
+    Context cx = this.factory.enterContext();
+    if (configure) {
+      cx.setLanguageVersion(this.languageVersion);
+      cx.setOptimizationLevel(this.optimizationLevel);
+      cx.setApplicationClassLoader(this.classLoader);
+    }
+    return cx;
+  }
+
+}
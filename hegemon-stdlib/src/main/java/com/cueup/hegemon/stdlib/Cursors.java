@@ -0,0 +1,226 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.stdlib;
+
+import com.google.common.collect.Iterators;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ScriptRuntime;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.Wrapper;
+
+import java.lang.reflect.Array;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.BaseStream;
+
+/**
+ * Iterators over the elements of any sequence, as JS values, pulling one element at a time from the source.
+ *
+ * Their methods must be called with a Context entered on the current thread.
+ */
+final class Cursors {
+
+  private Cursors() { }
+
+
+  /**
+   * @param scope the scope to wrap Java elements in.
+   * @param obj the sequence. Falsy values are empty; otherwise anything with a length is indexed, Iterables,
+   *     Streams, Spliterators and Enumerations are iterated, and anything else is treated as an Iterator.
+   * @return an iterator over the elements of obj.
+   */
+  static Iterator<Object> of(Scriptable scope, Object obj) {
+    if (!ScriptRuntime.toBoolean(obj)) {
+      return Collections.emptyIterator();
+    }
+    Object seq = obj instanceof Wrapper ? ((Wrapper) obj).unwrap() : obj;
+
+    if (seq instanceof Scriptable) {
+      return ofScriptable(scope, (Scriptable) seq);
+    } else if (seq.getClass().isArray()) {
+      return new ArrayCursor(scope, seq);
+    }
+
+    Iterator<?> it = javaIterator(seq);
+    if (it == null) {
+      throw ScriptRuntime.typeError("Not a sequence: " + ScriptRuntime.toString(obj));
+    }
+    return new JavaCursor(scope, it);
+  }
+
+
+  /**
+   * @param seq a Java object.
+   * @return an iterator over seq's elements, or null if it isn't a sequence.
+   */
+  private static Iterator<?> javaIterator(Object seq) {
+    if (seq instanceof Iterable) {
+      return ((Iterable<?>) seq).iterator();
+    } else if (seq instanceof Iterator) {
+      return (Iterator<?>) seq;
+    } else if (seq instanceof BaseStream) {
+      return ((BaseStream<?, ?>) seq).iterator();
+    } else if (seq instanceof Spliterator) {
+      return Spliterators.iterator((Spliterator<?>) seq);
+    } else if (seq instanceof Enumeration) {
+      return Iterators.forEnumeration((Enumeration<?>) seq);
+    }
+    return null;
+  }
+
+
+  /**
+   * Iterates a JS object: by index if it has a length, otherwise through its iterator() method or its own hasNext()
+   * and next() methods.
+   */
+  private static Iterator<Object> ofScriptable(Scriptable scope, final Scriptable obj) {
+    if (ScriptableObject.hasProperty(obj, "length")) {
+      return new Iterator<Object>() {
+        private int index;
+
+        @Override
+        public boolean hasNext() {
+          return this.index < ScriptRuntime.toNumber(ScriptableObject.getProperty(obj, "length"));
+        }
+
+        @Override
+        public Object next() {
+          if (!hasNext()) {
+            throw new NoSuchElementException();
+          }
+          return Sequences.orUndefined(ScriptableObject.getProperty(obj, this.index++));
+        }
+
+        @Override
+        public void remove() {
+          throw new UnsupportedOperationException();
+        }
+      };
+
+    } else if (ScriptableObject.hasProperty(obj, "iterator")) {
+      return of(scope, ScriptableObject.callMethod(Context.getCurrentContext(), obj, "iterator",
+          ScriptRuntime.emptyArgs));
+    }
+
+    return new Iterator<Object>() {
+      @Override
+      public boolean hasNext() {
+        return ScriptRuntime.toBoolean(
+            ScriptableObject.callMethod(Context.getCurrentContext(), obj, "hasNext", ScriptRuntime.emptyArgs));
+      }
+
+      @Override
+      public Object next() {
+        return ScriptableObject.callMethod(Context.getCurrentContext(), obj, "next", ScriptRuntime.emptyArgs);
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+
+  /**
+   * Iterates a Java array, wrapping elements as their component type.
+   */
+  private static final class ArrayCursor implements Iterator<Object> {
+
+    private final Scriptable scope;
+
+    private final Object array;
+
+    private final int length;
+
+    private int index;
+
+
+    private ArrayCursor(Scriptable scope, Object array) {
+      this.scope = scope;
+      this.array = array;
+      this.length = Array.getLength(array);
+    }
+
+
+    @Override
+    public boolean hasNext() {
+      return this.index < this.length;
+    }
+
+
+    @Override
+    public Object next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      Context cx = Context.getCurrentContext();
+      return cx.getWrapFactory().wrap(cx, this.scope, Array.get(this.array, this.index++),
+          this.array.getClass().getComponentType());
+    }
+
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+
+  }
+
+
+  /**
+   * Iterates a Java iterator, wrapping its elements.
+   */
+  private static final class JavaCursor implements Iterator<Object> {
+
+    private final Scriptable scope;
+
+    private final Iterator<?> iterator;
+
+
+    private JavaCursor(Scriptable scope, Iterator<?> iterator) {
+      this.scope = scope;
+      this.iterator = iterator;
+    }
+
+
+    @Override
+    public boolean hasNext() {
+      return this.iterator.hasNext();
+    }
+
+
+    @Override
+    public Object next() {
+      Context cx = Context.getCurrentContext();
+      return cx.getWrapFactory().wrap(cx, this.scope, this.iterator.next(), null);
+    }
+
+
+    @Override
+    public void remove() {
+      this.iterator.remove();
+    }
+
+  }
+
+}
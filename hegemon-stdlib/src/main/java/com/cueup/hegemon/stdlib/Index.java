@@ -0,0 +1,99 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.stdlib;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Scriptable;
+
+import java.util.Map;
+
+/**
+ * A hash index from normalized keys (see {@link Keys}) to JS values, exposed to JS as an object with has(key),
+ * get(key), size(), keys() and values() methods.
+ */
+final class Index {
+
+  private final Map<Object, Object> entries;
+
+  /**
+   * What get returns for missing keys. Called for each miss, so it can return a fresh object.
+   */
+  private final Sequences.SequenceFunction missing;
+
+
+  /**
+   * @param entries the entries, by normalized key. Not copied.
+   * @param missing returns the value for keys that aren't in the index.
+   */
+  Index(Map<Object, Object> entries, Sequences.SequenceFunction missing) {
+    this.entries = entries;
+    this.missing = missing;
+  }
+
+
+  /**
+   * @param cx the current context.
+   * @param scope the scope to create the object in.
+   * @return the JS object for this index.
+   */
+  Scriptable toScriptable(Context cx, Scriptable scope) {
+    Scriptable result = cx.newObject(scope);
+
+    Sequences.define(result, new Sequences.SequenceFunction(scope, "has", 1) {
+      @Override
+      Object apply(Context cx, Scriptable scope, Object[] args) {
+        return Index.this.entries.containsKey(Keys.of(Sequences.arg(args, 0)));
+      }
+    });
+
+    Sequences.define(result, new Sequences.SequenceFunction(scope, "get", 1) {
+      @Override
+      Object apply(Context cx, Scriptable scope, Object[] args) {
+        Object key = Keys.of(Sequences.arg(args, 0));
+        Object value = Index.this.entries.get(key);
+        if (value == null && !Index.this.entries.containsKey(key)) {
+          return Index.this.missing.apply(cx, scope, args);
+        }
+        return value;
+      }
+    });
+
+    Sequences.define(result, new Sequences.SequenceFunction(scope, "size", 0) {
+      @Override
+      Object apply(Context cx, Scriptable scope, Object[] args) {
+        return Index.this.entries.size();
+      }
+    });
+
+    Sequences.define(result, new Sequences.SequenceFunction(scope, "keys", 0) {
+      @Override
+      Object apply(Context cx, Scriptable scope, Object[] args) {
+        return cx.newArray(scope, Index.this.entries.keySet().toArray());
+      }
+    });
+
+    Sequences.define(result, new Sequences.SequenceFunction(scope, "values", 0) {
+      @Override
+      Object apply(Context cx, Scriptable scope, Object[] args) {
+        return cx.newArray(scope, Index.this.entries.values().toArray());
+      }
+    });
+
+    return result;
+  }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.stdlib;
+
+import com.google.common.collect.Lists;
+import org.mozilla.javascript.Undefined;
+import org.mozilla.javascript.Wrapper;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Normalizes JS and Java values into hash keys, so the same value hashes the same way whichever side it came from:
+ * JS strings and wrapped java.lang.Strings are both Strings, and whole numbers are Longs whether they were a JS
+ * number, an Integer or a Long.
+ */
+final class Keys {
+
+  /**
+   * Doubles with a larger magnitude aren't necessarily whole numbers that a Long can represent exactly.
+   */
+  private static final double MAX_EXACT_DOUBLE = 9007199254740992.0;
+
+
+  private Keys() { }
+
+
+  /**
+   * @param value a JS value, or a Java object.
+   * @return the value's hash key. null and undefined are both null.
+   */
+  static Object of(Object value) {
+    Object v = value instanceof Wrapper ? ((Wrapper) value).unwrap() : value;
+    if (v == null || v == Undefined.instance) {
+      return null;
+    } else if (v instanceof CharSequence || v instanceof Character) {
+      return v.toString();
+    } else if (v instanceof Integer || v instanceof Long || v instanceof Short || v instanceof Byte) {
+      return ((Number) v).longValue();
+    } else if (v instanceof Double || v instanceof Float) {
+      double d = ((Number) v).doubleValue();
+      if (d == Math.rint(d) && Math.abs(d) <= MAX_EXACT_DOUBLE) {
+        return (long) d;
+      }
+      return d;
+    }
+    return v;
+  }
+
+
+  /**
+   * Whether a Java collection contains a value that may have come from JS. A JS number may be stored as an Integer,
+   * a Long or a Double, so whole numbers are looked up as each of those.
+   * @param collection the collection to search, using its own contains method.
+   * @param value the value to look for.
+   * @return whether the collection contains the value.
+   */
+  static boolean contains(Collection<?> collection, Object value) {
+    for (Object candidate : javaEquivalents(value)) {
+      try {
+        if (collection.contains(candidate)) {
+          return true;
+        }
+      } catch (ClassCastException e) {
+        // The collection can't hold this type of value, so try the next one.
+      } catch (NullPointerException e) {
+        // The collection doesn't hold nulls.
+      }
+    }
+    return false;
+  }
+
+
+  private static List<Object> javaEquivalents(Object value) {
+    Object key = of(value);
+    if (key instanceof Long) {
+      long l = (Long) key;
+      List<Object> result = Lists.<Object>newArrayList(l, (double) l);
+      if (l == (int) l) {
+        result.add(0, (int) l);
+      }
+      return result;
+    }
+    return Lists.newArrayList(key);
+  }
+
+}
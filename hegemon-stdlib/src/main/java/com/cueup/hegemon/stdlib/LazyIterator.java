@@ -0,0 +1,147 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.stdlib;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.ScriptRuntime;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.Undefined;
+import org.mozilla.javascript.Wrapper;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A Java Iterator over the output of a 'hegemon/sequence' pipeline, for returning to Java code.
+ *
+ * Elements are pulled from the source one at a time, and only when the caller asks for more, so the pipeline can
+ * run after the script that built it has returned. Each call enters a Context like the one the pipeline was built
+ * in. Elements are converted to Java values: wrapped Java objects are unwrapped and undefined is null.
+ */
+final class LazyIterator implements Iterator<Object> {
+
+  private final ContextSettings settings;
+
+  private final Scriptable scope;
+
+  private final Object source;
+
+  private final Iterator<Object> cursor;
+
+  /**
+   * Passes each source element through the pipeline into buffer. Null if the pipeline wants no elements.
+   */
+  private final Function sink;
+
+  private final Queue<Object> buffer;
+
+  private boolean done;
+
+
+  /**
+   * @param cx the context the pipeline was built in.
+   * @param scope the scope to call sink in.
+   * @param source the sequence to pull elements from.
+   * @param sink the pipeline's first stage, or null if it wants no elements.
+   * @param buffer where the pipeline's last stage puts its output.
+   */
+  LazyIterator(Context cx, Scriptable scope, Object source, Function sink, Queue<Object> buffer) {
+    this.settings = new ContextSettings(cx);
+    this.scope = scope;
+    this.source = source;
+    this.cursor = Cursors.of(scope, source);
+    this.sink = sink;
+    this.buffer = buffer;
+    this.done = sink == null;
+  }
+
+
+  @Override
+  public boolean hasNext() {
+    if (!this.buffer.isEmpty()) {
+      return true;
+    }
+    if (this.done) {
+      return false;
+    }
+
+    Context cx = this.settings.enter();
+    try {
+      while (this.buffer.isEmpty() && !this.done) {
+        if (!this.cursor.hasNext()) {
+          this.done = true;
+        } else if (ScriptRuntime.toBoolean(
+            this.sink.call(cx, this.scope, this.scope, new Object[] {this.cursor.next()}))) {
+          this.done = true;
+        }
+      }
+    } finally {
+      Context.exit();
+    }
+    return !this.buffer.isEmpty();
+  }
+
+
+  @Override
+  public Object next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    Object value = this.buffer.remove();
+    if (value instanceof Wrapper) {
+      return ((Wrapper) value).unwrap();
+    }
+    return value == Undefined.instance ? null : value;
+  }
+
+
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+
+  /**
+   * @return a sequential, ordered Stream of this iterator's elements. Closing it closes the source, if the source
+   *     can be closed.
+   */
+  Stream<Object> toStream() {
+    Stream<Object> stream = StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED), false);
+    Object unwrapped = this.source instanceof Wrapper ? ((Wrapper) this.source).unwrap() : this.source;
+    if (unwrapped instanceof AutoCloseable) {
+      final AutoCloseable closeable = (AutoCloseable) unwrapped;
+      stream = stream.onClose(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            closeable.close();
+          } catch (Exception e) {
+            throw new IllegalStateException("Failed to close the source of a stream", e);
+          }
+        }
+      });
+    }
+    return stream;
+  }
+
+}
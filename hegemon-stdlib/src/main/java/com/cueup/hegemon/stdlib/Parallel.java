@@ -0,0 +1,153 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.stdlib;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.Scriptable;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Applies a JS function to the elements of a sequence on a shared fork-join pool.
+ *
+ * Each worker thread enters its own Context, configured like the caller's, and calls the function in the caller's
+ * scope. That scope is shared between the workers, so the function should only read it.
+ */
+final class Parallel {
+
+  /**
+   * Shared by every script in the JVM. Its threads are daemons.
+   */
+  private static final ForkJoinPool POOL = new ForkJoinPool();
+
+  /**
+   * How many chunks each thread's share of the elements is split into, so that threads that finish early can
+   * steal work from the others.
+   */
+  private static final int CHUNKS_PER_THREAD = 4;
+
+
+  private Parallel() { }
+
+
+  /**
+   * Calls fn on each element, in parallel, and returns the results in the same order. If any call throws, the
+   * remaining elements are skipped and the first exception is rethrown here.
+   * @param cx the caller's context.
+   * @param scope the scope to call fn in.
+   * @param fn the function to call.
+   * @param elements the elements, already converted to JS values.
+   * @return the results, one per element.
+   */
+  static Object[] apply(Context cx, Scriptable scope, Function fn, List<Object> elements) {
+    Object[] results = new Object[elements.size()];
+    if (elements.isEmpty()) {
+      return results;
+    }
+
+    int chunkSize = Math.max(1, elements.size() / (POOL.getParallelism() * CHUNKS_PER_THREAD));
+    Task task = new Task(new Job(cx, scope, fn, elements, results), 0, elements.size(), chunkSize);
+    POOL.invoke(task);
+
+    RuntimeException error = task.job.error.get();
+    if (error != null) {
+      throw error;
+    }
+    return results;
+  }
+
+
+  /**
+   * State shared by every task working on one call.
+   */
+  private static final class Job {
+
+    private final ContextSettings settings;
+
+    private final Scriptable scope;
+
+    private final Function fn;
+
+    private final List<Object> elements;
+
+    private final Object[] results;
+
+    private final AtomicReference<RuntimeException> error = new AtomicReference<RuntimeException>();
+
+
+    private Job(Context cx, Scriptable scope, Function fn, List<Object> elements, Object[] results) {
+      this.settings = new ContextSettings(cx);
+      this.scope = scope;
+      this.fn = fn;
+      this.elements = elements;
+      this.results = results;
+    }
+
+  }
+
+
+  /**
+   * Applies the function to a range of elements, splitting the range until it's at most one chunk.
+   */
+  private static final class Task extends RecursiveAction {
+
+    private final Job job;
+
+    private final int start;
+
+    private final int end;
+
+    private final int chunkSize;
+
+
+    private Task(Job job, int start, int end, int chunkSize) {
+      this.job = job;
+      this.start = start;
+      this.end = end;
+      this.chunkSize = chunkSize;
+    }
+
+
+    @Override
+    protected void compute() {
+      if (this.end - this.start > this.chunkSize) {
+        int middle = (this.start + this.end) >>> 1;
+        invokeAll(new Task(this.job, this.start, middle, this.chunkSize),
+                  new Task(this.job, middle, this.end, this.chunkSize));
+        return;
+      }
+
+      Context cx = this.job.settings.enter();
+      try {
+        for (int i = this.start; i < this.end && this.job.error.get() == null; i++) {
+          this.job.results[i] = this.job.fn.call(cx, this.job.scope, this.job.scope,
+              new Object[] {this.job.elements.get(i)});
+        }
+      } catch (RuntimeException e) {
+        this.job.error.compareAndSet(null, e);
+      } finally {
+        Context.exit();
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,530 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.stdlib;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.mozilla.javascript.BaseFunction;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.NativeArray;
+import org.mozilla.javascript.ScriptRuntime;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.Undefined;
+import org.mozilla.javascript.WrapFactory;
+import org.mozilla.javascript.Wrapper;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.RandomAccess;
+import java.util.stream.Stream;
+
+/**
+ * Native implementations of the 'hegemon/sequence' primitives.
+ *
+ * Going through Rhino's Java bridge costs a reflective method call and an argument conversion for every hasNext(),
+ * next() and get(i), which dominates loops over Java collections. These loops run in Java instead: JS arrays are
+ * read directly, RandomAccess lists and Java arrays are indexed, anything else Iterable is iterated, and the JS
+ * callback is called once per element through Function.call.
+ *
+ * The functions are real JS functions, so what they return - including what the callbacks return - reaches JS
+ * unchanged rather than being wrapped as a Java object.
+ */
+public final class Sequences {
+
+  private Sequences() { }
+
+
+  /**
+   * Receives the elements of a sequence, in order.
+   */
+  interface Visitor {
+
+    /**
+     * @param element the next element, already converted to a JS value.
+     * @return true to stop visiting elements.
+     */
+    boolean visit(Object element);
+
+  }
+
+
+  /**
+   * A named JS function implemented in Java, with its prototype and parent set up for the given scope.
+   */
+  abstract static class NativeFunction extends BaseFunction {
+
+    private final String name;
+
+    private final int arity;
+
+
+    NativeFunction(Scriptable scope, String name, int arity) {
+      this.name = name;
+      this.arity = arity;
+      ScriptRuntime.setFunctionProtoAndParent(this, scope);
+    }
+
+
+    @Override
+    public String getFunctionName() {
+      return this.name;
+    }
+
+
+    @Override
+    public int getArity() {
+      return this.arity;
+    }
+
+
+    @Override
+    public int getLength() {
+      return this.arity;
+    }
+
+  }
+
+
+  /**
+   * A JS function implemented in Java that ignores this.
+   */
+  abstract static class SequenceFunction extends NativeFunction {
+
+    SequenceFunction(Scriptable scope, String name, int arity) {
+      super(scope, name, arity);
+    }
+
+
+    @Override
+    public Object call(Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
+      return apply(cx, ScriptableObject.getTopLevelScope(scope), args);
+    }
+
+
+    /**
+     * @param cx the current context.
+     * @param scope the top level scope of the caller.
+     * @param args the arguments.
+     * @return the JS return value.
+     */
+    abstract Object apply(Context cx, Scriptable scope, Object[] args);
+
+  }
+
+
+  /**
+   * Creates the native sequence functions. Called once by 'hegemon/sequence' when it is loaded.
+   * @return an object whose properties are the functions.
+   */
+  public static Scriptable functions() {
+    Context cx = Context.getCurrentContext();
+    Scriptable scope = ScriptableObject.getTopLevelScope(ScriptRuntime.getTopCallScope(cx));
+    Scriptable result = cx.newObject(scope);
+
+    define(result, new SequenceFunction(scope, "iterate", 2) {
+      @Override
+      Object apply(final Context cx, final Scriptable scope, Object[] args) {
+        final Function fn = function(args, 1);
+        iterate(cx, scope, arg(args, 0), new Visitor() {
+          @Override
+          public boolean visit(Object element) {
+            return ScriptRuntime.toBoolean(invoke(cx, scope, fn, element));
+          }
+        });
+        return Undefined.instance;
+      }
+    });
+
+    define(result, new SequenceFunction(scope, "forEach", 2) {
+      @Override
+      Object apply(final Context cx, final Scriptable scope, Object[] args) {
+        final Function fn = function(args, 1);
+        iterate(cx, scope, arg(args, 0), new Visitor() {
+          @Override
+          public boolean visit(Object element) {
+            invoke(cx, scope, fn, element);
+            return false;
+          }
+        });
+        return Undefined.instance;
+      }
+    });
+
+    define(result, new SequenceFunction(scope, "forAll", 2) {
+      @Override
+      Object apply(final Context cx, final Scriptable scope, Object[] args) {
+        final Function fn = function(args, 1);
+        final boolean[] allTrue = {true};
+        iterate(cx, scope, arg(args, 0), new Visitor() {
+          @Override
+          public boolean visit(Object element) {
+            if (!ScriptRuntime.toBoolean(invoke(cx, scope, fn, element))) {
+              allTrue[0] = false;
+            }
+            return false;
+          }
+        });
+        return allTrue[0];
+      }
+    });
+
+    define(result, new SequenceFunction(scope, "map", 2) {
+      @Override
+      Object apply(final Context cx, final Scriptable scope, Object[] args) {
+        final Function fn = function(args, 1);
+        final List<Object> results = Lists.newArrayList();
+        iterate(cx, scope, arg(args, 0), new Visitor() {
+          @Override
+          public boolean visit(Object element) {
+            results.add(invoke(cx, scope, fn, element));
+            return false;
+          }
+        });
+        return cx.newArray(scope, results.toArray());
+      }
+    });
+
+    define(result, new SequenceFunction(scope, "filter", 2) {
+      @Override
+      Object apply(final Context cx, final Scriptable scope, Object[] args) {
+        final Function fn = function(args, 1);
+        final List<Object> results = Lists.newArrayList();
+        iterate(cx, scope, arg(args, 0), new Visitor() {
+          @Override
+          public boolean visit(Object element) {
+            if (ScriptRuntime.toBoolean(invoke(cx, scope, fn, element))) {
+              results.add(element);
+            }
+            return false;
+          }
+        });
+        return cx.newArray(scope, results.toArray());
+      }
+    });
+
+    define(result, new SequenceFunction(scope, "findFirst", 2) {
+      @Override
+      Object apply(final Context cx, final Scriptable scope, Object[] args) {
+        final Function fn = function(args, 1);
+        final Object[] found = {null};
+        iterate(cx, scope, arg(args, 0), new Visitor() {
+          @Override
+          public boolean visit(Object element) {
+            Object value = invoke(cx, scope, fn, element);
+            if (ScriptRuntime.toBoolean(value)) {
+              found[0] = value;
+              return true;
+            }
+            return false;
+          }
+        });
+        return found[0];
+      }
+    });
+
+    define(result, new SequenceFunction(scope, "toArray", 1) {
+      @Override
+      Object apply(Context cx, Scriptable scope, Object[] args) {
+        return cx.newArray(scope, elements(cx, scope, arg(args, 0)).toArray());
+      }
+    });
+
+    define(result, new SequenceFunction(scope, "zip", 0) {
+      @Override
+      Object apply(Context cx, Scriptable scope, Object[] args) {
+        if (args.length == 0) {
+          return cx.newArray(scope, 0);
+        }
+        List<List<Object>> sequences = Lists.newArrayListWithCapacity(args.length);
+        int length = Integer.MAX_VALUE;
+        for (Object arg : args) {
+          List<Object> elements = elements(cx, scope, arg);
+          sequences.add(elements);
+          length = Math.min(length, elements.size());
+        }
+
+        Object[] result = new Object[length];
+        for (int i = 0; i < length; i++) {
+          Object[] value = new Object[sequences.size()];
+          for (int j = 0; j < value.length; j++) {
+            value[j] = sequences.get(j).get(i);
+          }
+          result[i] = cx.newArray(scope, value);
+        }
+        return cx.newArray(scope, result);
+      }
+    });
+
+    define(result, new SequenceFunction(scope, "contains", 2) {
+      @Override
+      Object apply(Context cx, Scriptable scope, Object[] args) {
+        Object obj = arg(args, 0);
+        final Object item = arg(args, 1);
+        Object seq = obj instanceof Wrapper ? ((Wrapper) obj).unwrap() : obj;
+        if (seq instanceof Collection) {
+          return Keys.contains((Collection<?>) seq, item);
+        }
+        final boolean[] found = {false};
+        iterate(cx, scope, obj, new Visitor() {
+          @Override
+          public boolean visit(Object element) {
+            found[0] = ScriptRuntime.eq(element, item);
+            return found[0];
+          }
+        });
+        return found[0];
+      }
+    });
+
+    define(result, new SequenceFunction(scope, "toSet", 1) {
+      @Override
+      Object apply(Context cx, Scriptable scope, Object[] args) {
+        final Map<Object, Object> entries = Maps.newLinkedHashMap();
+        iterate(cx, scope, arg(args, 0), new Visitor() {
+          @Override
+          public boolean visit(Object element) {
+            Object key = Keys.of(element);
+            if (!entries.containsKey(key)) {
+              entries.put(key, element);
+            }
+            return false;
+          }
+        });
+        return new Index(entries, constant(scope, null)).toScriptable(cx, scope);
+      }
+    });
+
+    define(result, new SequenceFunction(scope, "indexBy", 2) {
+      @Override
+      Object apply(final Context cx, final Scriptable scope, Object[] args) {
+        final Function keyFn = function(args, 1);
+        final Map<Object, Object> entries = Maps.newLinkedHashMap();
+        iterate(cx, scope, arg(args, 0), new Visitor() {
+          @Override
+          public boolean visit(Object element) {
+            entries.put(Keys.of(invoke(cx, scope, keyFn, element)), element);
+            return false;
+          }
+        });
+        return new Index(entries, constant(scope, null)).toScriptable(cx, scope);
+      }
+    });
+
+    define(result, new SequenceFunction(scope, "groupIndex", 2) {
+      @Override
+      Object apply(final Context cx, final Scriptable scope, Object[] args) {
+        final Function keyFn = function(args, 1);
+        final Map<Object, List<Object>> groups = Maps.newLinkedHashMap();
+        iterate(cx, scope, arg(args, 0), new Visitor() {
+          @Override
+          public boolean visit(Object element) {
+            Object key = Keys.of(invoke(cx, scope, keyFn, element));
+            List<Object> group = groups.get(key);
+            if (group == null) {
+              group = Lists.newArrayList();
+              groups.put(key, group);
+            }
+            group.add(element);
+            return false;
+          }
+        });
+
+        Map<Object, Object> entries = Maps.newLinkedHashMap();
+        for (Map.Entry<Object, List<Object>> group : groups.entrySet()) {
+          entries.put(group.getKey(), cx.newArray(scope, group.getValue().toArray()));
+        }
+        return new Index(entries, new SequenceFunction(scope, "missing", 0) {
+          @Override
+          Object apply(Context cx, Scriptable scope, Object[] args) {
+            return cx.newArray(scope, 0);
+          }
+        }).toScriptable(cx, scope);
+      }
+    });
+
+    define(result, new SequenceFunction(scope, "parallelMap", 2) {
+      @Override
+      Object apply(Context cx, Scriptable scope, Object[] args) {
+        Function fn = function(args, 1);
+        return cx.newArray(scope, Parallel.apply(cx, scope, fn, elements(cx, scope, arg(args, 0))));
+      }
+    });
+
+    define(result, new SequenceFunction(scope, "parallelFilter", 2) {
+      @Override
+      Object apply(Context cx, Scriptable scope, Object[] args) {
+        Function fn = function(args, 1);
+        List<Object> elements = elements(cx, scope, arg(args, 0));
+        Object[] matches = Parallel.apply(cx, scope, fn, elements);
+        List<Object> results = Lists.newArrayList();
+        for (int i = 0; i < matches.length; i++) {
+          if (ScriptRuntime.toBoolean(matches[i])) {
+            results.add(elements.get(i));
+          }
+        }
+        return cx.newArray(scope, results.toArray());
+      }
+    });
+
+    define(result, new SequenceFunction(scope, "parallelForEach", 2) {
+      @Override
+      Object apply(Context cx, Scriptable scope, Object[] args) {
+        Function fn = function(args, 1);
+        Parallel.apply(cx, scope, fn, elements(cx, scope, arg(args, 0)));
+        return Undefined.instance;
+      }
+    });
+
+    define(result, new SequenceFunction(scope, "lazy", 2) {
+      @Override
+      Object apply(Context cx, Scriptable scope, Object[] args) {
+        return cx.getWrapFactory().wrap(cx, scope, lazy(cx, scope, args), Iterator.class);
+      }
+    });
+
+    define(result, new SequenceFunction(scope, "lazyStream", 2) {
+      @Override
+      Object apply(Context cx, Scriptable scope, Object[] args) {
+        return cx.getWrapFactory().wrap(cx, scope, lazy(cx, scope, args).toStream(), Stream.class);
+      }
+    });
+
+    Aggregates.define(result, scope);
+
+    return result;
+  }
+
+
+  static void define(Scriptable target, NativeFunction fn) {
+    ScriptableObject.putProperty(target, fn.getFunctionName(), fn);
+  }
+
+
+  /**
+   * @param args the source sequence, and a function that takes the pipeline's last stage and returns its first, or
+   *     null if the pipeline wants no elements.
+   */
+  private static LazyIterator lazy(Context cx, Scriptable scope, Object[] args) {
+    final Queue<Object> buffer = Lists.newLinkedList();
+    SequenceFunction terminal = new SequenceFunction(scope, "terminal", 1) {
+      @Override
+      Object apply(Context cx, Scriptable scope, Object[] args) {
+        buffer.add(arg(args, 0));
+        return false;
+      }
+    };
+    Object sink = invoke(cx, scope, function(args, 1), terminal);
+    return new LazyIterator(cx, scope, arg(args, 0), sink instanceof Function ? (Function) sink : null, buffer);
+  }
+
+
+  private static SequenceFunction constant(Scriptable scope, final Object value) {
+    return new SequenceFunction(scope, "constant", 0) {
+      @Override
+      Object apply(Context cx, Scriptable scope, Object[] args) {
+        return value;
+      }
+    };
+  }
+
+
+  static Object arg(Object[] args, int index) {
+    return index < args.length ? args[index] : Undefined.instance;
+  }
+
+
+  static Function function(Object[] args, int index) {
+    Object fn = arg(args, index);
+    if (!(fn instanceof Function)) {
+      throw ScriptRuntime.typeError("Expected a function but got " + ScriptRuntime.toString(fn));
+    }
+    return (Function) fn;
+  }
+
+
+  static Object invoke(Context cx, Scriptable scope, Function fn, Object element) {
+    return fn.call(cx, scope, scope, new Object[] {element});
+  }
+
+
+  private static List<Object> elements(Context cx, Scriptable scope, Object obj) {
+    final List<Object> result = Lists.newArrayList();
+    iterate(cx, scope, obj, new Visitor() {
+      @Override
+      public boolean visit(Object element) {
+        result.add(element);
+        return false;
+      }
+    });
+    return result;
+  }
+
+
+  static Object orUndefined(Object value) {
+    return value == Scriptable.NOT_FOUND ? Undefined.instance : value;
+  }
+
+
+  /**
+   * Visits each element of obj until the visitor returns true. JS arrays, Java arrays and RandomAccess lists are
+   * indexed directly; everything else goes through {@link Cursors}.
+   */
+  static void iterate(Context cx, Scriptable scope, Object obj, Visitor visitor) {
+    Object seq = obj instanceof Wrapper ? ((Wrapper) obj).unwrap() : obj;
+
+    if (seq instanceof NativeArray) {
+      NativeArray array = (NativeArray) seq;
+      for (int i = 0; i < array.getLength(); i++) {
+        if (visitor.visit(orUndefined(array.get(i, array)))) {
+          return;
+        }
+      }
+
+    } else if (seq instanceof Object[]) {
+      WrapFactory wrapFactory = cx.getWrapFactory();
+      Class<?> componentType = seq.getClass().getComponentType();
+      for (Object element : (Object[]) seq) {
+        if (visitor.visit(wrapFactory.wrap(cx, scope, element, componentType))) {
+          return;
+        }
+      }
+
+    } else if (seq instanceof List && seq instanceof RandomAccess) {
+      WrapFactory wrapFactory = cx.getWrapFactory();
+      List<?> list = (List<?>) seq;
+      for (int i = 0; i < list.size(); i++) {
+        if (visitor.visit(wrapFactory.wrap(cx, scope, list.get(i), null))) {
+          return;
+        }
+      }
+
+    } else {
+      Iterator<Object> cursor = Cursors.of(scope, obj);
+      while (cursor.hasNext()) {
+        if (visitor.visit(cursor.next())) {
+          return;
+        }
+      }
+    }
+  }
+
+}
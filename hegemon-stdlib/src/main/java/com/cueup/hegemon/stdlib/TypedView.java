@@ -0,0 +1,498 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.stdlib;
+
+import org.mozilla.javascript.ScriptRuntime;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+
+/**
+ * A JS view over a Java primitive array or NIO buffer. view[i] reads and writes the underlying storage directly,
+ * without copying it and without the reflection Rhino uses for Java arrays. Its methods are in the prototype built by
+ * {@link TypedViews}.
+ *
+ * Writes convert like JS typed arrays: int and byte views truncate and wrap, and writes out of range are ignored.
+ */
+abstract class TypedView extends ScriptableObject {
+
+  /**
+   * @return the number of elements.
+   */
+  abstract int length();
+
+
+  /**
+   * @param index the element's index, in range.
+   * @return the element as a JS number.
+   */
+  abstract Object getValue(int index);
+
+
+  /**
+   * @param index the element's index, in range.
+   * @return the element.
+   */
+  abstract double getDouble(int index);
+
+
+  /**
+   * @param index the element's index, in range.
+   * @param value the new value, converted to the element type.
+   */
+  abstract void setDouble(int index, double value);
+
+
+  /**
+   * @return the array or buffer this is a view of.
+   */
+  abstract Object backing();
+
+
+  /**
+   * @return a view of the same type over a heap array copy of the elements.
+   */
+  abstract TypedView copy();
+
+
+  /**
+   * @param index the element's index, in range.
+   * @param value the new value, as a JS value.
+   */
+  void setValue(int index, Object value) {
+    setDouble(index, ScriptRuntime.toNumber(value));
+  }
+
+
+  /**
+   * Copies every element into target, starting at offset.
+   * @param target the view to copy into.
+   * @param offset the index in target of the first element.
+   */
+  void copyTo(TypedView target, int offset) {
+    if (offset < 0 || offset > target.length() - length()) {
+      throw ScriptRuntime.constructError("RangeError",
+          "Can't copy " + length() + " elements to offset " + offset + " of a view of length " + target.length());
+    }
+    Object from = backing();
+    Object to = target.backing();
+    if (from.getClass().isArray() && from.getClass() == to.getClass()) {
+      System.arraycopy(from, 0, to, offset, length());
+    } else {
+      for (int i = 0; i < length(); i++) {
+        target.setDouble(offset + i, getDouble(i));
+      }
+    }
+  }
+
+
+  @Override
+  public String getClassName() {
+    return "TypedView";
+  }
+
+
+  @Override
+  public Object get(int index, Scriptable start) {
+    return index >= 0 && index < length() ? getValue(index) : NOT_FOUND;
+  }
+
+
+  @Override
+  public boolean has(int index, Scriptable start) {
+    return index >= 0 && index < length();
+  }
+
+
+  @Override
+  public void put(int index, Scriptable start, Object value) {
+    if (index >= 0 && index < length()) {
+      setValue(index, value);
+    }
+  }
+
+
+  @Override
+  public void delete(int index) {
+    // Elements can't be deleted.
+  }
+
+
+  @Override
+  public Object get(String name, Scriptable start) {
+    return "length".equals(name) ? length() : super.get(name, start);
+  }
+
+
+  @Override
+  public boolean has(String name, Scriptable start) {
+    return "length".equals(name) || super.has(name, start);
+  }
+
+
+  @Override
+  public void put(String name, Scriptable start, Object value) {
+    if (!"length".equals(name)) {
+      super.put(name, start, value);
+    }
+  }
+
+
+  @Override
+  public Object[] getIds() {
+    Object[] ids = new Object[length()];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = i;
+    }
+    return ids;
+  }
+
+
+  /**
+   * A view of an int[].
+   */
+  static final class IntArrayView extends TypedView {
+
+    private final int[] array;
+
+
+    IntArrayView(int[] array) {
+      this.array = array;
+    }
+
+
+    @Override
+    int length() {
+      return this.array.length;
+    }
+
+
+    @Override
+    Object getValue(int index) {
+      return this.array[index];
+    }
+
+
+    @Override
+    double getDouble(int index) {
+      return this.array[index];
+    }
+
+
+    @Override
+    void setDouble(int index, double value) {
+      this.array[index] = ScriptRuntime.toInt32(value);
+    }
+
+
+    @Override
+    Object backing() {
+      return this.array;
+    }
+
+
+    @Override
+    TypedView copy() {
+      return new IntArrayView(this.array.clone());
+    }
+
+  }
+
+
+  /**
+   * A view of a long[]. Values beyond 2^53 lose precision when converted to JS numbers, as they do anywhere else.
+   */
+  static final class LongArrayView extends TypedView {
+
+    private final long[] array;
+
+
+    LongArrayView(long[] array) {
+      this.array = array;
+    }
+
+
+    @Override
+    int length() {
+      return this.array.length;
+    }
+
+
+    @Override
+    Object getValue(int index) {
+      return this.array[index];
+    }
+
+
+    @Override
+    double getDouble(int index) {
+      return this.array[index];
+    }
+
+
+    @Override
+    void setDouble(int index, double value) {
+      this.array[index] = (long) value;
+    }
+
+
+    @Override
+    void setValue(int index, Object value) {
+      if (value instanceof Long || value instanceof Integer) {
+        this.array[index] = ((Number) value).longValue();
+      } else {
+        super.setValue(index, value);
+      }
+    }
+
+
+    @Override
+    Object backing() {
+      return this.array;
+    }
+
+
+    @Override
+    TypedView copy() {
+      return new LongArrayView(this.array.clone());
+    }
+
+  }
+
+
+  /**
+   * A view of a double[].
+   */
+  static final class DoubleArrayView extends TypedView {
+
+    private final double[] array;
+
+
+    DoubleArrayView(double[] array) {
+      this.array = array;
+    }
+
+
+    @Override
+    int length() {
+      return this.array.length;
+    }
+
+
+    @Override
+    Object getValue(int index) {
+      return this.array[index];
+    }
+
+
+    @Override
+    double getDouble(int index) {
+      return this.array[index];
+    }
+
+
+    @Override
+    void setDouble(int index, double value) {
+      this.array[index] = value;
+    }
+
+
+    @Override
+    Object backing() {
+      return this.array;
+    }
+
+
+    @Override
+    TypedView copy() {
+      return new DoubleArrayView(this.array.clone());
+    }
+
+  }
+
+
+  /**
+   * A view of a byte[]. Elements are signed, like Java bytes.
+   */
+  static final class ByteArrayView extends TypedView {
+
+    private final byte[] array;
+
+
+    ByteArrayView(byte[] array) {
+      this.array = array;
+    }
+
+
+    @Override
+    int length() {
+      return this.array.length;
+    }
+
+
+    @Override
+    Object getValue(int index) {
+      return (int) this.array[index];
+    }
+
+
+    @Override
+    double getDouble(int index) {
+      return this.array[index];
+    }
+
+
+    @Override
+    void setDouble(int index, double value) {
+      this.array[index] = (byte) ScriptRuntime.toInt32(value);
+    }
+
+
+    @Override
+    Object backing() {
+      return this.array;
+    }
+
+
+    @Override
+    TypedView copy() {
+      return new ByteArrayView(this.array.clone());
+    }
+
+  }
+
+
+  /**
+   * A view of the remaining bytes of a ByteBuffer, heap or direct. Elements are signed, like Java bytes.
+   */
+  static final class ByteBufferView extends TypedView {
+
+    private final ByteBuffer buffer;
+
+    /**
+     * Shares buffer's content, indexed from buffer's position when the view was made.
+     */
+    private final ByteBuffer slice;
+
+
+    ByteBufferView(ByteBuffer buffer) {
+      this.buffer = buffer;
+      this.slice = buffer.slice();
+    }
+
+
+    @Override
+    int length() {
+      return this.slice.limit();
+    }
+
+
+    @Override
+    Object getValue(int index) {
+      return (int) this.slice.get(index);
+    }
+
+
+    @Override
+    double getDouble(int index) {
+      return this.slice.get(index);
+    }
+
+
+    @Override
+    void setDouble(int index, double value) {
+      this.slice.put(index, (byte) ScriptRuntime.toInt32(value));
+    }
+
+
+    @Override
+    Object backing() {
+      return this.buffer;
+    }
+
+
+    @Override
+    TypedView copy() {
+      byte[] copy = new byte[length()];
+      this.slice.duplicate().get(copy);
+      return new ByteArrayView(copy);
+    }
+
+  }
+
+
+  /**
+   * A view of the remaining elements of a DoubleBuffer, heap or direct.
+   */
+  static final class DoubleBufferView extends TypedView {
+
+    private final DoubleBuffer buffer;
+
+    /**
+     * Shares buffer's content, indexed from buffer's position when the view was made.
+     */
+    private final DoubleBuffer slice;
+
+
+    DoubleBufferView(DoubleBuffer buffer) {
+      this.buffer = buffer;
+      this.slice = buffer.slice();
+    }
+
+
+    @Override
+    int length() {
+      return this.slice.limit();
+    }
+
+
+    @Override
+    Object getValue(int index) {
+      return this.slice.get(index);
+    }
+
+
+    @Override
+    double getDouble(int index) {
+      return this.slice.get(index);
+    }
+
+
+    @Override
+    void setDouble(int index, double value) {
+      this.slice.put(index, value);
+    }
+
+
+    @Override
+    Object backing() {
+      return this.buffer;
+    }
+
+
+    @Override
+    TypedView copy() {
+      double[] copy = new double[length()];
+      this.slice.duplicate().get(copy);
+      return new DoubleArrayView(copy);
+    }
+
+  }
+
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.stdlib;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ScriptRuntime;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.Undefined;
+import org.mozilla.javascript.Wrapper;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.util.Iterator;
+
+/**
+ * Native implementation of 'hegemon/typed': zero-copy views over Java primitive arrays and NIO buffers, with bulk
+ * operations that run in Java.
+ */
+public final class TypedViews {
+
+  private TypedViews() { }
+
+
+  /**
+   * A method of every view, called with the view as this.
+   */
+  private abstract static class ViewMethod extends Sequences.NativeFunction {
+
+    ViewMethod(Scriptable scope, String name, int arity) {
+      super(scope, name, arity);
+    }
+
+
+    @Override
+    public Object call(Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
+      if (!(thisObj instanceof TypedView)) {
+        throw ScriptRuntime.typeError(getFunctionName() + " must be called on a typed view");
+      }
+      return apply(cx, ScriptableObject.getTopLevelScope(scope), (TypedView) thisObj, args);
+    }
+
+
+    /**
+     * @param cx the current context.
+     * @param scope the top level scope of the caller.
+     * @param view the view the method was called on.
+     * @param args the arguments.
+     * @return the JS return value.
+     */
+    abstract Object apply(Context cx, Scriptable scope, TypedView view, Object[] args);
+
+  }
+
+
+  /**
+   * Creates the native typed view functions. Called once by 'hegemon/typed' when it is loaded.
+   * @return an object whose properties are the functions.
+   */
+  public static Scriptable functions() {
+    Context cx = Context.getCurrentContext();
+    Scriptable scope = ScriptableObject.getTopLevelScope(ScriptRuntime.getTopCallScope(cx));
+    final Scriptable prototype = prototype(cx, scope);
+    Scriptable result = cx.newObject(scope);
+
+    Sequences.define(result, new Sequences.SequenceFunction(scope, "view", 1) {
+      @Override
+      Object apply(Context cx, Scriptable scope, Object[] args) {
+        Object obj = Sequences.arg(args, 0);
+        Object backing = obj instanceof Wrapper ? ((Wrapper) obj).unwrap() : obj;
+        if (backing instanceof TypedView) {
+          return backing;
+        }
+        return attach(newView(backing), prototype, scope);
+      }
+    });
+
+    Sequences.define(result, new Sequences.SequenceFunction(scope, "allocate", 2) {
+      @Override
+      Object apply(Context cx, Scriptable scope, Object[] args) {
+        String type = ScriptRuntime.toString(Sequences.arg(args, 0));
+        int length = ScriptRuntime.toInt32(Sequences.arg(args, 1));
+        Object backing;
+        if ("int".equals(type)) {
+          backing = new int[length];
+        } else if ("long".equals(type)) {
+          backing = new long[length];
+        } else if ("double".equals(type)) {
+          backing = new double[length];
+        } else if ("byte".equals(type)) {
+          backing = new byte[length];
+        } else {
+          throw ScriptRuntime.typeError("Unknown element type: " + type);
+        }
+        return attach(newView(backing), prototype, scope);
+      }
+    });
+
+    Sequences.define(result, new Sequences.SequenceFunction(scope, "isView", 1) {
+      @Override
+      Object apply(Context cx, Scriptable scope, Object[] args) {
+        return Sequences.arg(args, 0) instanceof TypedView;
+      }
+    });
+
+    return result;
+  }
+
+
+  private static TypedView newView(Object backing) {
+    if (backing instanceof int[]) {
+      return new TypedView.IntArrayView((int[]) backing);
+    } else if (backing instanceof long[]) {
+      return new TypedView.LongArrayView((long[]) backing);
+    } else if (backing instanceof double[]) {
+      return new TypedView.DoubleArrayView((double[]) backing);
+    } else if (backing instanceof byte[]) {
+      return new TypedView.ByteArrayView((byte[]) backing);
+    } else if (backing instanceof ByteBuffer) {
+      return new TypedView.ByteBufferView((ByteBuffer) backing);
+    } else if (backing instanceof DoubleBuffer) {
+      return new TypedView.DoubleBufferView((DoubleBuffer) backing);
+    }
+    throw ScriptRuntime.typeError("Can't make a typed view of " + ScriptRuntime.toString(backing));
+  }
+
+
+  private static TypedView attach(TypedView view, Scriptable prototype, Scriptable scope) {
+    view.setPrototype(prototype);
+    view.setParentScope(scope);
+    return view;
+  }
+
+
+  private static Scriptable prototype(Context cx, Scriptable scope) {
+    final Scriptable prototype = cx.newObject(scope);
+
+    Sequences.define(prototype, new ViewMethod(scope, "sum", 0) {
+      @Override
+      Object apply(Context cx, Scriptable scope, TypedView view, Object[] args) {
+        double sum = 0;
+        for (int i = 0; i < view.length(); i++) {
+          sum += view.getDouble(i);
+        }
+        return sum;
+      }
+    });
+
+    Sequences.define(prototype, new ViewMethod(scope, "mean", 0) {
+      @Override
+      Object apply(Context cx, Scriptable scope, TypedView view, Object[] args) {
+        double sum = 0;
+        for (int i = 0; i < view.length(); i++) {
+          sum += view.getDouble(i);
+        }
+        return view.length() == 0 ? Double.NaN : sum / view.length();
+      }
+    });
+
+    Sequences.define(prototype, new ViewMethod(scope, "min", 0) {
+      @Override
+      Object apply(Context cx, Scriptable scope, TypedView view, Object[] args) {
+        if (view.length() == 0) {
+          return Undefined.instance;
+        }
+        double min = view.getDouble(0);
+        for (int i = 1; i < view.length(); i++) {
+          min = Math.min(min, view.getDouble(i));
+        }
+        return min;
+      }
+    });
+
+    Sequences.define(prototype, new ViewMethod(scope, "max", 0) {
+      @Override
+      Object apply(Context cx, Scriptable scope, TypedView view, Object[] args) {
+        if (view.length() == 0) {
+          return Undefined.instance;
+        }
+        double max = view.getDouble(0);
+        for (int i = 1; i < view.length(); i++) {
+          max = Math.max(max, view.getDouble(i));
+        }
+        return max;
+      }
+    });
+
+    Sequences.define(prototype, new ViewMethod(scope, "fill", 1) {
+      @Override
+      Object apply(Context cx, Scriptable scope, TypedView view, Object[] args) {
+        Object value = Sequences.arg(args, 0);
+        for (int i = 0; i < view.length(); i++) {
+          view.setValue(i, value);
+        }
+        return view;
+      }
+    });
+
+    Sequences.define(prototype, new ViewMethod(scope, "set", 2) {
+      @Override
+      Object apply(Context cx, Scriptable scope, TypedView view, Object[] args) {
+        Object source = Sequences.arg(args, 0);
+        int offset = args.length > 1 ? ScriptRuntime.toInt32(args[1]) : 0;
+        if (source instanceof TypedView) {
+          ((TypedView) source).copyTo(view, offset);
+          return view;
+        }
+        int index = offset;
+        Iterator<Object> elements = Cursors.of(scope, source);
+        while (elements.hasNext()) {
+          Object element = elements.next();
+          if (index < 0 || index >= view.length()) {
+            throw ScriptRuntime.constructError("RangeError", "Index " + index + " is outside a view of length "
+                + view.length());
+          }
+          view.setValue(index++, element);
+        }
+        return view;
+      }
+    });
+
+    Sequences.define(prototype, new ViewMethod(scope, "copyTo", 2) {
+      @Override
+      Object apply(Context cx, Scriptable scope, TypedView view, Object[] args) {
+        Object target = Sequences.arg(args, 0);
+        if (!(target instanceof TypedView)) {
+          throw ScriptRuntime.typeError("copyTo needs a typed view to copy to");
+        }
+        view.copyTo((TypedView) target, args.length > 1 ? ScriptRuntime.toInt32(args[1]) : 0);
+        return target;
+      }
+    });
+
+    Sequences.define(prototype, new ViewMethod(scope, "copy", 0) {
+      @Override
+      Object apply(Context cx, Scriptable scope, TypedView view, Object[] args) {
+        return attach(view.copy(), prototype, scope);
+      }
+    });
+
+    Sequences.define(prototype, new ViewMethod(scope, "toArray", 0) {
+      @Override
+      Object apply(Context cx, Scriptable scope, TypedView view, Object[] args) {
+        Object[] elements = new Object[view.length()];
+        for (int i = 0; i < elements.length; i++) {
+          elements[i] = view.getValue(i);
+        }
+        return cx.newArray(scope, elements);
+      }
+    });
+
+    Sequences.define(prototype, new ViewMethod(scope, "unwrap", 0) {
+      @Override
+      Object apply(Context cx, Scriptable scope, TypedView view, Object[] args) {
+        return cx.getWrapFactory().wrap(cx, scope, view.backing(), null);
+      }
+    });
+
+    return prototype;
+  }
+
+}
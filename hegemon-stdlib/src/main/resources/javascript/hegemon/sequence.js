@@ -19,31 +19,40 @@ let sequence = {};
 
 
 /**
- * @typedef {Array|Arguments|{length: number}|java.lang.Iterable}
+ * @typedef {Array|Arguments|{length: number}|java.lang.Iterable|java.util.Iterator|java.util.stream.BaseStream|
+ *     java.util.Spliterator|java.util.Enumeration}
  */
 sequence.SequenceType;
 
 
+/**
+ * The loops below are implemented in Java by com.cueup.hegemon.stdlib.Sequences, which reads JS arrays directly,
+ * indexes Java arrays and RandomAccess lists, and iterates anything else without a bridge call per element.
+ * @private
+ */
+sequence.natives_ = com.cueup.hegemon.stdlib.Sequences.functions();
+
+
+/**
+ * Calls fn(item) for each item in obj until fn returns a truthy value. This is the dispatch every other function
+ * here is built on: anything with a length is indexed, Iterables, Streams, Spliterators and Enumerations are
+ * iterated, and anything else is treated as an Iterator. Elements are pulled one at a time, so a Stream or a cursor
+ * is never copied into memory.
+ * @param {Array.<T>|sequence.SequenceType} obj
+ * @param {function(T): boolean} fn The function to call on each item. Returns true to stop.
+ * @template T
+ * @private
+ */
+sequence.iterate_ = sequence.natives_.iterate;
+
+
 /**
  * Calls fn(item) for each item in obj. Handles java arrays vs iteratables properly.
  * @param {Array.<T>|sequence.SequenceType} obj
  * @param {function(T)} fn The function to call on each item.
  * @template T
  */
-sequence.forEach = function(obj, fn) {
-  if (obj) {
-    if ('length' in obj) {
-      for (var i = 0; i < obj.length; i++) {
-        fn(obj[i]);
-      }
-    } else {
-      var it = (/** @type java.util.Iterator */ obj.iterator());
-      while (it.hasNext()) {
-        fn(it.next());
-      }
-    }
-  }
-};
+sequence.forEach = sequence.natives_.forEach;
 
 /**
  * Calls fn(o) for each o in obj and returns true if all return values are truthy.
@@ -53,17 +62,7 @@ sequence.forEach = function(obj, fn) {
  * @return {boolean} Whether all return values were truthy.
  * @template T
  */
-sequence.forAll = function(obj, fn) {
-  let allTrue = true;
-
-  sequence.forEach(obj, function(o) {
-    if (! fn(o)) {
-      allTrue = false;
-    }
-  });
-
-  return allTrue;
-};
+sequence.forAll = sequence.natives_.forAll;
 
 
 /**
@@ -73,13 +72,7 @@ sequence.forAll = function(obj, fn) {
  * @return {Array} The results.
  * @template T
  */
-sequence.map = function(obj, fn) {
-  let result = [];
-  sequence.forEach(obj, function(el) {
-    result.push(fn(el));
-  });
-  return result;
-};
+sequence.map = sequence.natives_.map;
 
 
 /**
@@ -89,17 +82,7 @@ sequence.map = function(obj, fn) {
  * @return {Array} The items in obj for which fn returned a truthy value.
  * @template T
  */
-sequence.filter = function(obj, fn) {
-  let result = [];
-
-  sequence.forEach(obj, function(el) {
-    if (fn(el)) {
-      result.push(el);
-    }
-  });
-
-  return result;
-};
+sequence.filter = sequence.natives_.filter;
 
 
 /**
@@ -108,32 +91,57 @@ sequence.filter = function(obj, fn) {
  * @return {Array.<T>} The iterable as an Array.
  * @template T
  */
-sequence.toArray = function(iterable) {
-  let result = [];
-  sequence.forEach(iterable, function(x) {
-    result.push(x);
-  });
-  return result;
-};
+sequence.toArray = sequence.natives_.toArray;
 
 
-// TODO(kev): Change to forEach usage. We're going to iterate all the way through (for map) anyway.
 /**
- * Determines if the given iterable contains the given item.
+ * Determines if the given iterable contains the given item. Java Collections are asked directly, using their own
+ * contains (so a HashSet is O(1)); anything else is scanned with == until the item is found. To check membership
+ * repeatedly, build an index once with sequence.toSet.
  * @param {sequence.SequenceType} iterable The item to iterate over.
  * @param {*} item The item to look for.
  * @return {boolean} Whether the item is found.
  */
-sequence.contains = function(iterable, item) {
-  for each(let each in sequence.toArray(iterable)) {
-    // TODO(david): this be a strict ("===") equality check. (need to make sure that changing that won't break anything
-    // first, though)
-    if (each == item) {
-      return true;
-    }
-  }
-  return false;
-};
+sequence.contains = sequence.natives_.contains;
+
+
+/**
+ * A hash index over a sequence. Keys are normalized so JS and Java values agree: JS strings and java.lang.Strings
+ * are the same key, and so are whole numbers whether they're JS numbers, Integers or Longs. Objects are compared by
+ * identity (or by equals, for Java objects).
+ * @typedef {{has: function(*): boolean, get: function(*): *, size: function(): number, keys: function(): Array,
+ *     values: function(): Array}}
+ */
+sequence.Index;
+
+
+/**
+ * Builds a set of the distinct items in obj. get(item) returns the first equal item, or null.
+ * @param {Array.<T>|sequence.SequenceType} obj The items.
+ * @return {sequence.Index} The set.
+ * @template T
+ */
+sequence.toSet = sequence.natives_.toSet;
+
+
+/**
+ * Indexes the items in obj by keyFn(item). get(key) returns the last item with that key, or null.
+ * @param {Array.<T>|sequence.SequenceType} obj The items.
+ * @param {function(T): *} keyFn Returns an item's key.
+ * @return {sequence.Index} The index.
+ * @template T
+ */
+sequence.indexBy = sequence.natives_.indexBy;
+
+
+/**
+ * Groups the items in obj by keyFn(item). get(key) returns the items with that key in order, or an empty array.
+ * @param {Array.<T>|sequence.SequenceType} obj The items.
+ * @param {function(T): *} keyFn Returns an item's key.
+ * @return {sequence.Index} The index.
+ * @template T
+ */
+sequence.groupIndex = sequence.natives_.groupIndex;
 
 
 // Currently actually a find + map?
@@ -144,28 +152,136 @@ sequence.contains = function(iterable, item) {
  * @return {T?} The first matching item found, or null if there was no result.
  * @template T
  */
-sequence.findFirst = function(obj, fn) {
-  if (obj) {
-    if ('length' in obj) {
-      for (let i = 0; i < obj.length; i++) {
-        let result = fn(obj[i]);
-        if (result) {
-          return result;
-        }
-      }
-    } else {
-      let it = obj.iterator();
-      while (it.hasNext()) {
-        let result = fn(it.next());
-        if (result) {
-          return result;
-        }
-      }
-    }
-  }
+sequence.findFirst = sequence.natives_.findFirst;
+
+/**
+ * Groups the items in obj by keyFn(item), which is converted to a string like any property name.
+ * @param {Array.<T>|sequence.SequenceType} obj The items.
+ * @param {function(T): *} keyFn Returns an item's key.
+ * @return {Object.<string, Array.<T>>} The items with each key, in order.
+ * @template T
+ */
+sequence.groupBy = sequence.natives_.groupBy;
+
+
+/**
+ * Counts the items in obj with each keyFn(item), which is converted to a string like any property name.
+ * @param {Array.<T>|sequence.SequenceType} obj The items.
+ * @param {function(T): *} keyFn Returns an item's key.
+ * @return {Object.<string, number>} The number of items with each key.
+ * @template T
+ */
+sequence.countBy = sequence.natives_.countBy;
+
+
+/**
+ * Combines the items in obj into a single value: fn(fn(fn(initial, a), b), c) and so on.
+ * @param {Array.<T>|sequence.SequenceType} obj The items.
+ * @param {function(R, T): R} fn Combines the accumulated value with the next item.
+ * @param {R} initial The initial accumulated value.
+ * @return {R} The final accumulated value.
+ * @template T, R
+ */
+sequence.reduce = sequence.natives_.reduce;
+
+
+// The numeric reductions below accumulate in Java without creating an intermediate array or boxing the running
+// total. Each takes an optional valueFn; without one, the items themselves are the numbers.
+
+
+/**
+ * @param {Array.<T>|sequence.SequenceType} obj The items.
+ * @param {function(T): number=} opt_valueFn Returns an item's value.
+ * @return {number} The sum of the values, or 0 if there are none.
+ * @template T
+ */
+sequence.sum = sequence.natives_.sum;
+
+
+/**
+ * @param {Array.<T>|sequence.SequenceType} obj The items.
+ * @param {function(T): number=} opt_valueFn Returns an item's value.
+ * @return {number} The mean of the values, or NaN if there are none.
+ * @template T
+ */
+sequence.mean = sequence.natives_.mean;
+
+
+/**
+ * @param {Array.<T>|sequence.SequenceType} obj The items.
+ * @param {function(T): number=} opt_valueFn Returns an item's value.
+ * @return {number|undefined} The smallest value, or undefined if there are none.
+ * @template T
+ */
+sequence.min = sequence.natives_.min;
+
+
+/**
+ * @param {Array.<T>|sequence.SequenceType} obj The items.
+ * @param {function(T): number=} opt_valueFn Returns an item's value.
+ * @return {number|undefined} The largest value, or undefined if there are none.
+ * @template T
+ */
+sequence.max = sequence.natives_.max;
+
+
+/**
+ * Returns the n items with the highest keyFn(item), highest first, keeping only n items in memory: O(len log n)
+ * rather than sorting everything. Items with equal keys stay in their original order. Keys that aren't numbers, like
+ * undefined for a missing field, count as NaN and rank below every number.
+ * @param {Array.<T>|sequence.SequenceType} obj The items.
+ * @param {number} n How many items to return. Infinity returns every item.
+ * @param {function(T): number} keyFn Returns an item's numeric rank.
+ * @return {Array.<T>} The top items.
+ * @template T
+ */
+sequence.topK = sequence.natives_.topK;
+
+
+/**
+ * Returns the items in obj sorted by keyFn(item), which is called once per item. Numeric keys come first, compared
+ * as numbers, then anything else, compared as strings. The sort is stable.
+ * @param {Array.<T>|sequence.SequenceType} obj The items.
+ * @param {function(T): *} keyFn Returns an item's sort key.
+ * @return {Array.<T>} The sorted items.
+ * @template T
+ */
+sequence.sortBy = sequence.natives_.sortBy;
+
+
+/**
+ * Like sequence.map, but calls fn on the elements in parallel on a fork-join pool shared by every script, so one
+ * call can use several cores. Results are in the same order as obj.
+ *
+ * fn runs on other threads, each with its own Context, so it must be pure: it can read the variables it closes over
+ * but mustn't change them or anything else shared. If it throws, the remaining elements are skipped and the first
+ * error is rethrown to the caller.
+ * @param {Array.<T>|sequence.SequenceType} obj The object to iterate over.
+ * @param {function(T): ?} fn The function to apply.
+ * @return {Array} The results.
+ * @template T
+ */
+sequence.parallelMap = sequence.natives_.parallelMap;
+
+
+/**
+ * Like sequence.filter, but calls fn in parallel. See sequence.parallelMap.
+ * @param {Array.<T>|sequence.SequenceType} obj The object to iterate over.
+ * @param {function(T)} fn The predicate.
+ * @return {Array.<T>} The items in obj for which fn returned a truthy value, in order.
+ * @template T
+ */
+sequence.parallelFilter = sequence.natives_.parallelFilter;
+
+
+/**
+ * Like sequence.forEach, but calls fn in parallel and in no particular order. See sequence.parallelMap.
+ * @param {Array.<T>|sequence.SequenceType} obj The object to iterate over.
+ * @param {function(T)} fn The function to call on each item.
+ * @template T
+ */
+sequence.parallelForEach = sequence.natives_.parallelForEach;
 
-  return null;
-};
 
 /**
  * Appropriated from Google's Closure googe.array.zip
@@ -177,24 +293,245 @@ sequence.findFirst = function(obj, fn) {
  *
  * This is similar to the zip() function in Python.  See {@link http://docs.python.org/library/functions.html#zip}
  *
- * @param {...} var_args Arrays to be combined.
+ * @param {...} var_args Arrays, or any other sequences, to be combined.
  * @return {!Array.<!Array>} A new array of arrays created from provided arrays.
  */
-sequence.zip = function(var_args) {
-  if (!arguments.length) {
-    return [];
+sequence.zip = sequence.natives_.zip;
+
+
+/**
+ * A lazy pipeline over a sequence. Stages like map and filter don't do any work when they're added: elements are
+ * pulled through all of them one at a time when a terminal operation like toArray runs, and stop being pulled as
+ * soon as the result is known. So
+ *
+ *     sequence.from(javaList).filter(isValid).map(score).take(10).toArray()
+ *
+ * never copies javaList, and stops iterating it after the tenth valid element.
+ *
+ * Each stage is a function that takes the stage after it - a sink, which returns true when no more elements are
+ * wanted - and returns its own sink, or null if it doesn't want any elements at all.
+ *
+ * @param {Array|sequence.SequenceType} source The sequence to pull elements from.
+ * @param {Array.<function(function(*): boolean): ?function(*): boolean>} stages The stages, in order.
+ * @constructor
+ */
+sequence.Pipeline = function(source, stages) {
+  this.source_ = source;
+  this.stages_ = stages;
+};
+
+
+/**
+ * Starts a lazy pipeline over obj.
+ * @param {Array.<T>|sequence.SequenceType} obj The sequence to pull elements from.
+ * @return {sequence.Pipeline}
+ * @template T
+ */
+sequence.from = function(obj) {
+  return new sequence.Pipeline(obj, []);
+};
+
+
+/**
+ * @param {function(function(*): boolean): ?function(*): boolean} stage The stage to add.
+ * @return {sequence.Pipeline} A new pipeline with stage added at the end.
+ * @private
+ */
+sequence.Pipeline.prototype.then_ = function(stage) {
+  return new sequence.Pipeline(this.source_, this.stages_.concat([stage]));
+};
+
+
+/**
+ * @param {function(*): boolean} terminal The final sink. Returns true to stop.
+ * @return {?function(*): boolean} The first stage's sink, or null if the pipeline wants no elements.
+ * @private
+ */
+sequence.Pipeline.prototype.compose_ = function(terminal) {
+  let sink = terminal;
+  for (let i = this.stages_.length - 1; i >= 0 && sink; i--) {
+    sink = this.stages_[i](sink);
   }
-  var result = [];
-  for (var i = 0; true; i++) {
-    var value = [];
-    for (var j = 0; j < arguments.length; j++) {
-      var arr = arguments[j];
-      // If i is larger than the array length, this is the shortest array.
-      if (i >= arr.length) {
-        return result;
-      }
-      value.push(arr[i]);
-    }
-    result.push(value);
+  return sink;
+};
+
+
+/**
+ * Pulls elements through every stage into terminal.
+ * @param {function(*): boolean} terminal The final sink. Returns true to stop.
+ * @private
+ */
+sequence.Pipeline.prototype.run_ = function(terminal) {
+  let sink = this.compose_(terminal);
+  if (sink) {
+    sequence.iterate_(this.source_, sink);
   }
 };
+
+
+/**
+ * @param {function(*): *} fn The function to apply to each element.
+ * @return {sequence.Pipeline} A pipeline of fn's results.
+ */
+sequence.Pipeline.prototype.map = function(fn) {
+  return this.then_(function(downstream) {
+    return function(el) {
+      return downstream(fn(el));
+    };
+  });
+};
+
+
+/**
+ * @param {function(*): boolean} fn The predicate.
+ * @return {sequence.Pipeline} A pipeline of the elements for which fn is truthy.
+ */
+sequence.Pipeline.prototype.filter = function(fn) {
+  return this.then_(function(downstream) {
+    return function(el) {
+      return fn(el) ? downstream(el) : false;
+    };
+  });
+};
+
+
+/**
+ * @param {number} n The maximum number of elements.
+ * @return {sequence.Pipeline} A pipeline of at most the first n elements.
+ */
+sequence.Pipeline.prototype.take = function(n) {
+  return this.then_(function(downstream) {
+    if (n <= 0) {
+      return null;
+    }
+    let remaining = n;
+    return function(el) {
+      remaining--;
+      return downstream(el) || remaining <= 0;
+    };
+  });
+};
+
+
+/**
+ * @param {number} n The number of elements to skip.
+ * @return {sequence.Pipeline} A pipeline of all but the first n elements.
+ */
+sequence.Pipeline.prototype.skip = function(n) {
+  return this.then_(function(downstream) {
+    let skipped = 0;
+    return function(el) {
+      if (skipped < n) {
+        skipped++;
+        return false;
+      }
+      return downstream(el);
+    };
+  });
+};
+
+
+/**
+ * @param {function(*): boolean} fn The predicate.
+ * @return {sequence.Pipeline} A pipeline of the elements before the first one for which fn is falsy.
+ */
+sequence.Pipeline.prototype.takeWhile = function(fn) {
+  return this.then_(function(downstream) {
+    return function(el) {
+      return fn(el) ? downstream(el) : true;
+    };
+  });
+};
+
+
+/**
+ * Calls fn on each element.
+ * @param {function(*)} fn The function to call.
+ */
+sequence.Pipeline.prototype.forEach = function(fn) {
+  this.run_(function(el) {
+    fn(el);
+    return false;
+  });
+};
+
+
+/**
+ * @return {Array} The elements, as an Array.
+ */
+sequence.Pipeline.prototype.toArray = function() {
+  let result = [];
+  this.run_(function(el) {
+    result.push(el);
+    return false;
+  });
+  return result;
+};
+
+
+/**
+ * @return {*} The first element, or null if there are none. Stops pulling elements after the first.
+ */
+sequence.Pipeline.prototype.first = function() {
+  let result = null;
+  this.run_(function(el) {
+    result = el;
+    return true;
+  });
+  return result;
+};
+
+
+/**
+ * @param {function(?, *): ?} fn Combines the accumulated value with the next element.
+ * @param {?} initial The initial accumulated value.
+ * @return {?} The final accumulated value.
+ */
+sequence.Pipeline.prototype.reduce = function(fn, initial) {
+  let result = initial;
+  this.run_(function(el) {
+    result = fn(result, el);
+    return false;
+  });
+  return result;
+};
+
+
+/**
+ * @return {number} The number of elements.
+ */
+sequence.Pipeline.prototype.count = function() {
+  let result = 0;
+  this.run_(function() {
+    result++;
+    return false;
+  });
+  return result;
+};
+
+
+/**
+ * Returns the pipeline as a lazy Java Iterator, for returning to Java code. Nothing is pulled from the source until
+ * the caller asks for an element, and then only as much as is needed, so the iterator can outlive the script call
+ * that built it. Elements are converted to Java values.
+ * @return {java.util.Iterator}
+ */
+sequence.Pipeline.prototype.iterator = function() {
+  let self = this;
+  return sequence.natives_.lazy(this.source_, function(terminal) {
+    return self.compose_(terminal);
+  });
+};
+
+
+/**
+ * Returns the pipeline as a lazy, sequential Java Stream. See sequence.Pipeline.prototype.iterator. Closing the
+ * stream closes the source, if it can be closed.
+ * @return {java.util.stream.Stream}
+ */
+sequence.Pipeline.prototype.stream = function() {
+  let self = this;
+  return sequence.natives_.lazyStream(this.source_, function(terminal) {
+    return self.compose_(terminal);
+  });
+};
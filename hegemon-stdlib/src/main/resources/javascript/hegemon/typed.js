@@ -0,0 +1,64 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+let typed = {};
+
+
+/**
+ * @private
+ */
+typed.natives_ = com.cueup.hegemon.stdlib.TypedViews.functions();
+
+
+/**
+ * A view over a Java int[], long[], double[] or byte[], or over the remaining elements of a ByteBuffer or
+ * DoubleBuffer (heap or direct). view[i] reads and writes the Java storage directly: nothing is copied, and there's
+ * no reflection as there is when indexing a Java array from JS. Out of range reads are undefined and out of range
+ * writes are ignored; int and byte views truncate written values like JS typed arrays.
+ *
+ * Views also work anywhere 'hegemon/sequence' takes a sequence.
+ *
+ * @typedef {{length: number, sum: function(): number, mean: function(): number, min: function(): number,
+ *     max: function(): number, fill: function(number): typed.View, set: function(*, number=): typed.View,
+ *     copyTo: function(typed.View, number=): typed.View, copy: function(): typed.View,
+ *     toArray: function(): Array.<number>, unwrap: function(): *}}
+ */
+typed.View;
+
+
+/**
+ * Makes a view of a Java array or buffer. Writes through the view change the array, and vice versa.
+ * @param {*} javaArrayOrBuffer The int[], long[], double[], byte[], ByteBuffer or DoubleBuffer to view.
+ * @return {typed.View} The view.
+ */
+typed.view = typed.natives_.view;
+
+
+/**
+ * Allocates a zeroed Java array and returns a view of it. view.unwrap() returns the array, to pass to Java.
+ * @param {string} type 'int', 'long', 'double' or 'byte'.
+ * @param {number} length The number of elements.
+ * @return {typed.View} The view.
+ */
+typed.allocate = typed.natives_.allocate;
+
+
+/**
+ * @param {*} obj The object to check.
+ * @return {boolean} Whether obj is a typed view.
+ */
+typed.isView = typed.natives_.isView;
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.stdlib;
+
+import com.cueup.hegemon.LoadError;
+import com.cueup.hegemon.Script;
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Tests for returning lazy sequences to Java.
+ */
+public class SequencesTest {
+
+  private static final String SOURCE =
+      "let sequence = core.load('hegemon/sequence');\n"
+      + "function shout(list) { return sequence.from(list).map(function(s) { return s + '!'; }).iterator(); }\n"
+      + "function shoutStream(list) { return sequence.from(list).map(function(s) { return s + '!'; }).stream(); }\n";
+
+
+  @Test
+  public void iteratorsAreConsumedAfterTheScriptReturns() throws LoadError {
+    Script script = new Script("test", SOURCE);
+    Iterator<?> it = (Iterator<?>) script.run("shout", ImmutableList.of("a", "b", "c"));
+    Assert.assertEquals(ImmutableList.of("a!", "b!", "c!"), ImmutableList.copyOf(it));
+  }
+
+
+  @Test
+  public void streamsAreConsumedAfterTheScriptReturns() throws LoadError {
+    Script script = new Script("test", SOURCE);
+    Stream<?> stream = (Stream<?>) script.run("shoutStream", ImmutableList.of("x", "y"));
+    Assert.assertEquals("x!,y!", stream.map(String::valueOf).collect(Collectors.joining(",")));
+  }
+
+}
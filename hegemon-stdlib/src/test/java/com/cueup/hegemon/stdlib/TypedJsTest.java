@@ -0,0 +1,29 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.stdlib;
+
+import com.cueup.hegemon.testing.HegemonRunner;
+import org.junit.runner.RunWith;
+
+/**
+ * Tests for 'hegemon/typed'.
+ */
+@RunWith(HegemonRunner.class)
+@HegemonRunner.TestScript(filename = "hegemon/typedTest")
+@HegemonRunner.BenchmarkOptions(warmupIterations = 1, iterations = 2, iterationMillis = 50)
+public class TypedJsTest {
+}
@@ -54,3 +54,336 @@ function testToArrayWithJavaArray() {
   let array = com.cueup.hegemon.stdlib.JavaJsTest.arrayOf('a', 'b', 'c');
   Assert.assertEquals(['a', 'b', 'c'], sequence.toArray(array));
 }
+
+function testFindFirstWithJavaIterator() {
+  let list = java.util.ArrayList();
+  list.addAll(['a', 'b', 'c']);
+  Assert.assertEquals('B', sequence.findFirst(list.iterator(), function(val) {
+    return val == 'b' ? 'B' : null;
+  }));
+}
+
+function testPipelineShortCircuits() {
+  let pulled = 0;
+  let result = sequence.from([1, 2, 3, 4, 5, 6, 7, 8])
+      .map(function(x) { pulled++; return x * 10; })
+      .filter(function(x) { return x % 20 == 0; })
+      .take(2)
+      .toArray();
+  Assert.assertEquals([20, 40], result);
+  Assert.assertEquals(4, pulled, 0);
+}
+
+function testPipelineWithJavaCollections() {
+  let list = java.util.ArrayList();
+  list.addAll(['a', 'bb', 'ccc', 'dddd']);
+  Assert.assertEquals(['BB', 'CCC'], sequence.from(list).skip(1).take(2).map(function(s) {
+    return String(s).toUpperCase();
+  }).toArray());
+  Assert.assertEquals('ccc', String(sequence.from(list.iterator()).filter(function(s) {
+    return s.length() == 3;
+  }).first()));
+}
+
+function testPipelineTerminals() {
+  let pipeline = sequence.from([1, 2, 3, 4]).takeWhile(function(x) { return x < 4; });
+  Assert.assertEquals(3, pipeline.count(), 0);
+  Assert.assertEquals(6, pipeline.reduce(function(sum, x) { return sum + x; }, 0), 0);
+  Assert.assertNull(sequence.from([1, 2]).take(0).first());
+}
+
+function testPrimitiveJavaArraysAreNumbers() {
+  let array = java.lang.reflect.Array.newInstance(java.lang.Integer.TYPE, 3);
+  array[0] = 1;
+  array[1] = 2;
+  array[2] = 3;
+  Assert.assertEquals([2, 4, 6], sequence.map(array, function(x) {
+    return x * 2;
+  }));
+}
+
+function testArgumentsAndHoles() {
+  let holes = [1];
+  holes[2] = 3;
+  Assert.assertEquals(3, sequence.toArray(holes).length, 0);
+  Assert.assertTrue(sequence.toArray(holes)[1] === undefined);
+
+  (function() {
+    Assert.assertEquals(['x', 'y'], sequence.toArray(arguments));
+  })('x', 'y');
+}
+
+function testEmptySequences() {
+  Assert.assertEquals([], sequence.toArray(null));
+  Assert.assertEquals([], sequence.map(undefined, function(x) {
+    return x;
+  }));
+  Assert.assertTrue(sequence.forAll(null, function() {
+    return false;
+  }));
+}
+
+function testCallbackResultsAreJsValues() {
+  let list = java.util.ArrayList();
+  list.addAll(['a', 'b']);
+  let found = sequence.findFirst(list, function(x) {
+    return x == 'b' ? 'found ' + x : null;
+  });
+  Assert.assertEquals('string', typeof found);
+  Assert.assertEquals('found b', found);
+  Assert.assertNull(sequence.findFirst(list, function() {
+    return false;
+  }));
+}
+
+function testForAllAndFilterOnJavaCollections() {
+  let set = java.util.ArrayList();
+  set.addAll([1, 2, 3, 4]);
+  let evens = sequence.filter(set, function(x) {
+    return x % 2 == 0;
+  });
+  Assert.assertEquals(2, evens.length, 0);
+  Assert.assertEquals(4, Number(evens[1]), 0);
+  Assert.assertTrue(sequence.forAll(set, function(x) {
+    return x > 0;
+  }));
+  Assert.assertFalse(sequence.forAll(set, function(x) {
+    return x > 1;
+  }));
+}
+
+function testZip() {
+  let list = java.util.ArrayList();
+  list.addAll(['a', 'b', 'c']);
+  let zipped = sequence.zip([1, 2], list);
+  Assert.assertEquals(2, zipped.length, 0);
+  Assert.assertEquals(2, zipped[1][0], 0);
+  Assert.assertEquals('b', String(zipped[1][1]));
+  Assert.assertEquals([], sequence.zip());
+}
+
+function testContains() {
+  Assert.assertTrue(sequence.contains([1, 2, 3], 2));
+  Assert.assertFalse(sequence.contains([1, 2, 3], 4));
+
+  let set = java.util.HashSet();
+  set.add(java.lang.Integer(7));
+  set.add('seven');
+  Assert.assertTrue(sequence.contains(set, 7));
+  Assert.assertTrue(sequence.contains(set, 'seven'));
+  Assert.assertFalse(sequence.contains(set, 8));
+  Assert.assertFalse(sequence.contains(java.util.TreeSet(), 'x'));
+}
+
+function testToSetNormalizesKeys() {
+  let list = java.util.ArrayList();
+  list.add(java.lang.Long(1));
+  list.add('a');
+  let set = sequence.toSet(list);
+  Assert.assertTrue(set.has(1));
+  Assert.assertTrue(set.has('a'));
+  Assert.assertFalse(set.has('1'));
+  Assert.assertEquals(2, set.size(), 0);
+
+  Assert.assertEquals(2, sequence.toSet([1, 1.0, 2]).size(), 0);
+}
+
+function testIndexBy() {
+  let people = [{id: 1, name: 'a'}, {id: 2, name: 'b'}];
+  let byId = sequence.indexBy(people, function(p) {
+    return p.id;
+  });
+  Assert.assertEquals('b', byId.get(2).name);
+  Assert.assertEquals('b', byId.get(java.lang.Integer(2)).name);
+  Assert.assertNull(byId.get(3));
+  Assert.assertEquals([1, 2], byId.keys());
+}
+
+function testGroupIndex() {
+  let groups = sequence.groupIndex(['apple', 'avocado', 'banana'], function(s) {
+    return s.charAt(0);
+  });
+  Assert.assertEquals(['apple', 'avocado'], groups.get('a'));
+  Assert.assertEquals([], groups.get('c'));
+  Assert.assertEquals(2, groups.size(), 0);
+}
+
+function testParallelMapKeepsOrder() {
+  let input = [];
+  for (let i = 0; i < 1000; i++) {
+    input.push(i);
+  }
+  let offset = 1;
+  let results = sequence.parallelMap(input, function(x) {
+    return x * 2 + offset;
+  });
+  Assert.assertEquals(1000, results.length, 0);
+  for (let i = 0; i < 1000; i++) {
+    Assert.assertEquals(i * 2 + 1, results[i], 0);
+  }
+
+  Assert.assertEquals([], sequence.parallelMap([], function(x) {
+    return x;
+  }));
+}
+
+function testParallelFilterAndForEach() {
+  let list = java.util.ArrayList();
+  for (let i = 0; i < 100; i++) {
+    list.add(java.lang.Integer(i));
+  }
+  let odds = sequence.parallelFilter(list, function(x) {
+    return x % 2 == 1;
+  });
+  Assert.assertEquals(50, odds.length, 0);
+  Assert.assertEquals(99, Number(odds[49]), 0);
+
+  let count = java.util.concurrent.atomic.AtomicInteger();
+  sequence.parallelForEach(list, function() {
+    count.incrementAndGet();
+  });
+  Assert.assertEquals(100, count.get(), 0);
+}
+
+function testParallelMapPropagatesErrors() {
+  let caught = null;
+  try {
+    sequence.parallelMap([1, 2, 3, 4], function(x) {
+      if (x == 3) {
+        throw new Error('bad element ' + x);
+      }
+      return x;
+    });
+  } catch (e) {
+    caught = e;
+  }
+  Assert.assertEquals('bad element 3', caught.message);
+}
+
+function testStreamingSources() {
+  let huge = java.util.stream.IntStream.range(0, 1000000000);
+  let firstThree = sequence.from(huge).map(function(x) {
+    return x * 10;
+  }).take(3).toArray();
+  Assert.assertEquals(3, firstThree.length, 0);
+  Assert.assertEquals(20, Number(firstThree[2]), 0);
+
+  let vector = java.util.Vector();
+  vector.addAll(['a', 'b']);
+  Assert.assertEquals(['a', 'b'], sequence.map(vector.elements(), String));
+  Assert.assertEquals(['a', 'b'], sequence.map(vector.spliterator(), String));
+  Assert.assertEquals(['a', 'b'], sequence.map(vector.stream(), String));
+}
+
+function testPipelineIteratorIsLazy() {
+  let pulled = 0;
+  let source = {
+    hasNext: function() {
+      return true;
+    },
+    next: function() {
+      return ++pulled;
+    }
+  };
+  let it = sequence.from(source).filter(function(x) {
+    return x % 2 == 0;
+  }).iterator();
+  Assert.assertEquals(0, pulled, 0);
+  Assert.assertEquals(2, Number(it.next()), 0);
+  Assert.assertEquals(2, pulled, 0);
+  Assert.assertEquals(4, Number(it.next()), 0);
+  Assert.assertEquals(4, pulled, 0);
+
+  let empty = sequence.from([1, 2]).take(0).iterator();
+  Assert.assertFalse(empty.hasNext());
+}
+
+function testPipelineStream() {
+  let stream = sequence.from(['a', 'b', 'c']).skip(1).stream();
+  Assert.assertEquals(2, stream.count(), 0);
+}
+
+function testGroupByAndCountBy() {
+  let words = ['apple', 'avocado', 'banana'];
+  let firstLetter = function(s) {
+    return s.charAt(0);
+  };
+  let groups = sequence.groupBy(words, firstLetter);
+  Assert.assertEquals(['apple', 'avocado'], groups.a);
+  Assert.assertEquals(['banana'], groups.b);
+
+  let counts = sequence.countBy([1, 2, 3, 4, 5], function(x) {
+    return x % 2;
+  });
+  Assert.assertEquals(3, counts[1], 0);
+  Assert.assertEquals(2, counts['0'], 0);
+}
+
+function testNumericReductions() {
+  let list = java.util.ArrayList();
+  list.addAll([java.lang.Integer(3), java.lang.Integer(-1), java.lang.Integer(10)]);
+  Assert.assertEquals(12, sequence.sum(list), 0);
+  Assert.assertEquals(4, sequence.mean(list), 0);
+  Assert.assertEquals(-1, sequence.min(list), 0);
+  Assert.assertEquals(10, sequence.max(list), 0);
+  Assert.assertEquals(24, sequence.sum(list, function(x) {
+    return x * 2;
+  }), 0);
+
+  Assert.assertEquals(0, sequence.sum([]), 0);
+  Assert.assertTrue(isNaN(sequence.mean([])));
+  Assert.assertTrue(sequence.max([]) === undefined);
+
+  Assert.assertEquals('abc', sequence.reduce(['a', 'b', 'c'], function(acc, x) {
+    return acc + x;
+  }, ''));
+}
+
+function testTopK() {
+  let items = [{n: 'a', s: 5}, {n: 'b', s: 9}, {n: 'c', s: 1}, {n: 'd', s: 9}, {n: 'e', s: 7}];
+  let score = function(x) {
+    return x.s;
+  };
+  Assert.assertEquals(['b', 'd', 'e'], sequence.map(sequence.topK(items, 3, score), function(x) {
+    return x.n;
+  }));
+  Assert.assertEquals(5, sequence.topK(items, 10, score).length, 0);
+  Assert.assertEquals([], sequence.topK(items, 0, score));
+  Assert.assertEquals(['b', 'd', 'e', 'a', 'c'], sequence.map(sequence.topK(items, Infinity, score), function(x) {
+    return x.n;
+  }));
+  Assert.assertEquals(5, sequence.topK(items, 1e9, score).length, 0);
+
+  let missing = [{n: 'a', s: 1}, {n: 'b'}, {n: 'c', s: 3}, {n: 'd', s: 'x'}, {n: 'e', s: -Infinity}];
+  Assert.assertEquals(['c'], sequence.map(sequence.topK(missing, 1, score), function(x) {
+    return x.n;
+  }));
+  Assert.assertEquals(['c', 'a', 'e', 'b', 'd'], sequence.map(sequence.topK(missing, 5, score), function(x) {
+    return x.n;
+  }));
+}
+
+function testSortBy() {
+  let calls = 0;
+  let sorted = sequence.sortBy([{k: 10}, {k: 9}, {k: 100}, {k: 9.5}], function(x) {
+    calls++;
+    return x.k;
+  });
+  Assert.assertEquals([9, 9.5, 10, 100], sequence.map(sorted, function(x) {
+    return x.k;
+  }));
+  Assert.assertEquals(4, calls, 0);
+
+  Assert.assertEquals(['a', 'b', 'c'], sequence.sortBy(['c', 'a', 'b'], String));
+
+  let mixed = [];
+  for (let i = 0; i < 100; i++) {
+    mixed.push(i % 3 == 0 ? String(i) + 'a' : i % 3 == 1 ? String(i) : i);
+  }
+  let keys = sequence.sortBy(mixed, function(x) {
+    return x;
+  });
+  Assert.assertEquals([2, 5, 8], keys.slice(0, 3));
+  Assert.assertEquals(98, keys[32], 0);
+  Assert.assertEquals(['0a', '1', '10', '12a'], keys.slice(33, 37));
+}
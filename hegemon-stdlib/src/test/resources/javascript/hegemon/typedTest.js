@@ -0,0 +1,93 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+let typed = core.load('hegemon/typed');
+let sequence = core.load('hegemon/sequence');
+let Assert = core.load('hegemon/unittest').Assert;
+
+function testViewsShareStorage() {
+  let array = java.lang.reflect.Array.newInstance(java.lang.Double.TYPE, 3);
+  let view = typed.view(array);
+  Assert.assertEquals(3, view.length, 0);
+  view[1] = 2.5;
+  Assert.assertEquals(2.5, array[1], 0);
+  array[2] = 4;
+  Assert.assertEquals(4, view[2], 0);
+  Assert.assertTrue(view[3] === undefined);
+  view[3] = 1;
+  Assert.assertEquals(3, view.length, 0);
+}
+
+function testIntViewsTruncate() {
+  let view = typed.allocate('int', 2);
+  view[0] = 3.7;
+  view[1] = 4294967297;
+  Assert.assertEquals([3, 1], view.toArray());
+
+  let bytes = typed.allocate('byte', 1);
+  bytes[0] = 200;
+  Assert.assertEquals(-56, bytes[0], 0);
+}
+
+function testBulkOperations() {
+  let view = typed.allocate('double', 4).set([1, 5, -2, 4]);
+  Assert.assertEquals(8, view.sum(), 0);
+  Assert.assertEquals(2, view.mean(), 0);
+  Assert.assertEquals(-2, view.min(), 0);
+  Assert.assertEquals(5, view.max(), 0);
+  Assert.assertTrue(typed.allocate('int', 0).max() === undefined);
+
+  let copy = view.copy();
+  copy[0] = 100;
+  Assert.assertEquals(1, view[0], 0);
+
+  let target = typed.allocate('double', 6).fill(-1);
+  view.copyTo(target, 2);
+  Assert.assertEquals([-1, -1, 1, 5, -2, 4], target.toArray());
+
+  let caught = null;
+  try {
+    view.copyTo(target, 2147483647);
+  } catch (e) {
+    caught = e;
+  }
+  Assert.assertTrue(caught instanceof RangeError);
+}
+
+function testBuffers() {
+  let direct = java.nio.ByteBuffer.allocateDirect(4);
+  direct.put(1);
+  let bytes = typed.view(direct);
+  Assert.assertEquals(3, bytes.length, 0);
+  bytes[0] = 7;
+  Assert.assertEquals(7, direct.get(1), 0);
+
+  let doubles = typed.view(java.nio.DoubleBuffer.wrap(typed.allocate('double', 2).fill(1.5).unwrap()));
+  Assert.assertEquals(3, doubles.sum(), 0);
+}
+
+function testViewsAreSequences() {
+  let view = typed.allocate('long', 3).set([1, 2, 3]);
+  Assert.assertEquals([2, 4, 6], sequence.map(view, function(x) {
+    return x * 2;
+  }));
+}
+
+let benchValues = typed.allocate('double', 1000).fill(1.5);
+
+function benchSum() {
+  benchValues.sum();
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.testing;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * The results of one test class's bench functions: written to a json file as each finishes, and compared to an
+ * optional baseline file in the same format, so a results file can be checked in as the next baseline.
+ */
+final class BenchmarkReport {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private final File resultsFile;
+
+  private final Map<String, Double> baselineMeans;
+
+  private final double maxRegression;
+
+  private final Map<String, BenchmarkResult> results = Maps.newTreeMap(); // MUTABLE: guarded by this.
+
+
+  /**
+   * @param resultsFile where to write results.
+   * @param baselineFile results to compare to, or null. Ignored if it doesn't exist.
+   * @param maxRegression how much slower than the baseline each mean may be, as a fraction.
+   * @throws IOException if the baseline can't be read.
+   */
+  BenchmarkReport(File resultsFile, File baselineFile, double maxRegression) throws IOException {
+    this.resultsFile = resultsFile;
+    this.maxRegression = maxRegression;
+    this.baselineMeans = baselineFile != null && baselineFile.exists()
+        ? readMeans(baselineFile) : ImmutableMap.<String, Double>of();
+  }
+
+
+  /**
+   * Records a result and rewrites the results file.
+   * @param result the result.
+   * @throws IOException if the file can't be written.
+   */
+  synchronized void add(BenchmarkResult result) throws IOException {
+    this.results.put(result.getName(), result);
+    Files.createParentDirs(this.resultsFile);
+    MAPPER.writerWithDefaultPrettyPrinter().writeValue(this.resultsFile, this.results);
+  }
+
+
+  /**
+   * @param result the result to check.
+   * @throws AssertionError if the result's mean is slower than the baseline's by more than the allowed regression.
+   */
+  void checkBaseline(BenchmarkResult result) {
+    Double baseline = this.baselineMeans.get(result.getName());
+    if (baseline != null && result.getMeanNanos() > baseline * (1 + this.maxRegression)) {
+      throw new AssertionError(String.format(
+          "%s regressed: mean %.0f ns per call, baseline %.0f ns, more than %.0f%% slower",
+          result.getName(), result.getMeanNanos(), baseline, this.maxRegression * 100));
+    }
+  }
+
+
+  private static Map<String, Double> readMeans(File file) throws IOException {
+    Map<String, Double> means = Maps.newHashMap();
+    JsonNode root = MAPPER.readTree(file);
+    Iterator<Map.Entry<String, JsonNode>> fields = root.fields();
+    while (fields.hasNext()) {
+      Map.Entry<String, JsonNode> field = fields.next();
+      JsonNode mean = field.getValue().get("meanNanos");
+      if (mean != null && mean.isNumber()) {
+        means.put(field.getKey(), mean.asDouble());
+      }
+    }
+    return means;
+  }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.testing;
+
+import com.cueup.hegemon.metrics.Histogram;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The measurements of a JS bench function, as run by HegemonRunner. Times are per call, in nanoseconds.
+ */
+public final class BenchmarkResult {
+
+  private final String name;
+
+  private final int iterations;
+
+  private final long operations;
+
+  private final double opsPerSecond;
+
+  private final double meanNanos;
+
+  private final long p50Nanos;
+
+  private final long p90Nanos;
+
+  private final long p99Nanos;
+
+  private final long maxNanos;
+
+
+  BenchmarkResult(String name, int iterations, Histogram histogram, long elapsedNanos) {
+    this.name = name;
+    this.iterations = iterations;
+    this.operations = histogram.getCount();
+    this.opsPerSecond = elapsedNanos == 0 ? 0 : this.operations * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    this.meanNanos = histogram.getMean();
+    this.p50Nanos = histogram.getValueAtQuantile(0.5);
+    this.p90Nanos = histogram.getValueAtQuantile(0.9);
+    this.p99Nanos = histogram.getValueAtQuantile(0.99);
+    this.maxNanos = histogram.getMax();
+  }
+
+
+  /**
+   * Returns the name of the bench function.
+   */
+  public String getName() {
+    return this.name;
+  }
+
+
+  /**
+   * Returns the number of timed iterations.
+   */
+  public int getIterations() {
+    return this.iterations;
+  }
+
+
+  /**
+   * Returns the number of calls timed, across all iterations.
+   */
+  public long getOperations() {
+    return this.operations;
+  }
+
+
+  /**
+   * Returns the number of calls made per second in the timed iterations.
+   */
+  public double getOpsPerSecond() {
+    return this.opsPerSecond;
+  }
+
+
+  /**
+   * Returns the mean time per call. Baselines are compared on this.
+   */
+  public double getMeanNanos() {
+    return this.meanNanos;
+  }
+
+
+  /**
+   * Returns the median time per call.
+   */
+  public long getP50Nanos() {
+    return this.p50Nanos;
+  }
+
+
+  /**
+   * Returns the 90th percentile time per call.
+   */
+  public long getP90Nanos() {
+    return this.p90Nanos;
+  }
+
+
+  /**
+   * Returns the 99th percentile time per call.
+   */
+  public long getP99Nanos() {
+    return this.p99Nanos;
+  }
+
+
+  /**
+   * Returns the longest call.
+   */
+  public long getMaxNanos() {
+    return this.maxNanos;
+  }
+
+
+  @Override
+  public String toString() {
+    return String.format("%s: %.1f ops/s, mean %.0f ns, p50 %d ns, p90 %d ns, p99 %d ns, max %d ns (%d calls)",
+        this.name, this.opsPerSecond, this.meanNanos, this.p50Nanos, this.p90Nanos, this.p99Nanos, this.maxNanos,
+        this.operations);
+  }
+
+}
@@ -23,8 +23,11 @@ import com.cueup.hegemon.Script;
 import com.cueup.hegemon.compilation.CachedScriptCompilation;
 import com.cueup.hegemon.compilation.ClassFileScriptCompilation;
 import com.cueup.hegemon.compilation.ScriptCompilation;
+import com.cueup.hegemon.metrics.Histogram;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -37,9 +40,13 @@ import org.junit.runner.notification.RunNotifier;
 import org.junit.runners.ParentRunner;
 import org.junit.runners.model.FrameworkMethod;
 import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.RunnerScheduler;
 import org.junit.runners.model.Statement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Inherited;
 import java.lang.annotation.Retention;
@@ -49,12 +56,33 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Base class for Hegemon tests.
+ *
+ * Functions in the test script whose names start with 'test' are run once each as tests. Functions whose names start
+ * with 'bench' are benchmarks, which only run with -Dhegemon.benchmarks=true and are reported as ignored otherwise:
+ * each is called repeatedly for a few warm up iterations, then for timed iterations, configured with
+ * {@link BenchmarkOptions}. Results are logged, and written as json to target/hegemon-benchmarks/[test class].json,
+ * or under the directory in the hegemon.benchmarks.dir system property. If a baseline file in the same format exists,
+ * a benchmark whose mean time per call is slower than its baseline by more than the allowed regression fails.
+ *
+ * Run with -Dhegemon.test.threads=N to split each test script's tests across N threads, or one per processor if N is
+ * 0. Each thread runs its tests on its own copy of the script and its own instance of the test class, with @Before
+ * and @After methods called on that instance. Benchmarks still run one at a time, after the tests. Classes whose
+ * tests share state, in Java or through the ValueStore, can opt out with {@link Sequential}.
  */
 public class HegemonRunner extends ParentRunner<String> {
 
+  private static final Logger LOG = LoggerFactory.getLogger(HegemonRunner.class);
+
   /**
    * The Script annotation specifies the scrpt to be run when a class
    * annotated with <code>@RunWith(HegemonRunner.class)</code> is run.
@@ -72,6 +100,61 @@ public class HegemonRunner extends ParentRunner<String> {
   }
 
 
+  /**
+   * How the bench functions of a test script are run.
+   */
+  @Retention(RetentionPolicy.RUNTIME)
+  @Target(ElementType.TYPE)
+  @Inherited
+  public @interface BenchmarkOptions {
+    // lint: disable=JavadocMethodCheck next 30 lines
+    /**
+     * @return how many untimed iterations to run first, to let the JIT compile the code.
+     */
+    int warmupIterations() default 3;
+
+    /**
+     * @return how many timed iterations to run.
+     */
+    int iterations() default 5;
+
+    /**
+     * @return how long each iteration calls the function for.
+     */
+    int iterationMillis() default 200;
+
+    /**
+     * @return a results file to compare to, relative to the working directory. If empty, [test class].json under
+     *     the directory in the hegemon.benchmarks.baseline system property is used, if that's set.
+     */
+    String baseline() default "";
+
+    /**
+     * @return how much slower than the baseline a benchmark's mean may be before it fails, as a fraction.
+     */
+    double maxRegression() default 0.2;
+  }
+
+
+  /**
+   * Runs a class's tests one at a time, on one script and test instance, even when the hegemon.test.threads system
+   * property asks for more threads. Use it for tests that depend on each other's side effects.
+   */
+  @Retention(RetentionPolicy.RUNTIME)
+  @Target(ElementType.TYPE)
+  @Inherited
+  public @interface Sequential {
+  }
+
+
+  /**
+   * Used for its default BenchmarkOptions.
+   */
+  @BenchmarkOptions
+  private static final class DefaultBenchmarkOptions {
+  }
+
+
   /**
    * Runs script test as a JUnit statement.
    */
@@ -109,6 +192,172 @@ public class HegemonRunner extends ParentRunner<String> {
 
   }
 
+  /**
+   * Runs a script's bench function as a JUnit statement, failing if it's slower than its baseline.
+   */
+  private static class RunScriptBenchmark extends Statement {
+
+    private final Script script;
+
+    private final Object instance;
+
+    private final Object[] arguments;
+
+    private final String name;
+
+    private final BenchmarkOptions options;
+
+    private final BenchmarkReport report;
+
+
+    public RunScriptBenchmark(Script script, Object instance, Object[] arguments, String name,
+                              BenchmarkOptions options, BenchmarkReport report) {
+      this.script = script;
+      this.instance = instance;
+      this.arguments = arguments;
+      this.name = name;
+      this.options = options;
+      this.report = report;
+    }
+
+
+    @Override
+    public void evaluate() throws Exception { // lint: disable=IllegalThrowsCheck
+      BenchmarkResult result;
+      Script.enterContext();
+      try {
+        this.script.run("unittest.setTestInstance", this.instance);
+        for (int i = 0; i < this.options.warmupIterations(); i++) {
+          iterate(null);
+        }
+        Histogram histogram = new Histogram();
+        long elapsedNanos = 0;
+        for (int i = 0; i < this.options.iterations(); i++) {
+          elapsedNanos += iterate(histogram);
+        }
+        result = new BenchmarkResult(this.name, this.options.iterations(), histogram, elapsedNanos);
+      } catch (Throwable t) { //lint: disable=IllegalCatchCheck
+        throw new RuntimeException(t);
+      } finally {
+        Script.exitContext();
+      }
+
+      LOG.info(result.toString());
+      this.report.add(result);
+      this.report.checkBaseline(result);
+    }
+
+
+    /**
+     * Calls the function until the iteration's time is up, recording each call's time if histogram isn't null.
+     * @return how long the iteration took.
+     */
+    private long iterate(Histogram histogram) {
+      long start = System.nanoTime();
+      long end = start + TimeUnit.MILLISECONDS.toNanos(this.options.iterationMillis());
+      long now;
+      do {
+        long before = System.nanoTime();
+        this.script.run(this.name, this.arguments);
+        now = System.nanoTime();
+        if (histogram != null) {
+          histogram.record(now - before);
+        }
+      } while (now < end);
+      return now - start;
+    }
+
+  }
+
+  /**
+   * A test instance and the script its tests run in. A thread running tests has one to itself until the test ends.
+   */
+  private static final class Fixture {
+
+    private final Script script;
+
+    private final Object instance;
+
+
+    public Fixture(Script script, Object instance) {
+      this.script = script;
+      this.instance = instance;
+    }
+
+  }
+
+
+  /**
+   * Runs children on a fixed pool of threads. Benchmarks are held back and run one at a time once every test has
+   * finished, so they're not timed while other tests compete for the CPU.
+   */
+  private final class ParallelScheduler implements RunnerScheduler {
+
+    private final ExecutorService executor;
+
+    private final List<Future<?>> scheduled = Lists.newArrayList();
+
+    private final Queue<Runnable> deferred = new ConcurrentLinkedQueue<Runnable>();
+
+    private volatile boolean draining; // MUTABLE: set once the tests have finished.
+
+
+    public ParallelScheduler(int threads) {
+      this.executor = Executors.newFixedThreadPool(threads,
+          new ThreadFactoryBuilder().setDaemon(true).setNameFormat("hegemon-test-%d").build());
+    }
+
+
+    @Override
+    public void schedule(Runnable childStatement) {
+      this.scheduled.add(this.executor.submit(childStatement));
+    }
+
+
+    /**
+     * Holds back a benchmark until the tests have finished.
+     * @return whether it was held back, false if the tests have already finished.
+     */
+    public boolean defer(final String child, final RunNotifier notifier) {
+      if (this.draining) {
+        return false;
+      }
+      this.deferred.add(new Runnable() {
+        @Override
+        public void run() {
+          runChild(child, notifier);
+        }
+      });
+      return true;
+    }
+
+
+    @Override
+    public void finished() {
+      try {
+        for (Future<?> future : this.scheduled) {
+          future.get();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+        throw Throwables.propagate(e.getCause());
+      } finally {
+        this.scheduled.clear();
+        this.executor.shutdownNow();
+      }
+
+      this.draining = true;
+      for (Runnable benchmark : this.deferred) {
+        benchmark.run();
+      }
+      this.deferred.clear();
+    }
+
+  }
+
+
   public static final ScriptCompilation SCRIPT_COMPILATION = new CachedScriptCompilation(
       new ClassFileScriptCompilation(new File("/tmp/hegemon-script-classes")));
 
@@ -116,6 +365,22 @@ public class HegemonRunner extends ParentRunner<String> {
 
   private final Object instance;
 
+  private final LoadPath loadPath;
+
+  private final String testSource;
+
+  /**
+   * Fixtures not in use by a running test. Starts with the one holding testScript and instance, and grows by one
+   * for each test that starts while all of them are in use.
+   */
+  private final Queue<Fixture> idleFixtures = new ConcurrentLinkedQueue<Fixture>();
+
+  private final ParallelScheduler scheduler;
+
+  private final BenchmarkOptions benchmarkOptions;
+
+  private final BenchmarkReport benchmarkReport;
+
   // TODO(kevinclark): Nullable annotation? Requires dependency.
   private final String method;
 
@@ -151,26 +416,91 @@ public class HegemonRunner extends ParentRunner<String> {
     super(klass);
 
     this.method = method;
+    this.loadPath = loadPath;
+    this.instance = newInstance(klass);
 
-    try {
-      this.instance = klass.newInstance();
-    } catch (InstantiationException e) {
-      throw new InitializationError(e);
-    } catch (IllegalAccessException e) {
-      throw new InitializationError(e);
-    }
+    BenchmarkOptions options = klass.getAnnotation(BenchmarkOptions.class);
+    this.benchmarkOptions = options == null
+        ? DefaultBenchmarkOptions.class.getAnnotation(BenchmarkOptions.class) : options;
 
     TestScript scriptData = klass.getAnnotation(TestScript.class);
     if (scriptData == null) {
+      this.testSource = null;
       this.testScript = null;
+      this.benchmarkReport = null;
     } else {
       try {
-        String source = loadPath.load(scriptData.filename() + ".js");
-        this.testScript = new Script(scriptData.filename(), source, SCRIPT_COMPILATION, loadPath, "hegemon/unittest");
+        this.testSource = loadPath.load(scriptData.filename() + ".js");
+        this.testScript = newScript(scriptData.filename(), this.testSource, loadPath);
+        this.benchmarkReport = createBenchmarkReport(klass, this.benchmarkOptions);
       } catch (LoadError e) {
         throw new InitializationError(e);
+      } catch (IOException e) {
+        throw new InitializationError(e);
       }
     }
+    this.idleFixtures.add(new Fixture(this.testScript, this.instance));
+
+    int threads = Integer.getInteger("hegemon.test.threads", 1);
+    if (threads <= 0) {
+      threads = Runtime.getRuntime().availableProcessors();
+    }
+    if (threads > 1 && scriptData != null && method == null && !klass.isAnnotationPresent(Sequential.class)) {
+      this.scheduler = new ParallelScheduler(threads);
+      setScheduler(this.scheduler);
+    } else {
+      this.scheduler = null;
+    }
+  }
+
+
+  private static Object newInstance(Class<?> klass) throws InitializationError {
+    try {
+      return klass.newInstance();
+    } catch (InstantiationException e) {
+      throw new InitializationError(e);
+    } catch (IllegalAccessException e) {
+      throw new InitializationError(e);
+    }
+  }
+
+
+  private static Script newScript(String filename, String source, LoadPath loadPath) throws LoadError {
+    return new Script(filename, source, SCRIPT_COMPILATION, loadPath, "hegemon/unittest");
+  }
+
+
+  /**
+   * Returns an idle fixture, or a new one with its own copy of the test script if they're all in use.
+   */
+  private Fixture takeFixture() throws InitializationError, LoadError {
+    Fixture fixture = this.idleFixtures.poll();
+    if (fixture != null) {
+      return fixture;
+    }
+    Script script = this.testScript == null
+        ? null : newScript(this.testScript.getName(), this.testSource, this.loadPath);
+    return new Fixture(script, newInstance(getTestClass().getJavaClass()));
+  }
+
+
+  private static BenchmarkReport createBenchmarkReport(Class<?> klass, BenchmarkOptions options) throws IOException {
+    String fileName = klass.getName() + ".json";
+    File results = new File(System.getProperty("hegemon.benchmarks.dir", "target/hegemon-benchmarks"), fileName);
+
+    File baseline = null;
+    String baselineDirectory = System.getProperty("hegemon.benchmarks.baseline");
+    if (!options.baseline().isEmpty()) {
+      baseline = new File(options.baseline());
+    } else if (baselineDirectory != null) {
+      baseline = new File(baselineDirectory, fileName);
+    }
+    return new BenchmarkReport(results, baseline, options.maxRegression());
+  }
+
+
+  private boolean isBenchmark(String child) {
+    return this.testScript != null && child.startsWith("bench");
   }
 
 
@@ -191,6 +521,7 @@ public class HegemonRunner extends ParentRunner<String> {
     } else {
       List<String> testNames = Lists.newArrayList();
       this.testScript.run("unittest.collectTests", this.testScript.getScope(), testNames);
+      this.testScript.run("unittest.collectBenchmarks", this.testScript.getScope(), testNames);
       return testNames;
     }
   }
@@ -204,13 +535,47 @@ public class HegemonRunner extends ParentRunner<String> {
 
   @Override
   protected void runChild(String child, RunNotifier notifier) {
+    if (this.scheduler != null && isBenchmark(child) && this.scheduler.defer(child, notifier)) {
+      return;
+    }
     Description d = describeChild(child);
+    if (isBenchmark(child) && !Boolean.getBoolean("hegemon.benchmarks")) {
+      notifier.fireTestIgnored(d);
+      return;
+    }
     notifier.fireTestStarted(d);
 
+    Fixture fixture;
+    try {
+      fixture = takeFixture();
+    } catch (InitializationError e) {
+      notifier.fireTestFailure(new Failure(d, e));
+      notifier.fireTestFinished(d);
+      return;
+    } catch (LoadError e) {
+      notifier.fireTestFailure(new Failure(d, e));
+      notifier.fireTestFinished(d);
+      return;
+    }
+    try {
+      runChild(child, d, fixture, notifier);
+    } finally {
+      this.idleFixtures.add(fixture);
+    }
+
+    notifier.fireTestFinished(d);
+  }
+
+
+  /**
+   * Runs a test or benchmark on the given fixture, reporting failures but not its start or finish.
+   */
+  private void runChild(String child, Description d, Fixture fixture, RunNotifier notifier) {
     Statement statement;
-    if (this.testScript == null) {
+    if (fixture.script == null) {
       try {
-        statement = new InvokeMethod(new FrameworkMethod(this.instance.getClass().getMethod(child)), this.instance);
+        statement = new InvokeMethod(new FrameworkMethod(fixture.instance.getClass().getMethod(child)),
+            fixture.instance);
       } catch (NoSuchMethodException e) {
         notifier.fireTestFailure(new Failure(d, e));
         statement = null;
@@ -218,7 +583,7 @@ public class HegemonRunner extends ParentRunner<String> {
     } else {
       Object[] arguments = null;
       try {
-        arguments = (Object[]) this.getTestClass().getJavaClass().getMethod("getArguments").invoke(this.instance);
+        arguments = (Object[]) this.getTestClass().getJavaClass().getMethod("getArguments").invoke(fixture.instance);
       } catch (IllegalAccessException e) {
         notifier.fireTestFailure(new Failure(d, e));
       } catch (InvocationTargetException e) {
@@ -227,18 +592,25 @@ public class HegemonRunner extends ParentRunner<String> {
         arguments = new Object[0];
       }
 
-      statement = arguments == null ? null : new RunScriptTest(this.testScript, this.instance, arguments, child);
+      if (arguments == null) {
+        statement = null;
+      } else if (isBenchmark(child)) {
+        statement = new RunScriptBenchmark(fixture.script, fixture.instance, arguments, child, this.benchmarkOptions,
+            this.benchmarkReport);
+      } else {
+        statement = new RunScriptTest(fixture.script, fixture.instance, arguments, child);
+      }
     }
 
     if (statement != null) {
       List<FrameworkMethod> before = getTestClass().getAnnotatedMethods(Before.class);
       if (!before.isEmpty()) {
-        statement = new RunBefores(statement, before, this.instance);
+        statement = new RunBefores(statement, before, fixture.instance);
       }
 
       List<FrameworkMethod> after = getTestClass().getAnnotatedMethods(After.class);
       if (!after.isEmpty()) {
-        statement = new RunAfters(statement, after, this.instance);
+        statement = new RunAfters(statement, after, fixture.instance);
       }
 
       try {
@@ -247,8 +619,6 @@ public class HegemonRunner extends ParentRunner<String> {
         notifier.fireTestFailure(new Failure(d, e));
       }
     }
-
-    notifier.fireTestFinished(d);
   }
 
 }
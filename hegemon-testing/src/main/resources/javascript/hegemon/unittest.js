@@ -33,6 +33,20 @@ unittest.collectTests = function(scope, list) {
   }
 };
 
+/**
+ * Returns the names of all functions in a scope that start with 'bench' and places them in list. HegemonRunner calls
+ * each one repeatedly and reports how long it takes.
+ * @param scope {Scriptable} a Rhino Scriptable suitable as a scope.
+ * @param list {java.util.List} the list to add to.
+ */
+unittest.collectBenchmarks = function(scope, list) {
+  for each(var name in inspect.getKeys(scope)) {
+    if (name.substring(0, 5) == 'bench' && typeof scope[name] == 'function') {
+      list.add(name);
+    }
+  }
+};
+
 var javaTest;
 
 /**
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.testing;
+
+import com.cueup.hegemon.metrics.Histogram;
+import com.google.common.io.Files;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+
+/**
+ * Tests for the BenchmarkReport class.
+ */
+public class BenchmarkReportTest {
+
+  private static BenchmarkResult result(String name, long nanosPerCall) {
+    Histogram histogram = new Histogram();
+    for (int i = 0; i < 100; i++) {
+      histogram.record(nanosPerCall);
+    }
+    return new BenchmarkResult(name, 1, histogram, 100 * nanosPerCall);
+  }
+
+
+  @Test
+  public void resultsSlowerThanTheBaselineFail() throws Exception {
+    File directory = Files.createTempDir();
+    File baseline = new File(directory, "baseline.json");
+    BenchmarkReport first = new BenchmarkReport(baseline, null, 0.2);
+    first.add(result("benchFast", 1000));
+    first.add(result("benchOther", 1000));
+    Assert.assertTrue(baseline.exists());
+
+    BenchmarkReport report = new BenchmarkReport(new File(directory, "results.json"), baseline, 0.2);
+    report.checkBaseline(result("benchFast", 1100));
+    report.checkBaseline(result("benchNew", 1000000));
+    try {
+      report.checkBaseline(result("benchFast", 1300));
+    } catch (AssertionError e) {
+      Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("benchFast regressed"));
+      return;
+    }
+    Assert.fail("Expected benchFast to fail against its baseline");
+  }
+
+
+  @Test
+  public void missingBaselinesAreIgnored() throws Exception {
+    File directory = Files.createTempDir();
+    BenchmarkReport report = new BenchmarkReport(new File(directory, "results.json"),
+        new File(directory, "missing.json"), 0);
+    report.checkBaseline(result("benchFast", 1000000));
+  }
+
+}
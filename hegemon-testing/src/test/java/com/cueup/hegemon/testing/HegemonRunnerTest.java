@@ -0,0 +1,239 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cueup.hegemon.testing;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Request;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for running JS tests in parallel with HegemonRunner.
+ */
+public class HegemonRunnerTest {
+
+  private static final Set<String> TESTS = ImmutableSet.of("testOne", "testTwo", "testThree", "testFour", "testFails");
+
+  private static final AtomicInteger SCRIPTS = new AtomicInteger();
+
+  private static final ConcurrentMap<String, String> THREADS = Maps.newConcurrentMap();
+
+  /**
+   * The script each test instance ran its tests in.
+   */
+  private static final ConcurrentMap<Integer, Integer> SCRIPT_BY_INSTANCE = Maps.newConcurrentMap();
+
+  private static final AtomicInteger ACTIVE = new AtomicInteger();
+
+  private static final AtomicInteger MAX_ACTIVE = new AtomicInteger();
+
+  private static final AtomicInteger FINISHED = new AtomicInteger();
+
+  private static final AtomicInteger MISMATCHES = new AtomicInteger();
+
+  private static volatile CountDownLatch rendezvous;
+
+  private static volatile int finishedBeforeBenchmark;
+
+  private static volatile String benchmarkThread;
+
+
+  /**
+   * Called by each copy of the test script as it's built.
+   * @return an id for the copy.
+   */
+  public static int nextScriptId() {
+    return SCRIPTS.incrementAndGet();
+  }
+
+
+  /**
+   * Records where each test ran. @Before and @After check that they run on the instance the test ran with.
+   */
+  public abstract static class RecordingTests {
+
+    private boolean inTest;
+
+
+    @Before
+    public void before() {
+      if (this.inTest) {
+        MISMATCHES.incrementAndGet();
+      }
+      this.inTest = true;
+    }
+
+
+    @After
+    public void after() {
+      if (!this.inTest) {
+        MISMATCHES.incrementAndGet();
+      }
+      this.inTest = false;
+      FINISHED.incrementAndGet();
+    }
+
+
+    public void ran(String test, int scriptId) throws InterruptedException {
+      if (!this.inTest) {
+        MISMATCHES.incrementAndGet();
+      }
+      THREADS.put(test, Thread.currentThread().getName());
+      Integer previous = SCRIPT_BY_INSTANCE.putIfAbsent(System.identityHashCode(this), scriptId);
+      if (previous != null && previous != scriptId) {
+        MISMATCHES.incrementAndGet();
+      }
+
+      int active = ACTIVE.incrementAndGet();
+      int max = MAX_ACTIVE.get();
+      while (active > max && !MAX_ACTIVE.compareAndSet(max, active)) {
+        max = MAX_ACTIVE.get();
+      }
+      try {
+        waitForOthers();
+      } finally {
+        ACTIVE.decrementAndGet();
+      }
+    }
+
+
+    protected abstract void waitForOthers() throws InterruptedException;
+
+
+    public void benchmarked() {
+      finishedBeforeBenchmark = FINISHED.get();
+      benchmarkThread = Thread.currentThread().getName();
+    }
+
+  }
+
+
+  /**
+   * Tests that wait until two of them are running at once.
+   */
+  @HegemonRunner.TestScript(filename = "hegemon/runnerTest")
+  @HegemonRunner.BenchmarkOptions(warmupIterations = 0, iterations = 1, iterationMillis = 1)
+  public static class ParallelTests extends RecordingTests {
+
+    @Override
+    protected void waitForOthers() throws InterruptedException {
+      rendezvous.countDown();
+      rendezvous.await(10, TimeUnit.SECONDS);
+    }
+
+  }
+
+
+  /**
+   * The same tests, opted out of running in parallel.
+   */
+  @HegemonRunner.Sequential
+  @HegemonRunner.TestScript(filename = "hegemon/runnerTest")
+  @HegemonRunner.BenchmarkOptions(warmupIterations = 0, iterations = 1, iterationMillis = 1)
+  public static class SequentialTests extends RecordingTests {
+
+    @Override
+    protected void waitForOthers() {
+    }
+
+  }
+
+
+  private static Result run(Class<?> klass) throws Exception {
+    SCRIPTS.set(0);
+    THREADS.clear();
+    SCRIPT_BY_INSTANCE.clear();
+    ACTIVE.set(0);
+    MAX_ACTIVE.set(0);
+    FINISHED.set(0);
+    MISMATCHES.set(0);
+    rendezvous = new CountDownLatch(2);
+    finishedBeforeBenchmark = -1;
+    benchmarkThread = null;
+
+    System.setProperty("hegemon.test.threads", "4");
+    System.setProperty("hegemon.benchmarks", "true");
+    try {
+      return new JUnitCore().run(Request.runner(new HegemonRunner(klass)));
+    } finally {
+      System.clearProperty("hegemon.test.threads");
+      System.clearProperty("hegemon.benchmarks");
+    }
+  }
+
+
+  private static void assertOnlyTestFailsFailed(Result result) {
+    Assert.assertEquals(TESTS.size() + 1, result.getRunCount());
+    Assert.assertEquals(1, result.getFailureCount());
+    Failure failure = result.getFailures().get(0);
+    Assert.assertEquals("testFails", failure.getDescription().getMethodName());
+    Assert.assertTrue(failure.getMessage(), failure.getMessage().contains("expected failure"));
+  }
+
+
+  @Test
+  public void testsRunInParallelOnTheirOwnFixtures() throws Exception {
+    Result result = run(ParallelTests.class);
+
+    assertOnlyTestFailsFailed(result);
+    Assert.assertEquals(TESTS, THREADS.keySet());
+    Assert.assertTrue(MAX_ACTIVE.get() >= 2);
+    Assert.assertEquals(0, MISMATCHES.get());
+    // The benchmark gets @Before and @After too.
+    Assert.assertEquals(TESTS.size() + 1, FINISHED.get());
+
+    // Each instance kept to one copy of the script, and no two instances shared one.
+    Assert.assertTrue(SCRIPT_BY_INSTANCE.size() >= 2);
+    Assert.assertEquals(SCRIPT_BY_INSTANCE.size(), Sets.newHashSet(SCRIPT_BY_INSTANCE.values()).size());
+    for (Map.Entry<String, String> entry : THREADS.entrySet()) {
+      Assert.assertTrue(entry.getValue(), entry.getValue().startsWith("hegemon-test-"));
+    }
+
+    Assert.assertEquals(TESTS.size(), finishedBeforeBenchmark);
+    Assert.assertEquals(Thread.currentThread().getName(), benchmarkThread);
+  }
+
+
+  @Test
+  public void sequentialClassesRunOnTheCallingThread() throws Exception {
+    Result result = run(SequentialTests.class);
+
+    assertOnlyTestFailsFailed(result);
+    Assert.assertEquals(TESTS, THREADS.keySet());
+    Assert.assertEquals(1, MAX_ACTIVE.get());
+    Assert.assertEquals(0, MISMATCHES.get());
+    Assert.assertEquals(1, SCRIPTS.get());
+    Assert.assertEquals(1, SCRIPT_BY_INSTANCE.size());
+    Assert.assertEquals(ImmutableSet.of(Thread.currentThread().getName()), Sets.newHashSet(THREADS.values()));
+    Assert.assertEquals(TESTS.size(), finishedBeforeBenchmark);
+  }
+
+}
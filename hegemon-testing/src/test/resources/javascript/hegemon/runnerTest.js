@@ -0,0 +1,46 @@
+/*
+ * Copyright 2013 the hegemon authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+// Run by HegemonRunnerTest, which checks what each test reports about where it ran.
+
+let unittest = core.load('hegemon/unittest');
+
+let scriptId = com.cueup.hegemon.testing.HegemonRunnerTest.nextScriptId();
+
+function testOne() {
+  unittest.getTestInstance().ran('testOne', scriptId);
+}
+
+function testTwo() {
+  unittest.getTestInstance().ran('testTwo', scriptId);
+}
+
+function testThree() {
+  unittest.getTestInstance().ran('testThree', scriptId);
+}
+
+function testFour() {
+  unittest.getTestInstance().ran('testFour', scriptId);
+}
+
+function testFails() {
+  unittest.getTestInstance().ran('testFails', scriptId);
+  throw new Error('expected failure');
+}
+
+function benchAfterTests() {
+  unittest.getTestInstance().benchmarked();
+}